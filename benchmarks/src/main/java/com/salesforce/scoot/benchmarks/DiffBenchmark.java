@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseSchemaDiff;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.generator.SyntheticSchemaGenerator.Version;
+
+/**
+ * How fast two parsed schemas are compared, where a few percent of the tables differ
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DiffBenchmark {
+
+  @Param({"10", "1000", "10000", "100000"})
+  public int tableCount;
+
+  private HBaseSchema fromSchema;
+  private HBaseSchema toSchema;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void generateSchemas() throws Exception {
+    fromSchema = Schemas.generator(tableCount).getSchema(Version.FROM);
+    toSchema = Schemas.generator(tableCount).getSchema(Version.TO);
+    pool = new ForkJoinPool();
+  }
+
+  @TearDown
+  public void shutdownPool() {
+    pool.shutdown();
+  }
+
+  /**
+   * The diff only analyzes the tables when its changes are asked for, so both benchmarks go through them
+   */
+  @Benchmark
+  public void diff(Blackhole blackhole) {
+    consume(new HBaseSchemaDiff(fromSchema, toSchema), blackhole);
+  }
+
+  @Benchmark
+  public void parallelDiff(Blackhole blackhole) {
+    consume(new HBaseSchemaDiff(fromSchema, toSchema, pool), blackhole);
+  }
+
+  private static void consume(HBaseSchemaDiff diff, Blackhole blackhole) {
+    for (HBaseSchemaChange c : diff.streamChanges()) {
+      blackhole.consume(c);
+    }
+  }
+
+}
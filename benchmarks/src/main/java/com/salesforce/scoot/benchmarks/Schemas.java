@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.salesforce.scoot.generator.SyntheticSchemaGenerator;
+import com.salesforce.scoot.generator.SyntheticSchemaGenerator.Version;
+
+/**
+ * Synthetic schemas for the benchmarks, always from the same seed so every run (and every fork)
+ * benchmarks the same input
+ */
+final class Schemas {
+
+  static final long SEED = 20120601L;
+
+  private Schemas() {}
+
+  static SyntheticSchemaGenerator generator(int tableCount) {
+    SyntheticSchemaGenerator generator = new SyntheticSchemaGenerator();
+    generator.setSeed(SEED);
+    generator.setTableCount(tableCount);
+    return generator;
+  }
+
+  static File writeScootXML(int tableCount, Version version) throws IOException {
+    File file = File.createTempFile("scoot-" + tableCount + "-", ".xml");
+    file.deleteOnExit();
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      generator(tableCount).writeScootXML(version, out);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  static File writePhoenixXML(int tableCount) throws IOException {
+    File file = File.createTempFile("phoenix-" + tableCount + "-", ".xml");
+    file.deleteOnExit();
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      generator(tableCount).writePhoenixXML(Version.FROM, out);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+}
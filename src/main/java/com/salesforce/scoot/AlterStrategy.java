@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+/**
+ * How an existing table is taken through a modification.
+ */
+public enum AlterStrategy {
+
+  /** Disable the table, modify it, and enable it again. Works on any cluster, but the table is unavailable in between. */
+  OFFLINE,
+  /** Modify the table while it stays enabled, and wait for every region to reopen. Requires ONLINE_SCHEMA_UPDATE_KEY on the master. */
+  ONLINE,
+  /** Try ONLINE, and fall back to OFFLINE if the master refuses to modify an enabled table. */
+  AUTO,
+  ;
+
+  /** The master setting that allows tables to be modified while they're enabled */
+  public static final String ONLINE_SCHEMA_UPDATE_KEY = "hbase.online.schema.update.enable";
+
+  /**
+   * Case insensitive lookup by name, for command line use
+   */
+  public static AlterStrategy getFromName(String name) {
+    for (AlterStrategy s : values()) {
+      if (s.name().equalsIgnoreCase(name)) {
+        return s;
+      }
+    }
+    throw new ScootException("Unknown alter strategy '" + name + "'; expected one of OFFLINE, ONLINE or AUTO.");
+  }
+
+}
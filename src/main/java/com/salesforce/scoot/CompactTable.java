@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * The form an HBaseSchema keeps a table in. A descriptor holds its attributes in a TreeMap of byte array
+ * wrappers, and every column family has a map of its own, so a schema of tens of thousands of tables held
+ * as descriptors takes gigabytes. Here, attribute keys and string values are interned, so there's one copy
+ * of "BLOCKSIZE" or "NONE" however many tables use it; numeric and boolean values of the known attributes
+ * (see HBaseSchemaAttribute) are kept as primitives; and column families with the same name and attributes
+ * are one shared, immutable instance.
+ *
+ * The conversion is exact: a value is only kept as a primitive if printing the primitive gives back the same
+ * string, and values that aren't valid UTF-8 are kept as bytes. So toDescriptor() returns a descriptor with
+ * the same name, attributes and families as the one the table was made from.
+ */
+final class CompactTable {
+
+  /** Shares attribute keys, string values and column families between tables */
+  private static final Interner<Object> INTERNER = Interners.newWeakInterner();
+
+  /** The known attributes whose values can be kept as primitives, by exact name */
+  private static final Map<String, HBaseSchemaAttribute> PRIMITIVE_ATTRIBUTES = new HashMap<String, HBaseSchemaAttribute>();
+  static {
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      if (a.type.equals(Integer.class) || a.type.equals(Long.class) || a.type.equals(Boolean.class)) {
+        PRIMITIVE_ATTRIBUTES.put(a.name, a);
+      }
+    }
+  }
+
+  final String name;
+  final Attributes values;
+  /** In family name order, as HTableDescriptor.getFamilies() returns them */
+  final Family[] families;
+  final SchemaFingerprint fingerprint;
+
+  private CompactTable(String name, Attributes values, Family[] families, SchemaFingerprint fingerprint) {
+    this.name = name;
+    this.values = values;
+    this.families = families;
+    this.fingerprint = fingerprint;
+  }
+
+  static CompactTable of(HTableDescriptor table) {
+    Collection<HColumnDescriptor> descriptors = table.getFamilies();
+    Family[] families = new Family[descriptors.size()];
+    Map<HColumnDescriptor, SchemaFingerprint> familyFingerprints = new HashMap<HColumnDescriptor, SchemaFingerprint>();
+    int x = 0;
+    for (HColumnDescriptor cf : descriptors) {
+      families[x] = Family.of(cf);
+      familyFingerprints.put(cf, families[x].fingerprint);
+      x++;
+    }
+    return new CompactTable(intern(table.getNameAsString()), Attributes.of(table.getValues()), families,
+        SchemaFingerprint.of(table, familyFingerprints));
+  }
+
+  /**
+   * A new descriptor for the table, which the caller is free to change
+   */
+  HTableDescriptor toDescriptor() {
+    HTableDescriptor table = new HTableDescriptor(Bytes.toBytes(name));
+    // the constructor sets some attributes of its own, which the original may not have had
+    for (ImmutableBytesWritable key : new ArrayList<ImmutableBytesWritable>(table.getValues().keySet())) {
+      table.remove(key.get());
+    }
+    for (int x = 0; x < values.size(); x++) {
+      table.setValue(Bytes.toBytes(values.keys[x]), values.getValue(x));
+    }
+    for (Family f : families) {
+      table.addFamily(f.toDescriptor());
+    }
+    return table;
+  }
+
+  /**
+   * A column family's name and attributes. Instances are shared between tables, so they never change.
+   */
+  static final class Family {
+    final String name;
+    final Attributes values;
+    final SchemaFingerprint fingerprint;
+
+    private Family(String name, Attributes values, SchemaFingerprint fingerprint) {
+      this.name = name;
+      this.values = values;
+      this.fingerprint = fingerprint;
+    }
+
+    static Family of(HColumnDescriptor cf) {
+      return (Family)INTERNER.intern(new Family(intern(cf.getNameAsString()), Attributes.of(cf.getValues()), SchemaFingerprint.of(cf)));
+    }
+
+    HColumnDescriptor toDescriptor() {
+      HColumnDescriptor cf = new HColumnDescriptor(Bytes.toBytes(name));
+      for (ImmutableBytesWritable key : new ArrayList<ImmutableBytesWritable>(cf.getValues().keySet())) {
+        cf.remove(key.get());
+      }
+      for (int x = 0; x < values.size(); x++) {
+        String key = values.keys[x];
+        // the descriptor caches these two as numbers, and only updates the cache through their setters
+        if (key.equals(HConstants.VERSIONS) && values.isPrimitive(x)) {
+          cf.setMaxVersions((int)values.numbers[x]);
+        } else if (key.equals(HColumnDescriptor.BLOCKSIZE) && values.isPrimitive(x)) {
+          cf.setBlocksize((int)values.numbers[x]);
+        } else {
+          cf.setValue(Bytes.toBytes(key), values.getValue(x));
+        }
+      }
+      return cf;
+    }
+
+    /** The fingerprint covers the name and every attribute, so it stands in for them */
+    @Override public boolean equals(Object o) {
+      return o instanceof Family && fingerprint.equals(((Family)o).fingerprint);
+    }
+
+    @Override public int hashCode() {
+      return fingerprint.hashCode();
+    }
+  }
+
+  /**
+   * Attribute keys and values, in key order
+   */
+  static final class Attributes {
+    /** Interned */
+    final String[] keys;
+    /** The value of a known numeric or boolean attribute (1 or 0), where there's no entry in values */
+    final long[] numbers;
+    /** An interned string, the raw bytes of a value that isn't valid UTF-8, or null if the value is in numbers */
+    final Object[] values;
+
+    private Attributes(String[] keys, long[] numbers, Object[] values) {
+      this.keys = keys;
+      this.numbers = numbers;
+      this.values = values;
+    }
+
+    static Attributes of(Map<ImmutableBytesWritable, ImmutableBytesWritable> map) {
+      Map<String, byte[]> sorted = new TreeMap<String, byte[]>();
+      for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : map.entrySet()) {
+        sorted.put(Bytes.toString(e.getKey().get(), e.getKey().getOffset(), e.getKey().getLength()), e.getValue().copyBytes());
+      }
+      String[] keys = new String[sorted.size()];
+      Object[] values = new Object[sorted.size()];
+      long[] numbers = null;
+      int x = 0;
+      for (Map.Entry<String, byte[]> e : sorted.entrySet()) {
+        keys[x] = intern(e.getKey());
+        byte[] raw = e.getValue();
+        String s = Bytes.toString(raw);
+        if (!Arrays.equals(Bytes.toBytes(s), raw)) {
+          values[x] = raw;
+        } else {
+          Long number = toPrimitive(PRIMITIVE_ATTRIBUTES.get(keys[x]), s);
+          if (number != null) {
+            if (numbers == null) numbers = new long[keys.length];
+            numbers[x] = number;
+          } else {
+            values[x] = intern(s);
+          }
+        }
+        x++;
+      }
+      return new Attributes(keys, numbers, values);
+    }
+
+    /**
+     * The value as a primitive, if the attribute has a numeric or boolean type and the value prints the same way
+     */
+    private static Long toPrimitive(HBaseSchemaAttribute attribute, String value) {
+      if (attribute == null) return null;
+      if (attribute.type.equals(Boolean.class)) {
+        return value.equals("true") ? Long.valueOf(1) : value.equals("false") ? Long.valueOf(0) : null;
+      }
+      try {
+        long n = Long.parseLong(value);
+        return Long.toString(n).equals(value) ? n : null;
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    int size() {
+      return keys.length;
+    }
+
+    boolean isPrimitive(int x) {
+      return values[x] == null;
+    }
+
+    byte[] getValue(int x) {
+      Object v = values[x];
+      if (v instanceof byte[]) return ((byte[])v).clone();
+      if (v != null) return Bytes.toBytes((String)v);
+      return Bytes.toBytes(PRIMITIVE_ATTRIBUTES.get(keys[x]).type.equals(Boolean.class) ? String.valueOf(numbers[x] != 0) : Long.toString(numbers[x]));
+    }
+  }
+
+  private static String intern(String s) {
+    return (String)INTERNER.intern(s);
+  }
+}
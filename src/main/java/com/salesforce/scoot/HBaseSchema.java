@@ -25,21 +25,186 @@
  */
 package com.salesforce.scoot;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 
 /**
- * A collection of tables
+ * A collection of tables, indexed by name. Tables are normalized when they're added (see SchemaNormalizer),
+ * so that schemas from different sources compare equal when they mean the same thing.
+ *
+ * Tables are kept in a compact form (see CompactTable), not as the descriptors they were added as. Each
+ * table's content fingerprint is computed when it's added, so tables should be complete by then. Changing
+ * a descriptor after adding it doesn't change the schema. Descriptors are made again when they're asked
+ * for; the diff only asks for the tables it has to script.
+ *
+ * Tables can be looked up by name, and always come out in table name order, whatever order they were
+ * added in. A name can only be added once. A snapshot() of the schema is a read-only view of its tables
+ * as they are now, which costs nothing to take; the schema copies its index the next time it's changed.
+ *
+ * A schema read from a cluster can also carry the split points its tables have there, so that creating
+ * the same tables elsewhere can start them off with the same regions.
  */
 public class HBaseSchema {
-  private final List<HTableDescriptor> tables = new ArrayList<HTableDescriptor>();
+  private Map<String, CompactTable> tables;
+  private Map<String, byte[][]> splitPoints;
+  /** The table names in order, made when they're first needed after a change */
+  private String[] sortedNames;
+  /** Whether the maps are shared with a snapshot, so must be copied before they're changed */
+  private boolean shared;
+  private final boolean readOnly;
+
+  public HBaseSchema() {
+    this(new HashMap<String, CompactTable>(), new HashMap<String, byte[][]>(), false);
+  }
+  private HBaseSchema(Map<String, CompactTable> tables, Map<String, byte[][]> splitPoints, boolean readOnly) {
+    this.tables = tables;
+    this.splitPoints = splitPoints;
+    this.readOnly = readOnly;
+  }
+  /**
+   * Add a table, throwing an exception if the schema already has one with the same name. The schema keeps
+   * the table in its normalized form (see SchemaNormalizer), so the table passed in isn't changed.
+   */
   public void addTable(HTableDescriptor t) {
-    tables.add(t);
+    CompactTable table = CompactTable.of(SchemaNormalizer.normalize(t));
+    prepareForChange();
+    if (tables.containsKey(table.name)) {
+      throw new ScootException("Schema contains duplicate tables:" + table.name);
+    }
+    tables.put(table.name, table);
+    sortedNames = null;
+  }
+  /**
+   * The table with the given name, or null if there's no such table. Each call makes a new descriptor.
+   */
+  public HTableDescriptor getTable(String tableName) {
+    CompactTable t = tables.get(tableName);
+    return t == null ? null : t.toDescriptor();
+  }
+  public boolean hasTable(String tableName) {
+    return tables.containsKey(tableName);
+  }
+  /**
+   * The number of tables
+   */
+  public int size() {
+    return tables.size();
+  }
+  /**
+   * The names of the tables, in order
+   */
+  public List<String> getTableNames() {
+    return Collections.unmodifiableList(Arrays.asList(getSortedNames()));
+  }
+  /**
+   * The fingerprint of the named table's content, or null if there's no such table
+   */
+  public SchemaFingerprint getFingerprint(String tableName) {
+    CompactTable t = tables.get(tableName);
+    return t == null ? null : t.fingerprint;
   }
+  /**
+   * The fingerprint of a table's content, once it's normalized as it would be when added to a schema
+   */
+  public static SchemaFingerprint getFingerprint(HTableDescriptor t) {
+    return SchemaFingerprint.of(SchemaNormalizer.normalize(t), Collections.<HColumnDescriptor, SchemaFingerprint>emptyMap());
+  }
+  /**
+   * The fingerprint of a column family's content, once it's normalized as it would be when added to a schema
+   */
+  public static SchemaFingerprint getFingerprint(HColumnDescriptor cf) {
+    return SchemaFingerprint.of(SchemaNormalizer.normalize(cf));
+  }
+  /**
+   * Record the split points a table has (or should have), in ascending order
+   */
+  public void setSplitPoints(String tableName, byte[][] points) {
+    prepareForChange();
+    splitPoints.put(tableName, points);
+  }
+  /**
+   * The split points recorded for a table, or null if none were
+   */
+  public byte[][] getSplitPoints(String tableName) {
+    return splitPoints.get(tableName);
+  }
+  /**
+   * The tables, in table name order. Each is a new descriptor, made when it's fetched from the list,
+   * so going through the list doesn't hold every table as a descriptor at once.
+   */
   public List<HTableDescriptor> getTables(){
-    return Collections.unmodifiableList(tables);
+    final String[] names = getSortedNames();
+    final Map<String, CompactTable> tables = this.tables;
+    return new AbstractList<HTableDescriptor>() {
+      @Override public HTableDescriptor get(int index) {
+        return tables.get(names[index]).toDescriptor();
+      }
+      @Override public int size() {
+        return names.length;
+      }
+    };
+  }
+  /**
+   * A read-only copy of this schema as it is now. The two share their tables until this one is changed.
+   */
+  public HBaseSchema snapshot() {
+    if (readOnly) return this;
+    shared = true;
+    HBaseSchema result = new HBaseSchema(tables, splitPoints, true);
+    result.sortedNames = sortedNames;
+    return result;
+  }
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+  /**
+   * The named table in its compact form, or null if there's no such table
+   */
+  CompactTable getCompactTable(String tableName) {
+    return tables.get(tableName);
+  }
+  /**
+   * The tables in their compact form, in table name order
+   */
+  List<CompactTable> getCompactTables() {
+    final String[] names = getSortedNames();
+    final Map<String, CompactTable> tables = this.tables;
+    return new AbstractList<CompactTable>() {
+      @Override public CompactTable get(int index) {
+        return tables.get(names[index]);
+      }
+      @Override public int size() {
+        return names.length;
+      }
+    };
+  }
+  private String[] getSortedNames() {
+    String[] names = sortedNames;
+    if (names == null) {
+      names = tables.keySet().toArray(new String[tables.size()]);
+      Arrays.sort(names);
+      sortedNames = names;
+    }
+    return names;
+  }
+  /**
+   * Make sure this schema can be changed without changing a snapshot of it
+   */
+  private void prepareForChange() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("A schema snapshot can't be changed");
+    }
+    if (shared) {
+      tables = new HashMap<String, CompactTable>(tables);
+      splitPoints = new HashMap<String, byte[][]>(splitPoints);
+      shared = false;
+    }
   }
 }
@@ -25,6 +25,8 @@
  */
 package com.salesforce.scoot;
 
+import java.util.Set;
+
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
@@ -32,6 +34,8 @@ import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.hfile.Compression;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * Represents an officially supported attribute that a schema element in HBase can have. Scoot supports loading
  * other attributes, but it gives special treatment to these in making sure they can be correctly cast to the real
@@ -54,23 +58,24 @@ public enum HBaseSchemaAttribute {
       null, null),
   READONLY(HTableDescriptor.READONLY, HTableDescriptor.class, Boolean.class, 
       String.valueOf(HTableDescriptor.DEFAULT_READONLY), null),
-  // NUMREGIONS and SPLITALGO aren't proper table attributes, but are used when pre-splitting a table
+  // NUMREGIONS, SPLITALGO and SALT_BUCKETS aren't proper table attributes, but are used when pre-splitting a table
   NUMREGIONS("NUMREGIONS", HTableDescriptor.class, Integer.class, null, null),
   SPLITALGO("SPLITALGO", HTableDescriptor.class, String.class, null, null),
+  SALT_BUCKETS("SALT_BUCKETS", HTableDescriptor.class, Integer.class, null, null),
   
   /* Column families */
   BLOCKCACHE(HColumnDescriptor.BLOCKCACHE, HColumnDescriptor.class, Boolean.class, 
       String.valueOf(HColumnDescriptor.DEFAULT_BLOCKCACHE), null),
   BLOCKSIZE(HColumnDescriptor.BLOCKSIZE, HColumnDescriptor.class, Integer.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_BLOCKSIZE), 7),
+      String.valueOf(HColumnDescriptor.DEFAULT_BLOCKSIZE), 7, true),
   BLOOMFILTER(HColumnDescriptor.BLOOMFILTER, HColumnDescriptor.class, StoreFile.BloomType.class, 
-      HColumnDescriptor.DEFAULT_BLOOMFILTER, 8),
+      HColumnDescriptor.DEFAULT_BLOOMFILTER, 8, true),
   COMPRESSION(HColumnDescriptor.COMPRESSION, HColumnDescriptor.class, Compression.Algorithm.class, 
-      HColumnDescriptor.DEFAULT_COMPRESSION, 7),
+      HColumnDescriptor.DEFAULT_COMPRESSION, 7, true),
   DATA_BLOCK_ENCODING(HColumnDescriptor.DATA_BLOCK_ENCODING, HColumnDescriptor.class, DataBlockEncoding.class, 
-      HColumnDescriptor.DEFAULT_DATA_BLOCK_ENCODING, 9),
+      HColumnDescriptor.DEFAULT_DATA_BLOCK_ENCODING, 9, true),
   ENCODE_ON_DISK(HColumnDescriptor.ENCODE_ON_DISK, HColumnDescriptor.class, Boolean.class, 
-      String.valueOf(HColumnDescriptor.DEFAULT_ENCODE_ON_DISK), 9),
+      String.valueOf(HColumnDescriptor.DEFAULT_ENCODE_ON_DISK), 9, true),
   IN_MEMORY(HConstants.IN_MEMORY, HColumnDescriptor.class, Boolean.class, 
       String.valueOf(HColumnDescriptor.DEFAULT_IN_MEMORY), 9),
   KEEP_DELETED_CELLS(HColumnDescriptor.KEEP_DELETED_CELLS, HColumnDescriptor.class, Boolean.class, 
@@ -97,15 +102,37 @@ public enum HBaseSchemaAttribute {
   /** What's the earliest integer version of the schema element that supports this attribute? As defined in the HTableDescriptor and HColumnDescriptor source. 
    *  Versions older than 7 aren't tracked, as this tool doesn't purport to work with anything older than 7. */
   public final Integer minVersion;
+  /** Does a change to this attribute only reach existing data once its store files are rewritten (e.g. by a major compaction)? */
+  public final boolean requiresRewrite;
 
   private HBaseSchemaAttribute(String name, Class<?> appliesToObjectType, Class<?> type, String defaultValue, Integer minVersion){
+    this(name, appliesToObjectType, type, defaultValue, minVersion, false);
+  }
+
+  private HBaseSchemaAttribute(String name, Class<?> appliesToObjectType, Class<?> type, String defaultValue, Integer minVersion, boolean requiresRewrite){
     this.name = name;
     this.appliesToObjectType = appliesToObjectType;
     this.type = type;
     this.defaultValue = defaultValue;
     this.minVersion = minVersion;
+    this.requiresRewrite = requiresRewrite;
   }
   
+  /**
+   * Keys whose values are only read by tools like this one (and by people), never by the region servers, so
+   * that changing them affects no data path: the table's owner, the pre-split hints, which only matter when
+   * the table is created, and the fullSchema xml the file parsers keep on every table.
+   */
+  private static final Set<String> METADATA_ONLY_KEYS = ImmutableSet.of(
+      HTableDescriptor.OWNER, "NUMREGIONS", "SPLITALGO", "SALT_BUCKETS", /* HBaseScootXMLParser.FULL_SCHEMA_PROPERTY */ "fullSchema");
+
+  /**
+   * Is the table attribute with this key metadata only? See METADATA_ONLY_KEYS.
+   */
+  public static boolean isMetadataOnly(String key) {
+    return METADATA_ONLY_KEYS.contains(key);
+  }
+
   public static HBaseSchemaAttribute getFromName(String name){
     for (HBaseSchemaAttribute a : values()){
       if (name.equalsIgnoreCase(a.name)){
@@ -139,5 +166,37 @@ public enum HBaseSchemaAttribute {
     }
     throw new ScootException("Attempted to parse unknown type: " + this.type);
   }
+
+  /**
+   * The canonical way of writing the given value of this attribute, so that values that mean the same thing
+   * compare equal: booleans in lower case, numbers without leading zeros or signs, enums as the constant's
+   * name, and FOREVER as the number it stands for. Values that don't parse as this attribute's type are
+   * returned as they are, so the caller can still see (and report) them.
+   */
+  public String normalize(String attributeValue) {
+    if (attributeValue == null || this.type.equals(String.class)) return attributeValue;
+    String value = attributeValue.trim();
+    if (this.type.equals(Boolean.class)) {
+      return value.equalsIgnoreCase("true") ? "true" : value.equalsIgnoreCase("false") ? "false" : attributeValue;
+    }
+    if (this.type.equals(Integer.class) || this.type.equals(Long.class)) {
+      if (this == TTL && value.equalsIgnoreCase(HColumnDescriptor.FOREVER)) {
+        return String.valueOf(HConstants.FOREVER);
+      }
+      try {
+        return this.type.equals(Integer.class) ? String.valueOf(Integer.parseInt(value)) : String.valueOf(Long.parseLong(value));
+      } catch (NumberFormatException e) {
+        return attributeValue;
+      }
+    }
+    if (this.type.isEnum()) {
+      for (Object constant : this.type.getEnumConstants()) {
+        if (((Enum<?>)constant).name().equalsIgnoreCase(value)) {
+          return ((Enum<?>)constant).name();
+        }
+      }
+    }
+    return attributeValue;
+  }
   
 }
\ No newline at end of file
@@ -28,18 +28,26 @@ package com.salesforce.scoot;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import com.google.common.base.Preconditions;
+
 /**
  * Allows iterating over the changes between any two schemas. Specifically, the first schema 
  * is the "from" one (i.e. the one you started with) and the second is the "to" schema (the 
@@ -49,6 +57,23 @@ import org.apache.hadoop.hbase.util.Bytes;
  * an existing cluster whose schema you want to replicate somewhere else; and you'd get the
  * "from schema" from pointing this utility at a live cluster you want to modify, or pass in 
  * an empty schema to create something from scratch.
+ * 
+ * Tables are analyzed in table name order, so the changes always come out in the same order. For
+ * very large schemas, the analysis can be split across the threads of a ForkJoinPool; the result is
+ * the same as analyzing them on one thread.
+ *
+ * Tables are compared in the schemas' compact form, and descriptors are only made for the tables that
+ * are created, altered or dropped. Unchanged tables are reported as IGNORE by name alone. The diff works
+ * on snapshots of the two schemas, so adding tables to them afterwards doesn't change it, and looks tables
+ * up through the schemas' own name index rather than building its own.
+ *
+ * The lists of changes (getTableChanges() and friends) are made the first time they're asked for, and
+ * hold a change for every table, IGNOREd ones included. For very large schemas, streamChanges() goes
+ * through the tables one at a time instead, handing back only the changes of the types asked for and
+ * counting the rest, so a consumer that doesn't hold on to the changes can go through any size of diff
+ * in constant memory. Until the lists are made, each stream analyzes the tables again, which is cheap for
+ * unchanged tables, since their fingerprints match; once they're made (say by a parallel analysis), streams
+ * go through them instead.
  */
 public class HBaseSchemaDiff {
 
@@ -59,9 +84,20 @@ public class HBaseSchemaDiff {
    * Construct the class with a from and to schema.
    */
   public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema){
-    this.fromSchema = fromSchema;
-    this.toSchema = toSchema;
-    analyze();
+    this(fromSchema, toSchema, null);
+  }
+
+  /**
+   * Construct the class with a from and to schema, analyzing the tables in parallel on the given pool
+   * right away. If the pool is null, the tables are analyzed on the calling thread when the changes are
+   * first asked for.
+   */
+  public HBaseSchemaDiff(HBaseSchema fromSchema, HBaseSchema toSchema, ForkJoinPool pool){
+    this.fromSchema = fromSchema.snapshot();
+    this.toSchema = toSchema.snapshot();
+    if (pool != null) {
+      analyze(pool);
+    }
   }
 
   /**
@@ -75,6 +111,19 @@ public class HBaseSchemaDiff {
     IGNORE,
   }
   
+  /**
+   * What a change costs the cluster, from least to most. METADATA changes only touch attributes no region
+   * server reads (see HBaseSchemaAttribute.isMetadataOnly), so they don't need the table disabled, and can
+   * wait for the table's next real alter. REOPEN changes take effect once the table's regions reopen with
+   * the new descriptor. REWRITE changes (see HBaseSchemaAttribute.requiresRewrite) only reach existing data
+   * once its store files are rewritten as well.
+   */
+  public enum ChangeImpact {
+    METADATA,
+    REOPEN,
+    REWRITE,
+  }
+
   /**
    * Simple struct representing a change to a single property of an object in a schema.  
    */
@@ -83,14 +132,45 @@ public class HBaseSchemaDiff {
     public String key;
     public String oldValue;
     public String newValue;
+    public ChangeImpact impact = ChangeImpact.REOPEN;
     PropertyChange(){}
     PropertyChange(String schemaObjectName, String key) { this.schemaObjectName = schemaObjectName; this.key = key;}
     @Override public String toString(){ return schemaObjectName + ":" + key + ((oldValue != null || newValue != null) ? ":" + oldValue + "->" + newValue : "") + ";"; }
   }
 
+  /**
+   * Column families of an altered table are classified in the manner in which they change.
+   */
+  public enum ColumnFamilyChangeType {
+    ADD,
+    DELETE,
+    MODIFY,
+  }
+
+  /**
+   * Simple struct representing a change to a single column family of an altered table, with the old and new
+   * version of the family (the old one is null for ADD, and the new one is null for DELETE).
+   */
+  public static class ColumnFamilyChange {
+    public String familyName;
+    public ColumnFamilyChangeType type;
+    public HColumnDescriptor oldFamily;
+    public HColumnDescriptor newFamily;
+    ColumnFamilyChange(String familyName, ColumnFamilyChangeType type, HColumnDescriptor oldFamily, HColumnDescriptor newFamily) {
+      this.familyName = familyName; this.type = type; this.oldFamily = oldFamily; this.newFamily = newFamily;
+    }
+    @Override public String toString(){ return type + " " + familyName; }
+  }
+
   /**
    * Representation of a schema object that is changing in this diff, with reference to the old and new version
    * of the object and the nature of the change, as well as a list of specific property changes if applicable.
+   * For alters, the changes are also broken down into whether any table level attributes changed, and which 
+   * column families were added, deleted or modified (in family name order), so that an alter can touch only
+   * what actually changed, and by their impact on the cluster. Changes to metadata only table attributes are
+   * kept apart and don't count as table level changes, so that they never force the whole descriptor to be
+   * sent. They go along with whatever else the alter changes; only a metadata only alter applies them on
+   * their own. IGNOREd tables have no old or new version, just a name.
    */
   public class HBaseSchemaChange {
     public String tableName;
@@ -98,6 +178,19 @@ public class HBaseSchemaDiff {
     public HTableDescriptor newTable;
     public ChangeType type;
     public List<PropertyChange> propertyChanges = new ArrayList<PropertyChange>();
+    public boolean tablePropertiesChanged;
+    public List<PropertyChange> metadataChanges = new ArrayList<PropertyChange>();
+    public List<ColumnFamilyChange> columnFamilyChanges = new ArrayList<ColumnFamilyChange>();
+    /** For alters, the greatest impact of any of its property changes */
+    public ChangeImpact impact;
+    /** Is this an alter that only changes metadata? */
+    public boolean isMetadataOnly() {
+      return type == ChangeType.ALTER && impact == ChangeImpact.METADATA;
+    }
+    /** Is this an alter that only touches column families, but has metadata changes to send along with them? */
+    public boolean hasMetadataChangesWithFamilies() {
+      return type == ChangeType.ALTER && !tablePropertiesChanged && !metadataChanges.isEmpty() && !isMetadataOnly();
+    }
   }
   
   /**
@@ -105,6 +198,10 @@ public class HBaseSchemaDiff {
    */
   public class HBaseSchemaChangeList {
     private final List<HBaseSchemaChange> changes = new ArrayList<HBaseSchemaChange>();
+    private final Set<ChangeType> types;
+    HBaseSchemaChangeList() { this(EnumSet.allOf(ChangeType.class)); }
+    /** A list that only collects changes of the given types */
+    HBaseSchemaChangeList(Set<ChangeType> types) { this.types = types; }
     public void create(HTableDescriptor newTable){
       HBaseSchemaChange change = new HBaseSchemaChange();
       change.tableName = newTable.getNameAsString();
@@ -121,115 +218,345 @@ public class HBaseSchemaDiff {
       change.oldTable = oldTable;
       changes.add(change);
     }
-    public void alter(HTableDescriptor oldTable, HTableDescriptor newTable, List<PropertyChange> propertyChanges){
+    public void alter(HTableDescriptor oldTable, HTableDescriptor newTable, List<PropertyChange> propertyChanges,
+        boolean tablePropertiesChanged, List<PropertyChange> metadataChanges, List<ColumnFamilyChange> columnFamilyChanges){
       HBaseSchemaChange change = new HBaseSchemaChange();
       change.tableName = oldTable.getNameAsString();
       change.type = ChangeType.ALTER;
       change.newTable = newTable;
       change.oldTable = oldTable;
       change.propertyChanges.addAll(propertyChanges);
+      change.tablePropertiesChanged = tablePropertiesChanged;
+      change.metadataChanges.addAll(metadataChanges);
+      change.columnFamilyChanges.addAll(columnFamilyChanges);
+      change.impact = ChangeImpact.METADATA;
+      for (PropertyChange p : propertyChanges) {
+        if (p.impact.compareTo(change.impact) > 0) change.impact = p.impact;
+      }
       changes.add(change);
     }
-    public void ignore(HTableDescriptor sameTable){
+    public void ignore(String tableName){
       HBaseSchemaChange change = new HBaseSchemaChange();
-      change.tableName = sameTable.getNameAsString();
+      change.tableName = tableName;
       change.type = ChangeType.IGNORE;
-      change.newTable = sameTable;
-      change.oldTable = sameTable;
       changes.add(change);
     }
   }
   
-  private final HBaseSchemaChangeList changeList = new HBaseSchemaChangeList();
-  private final Map<ChangeType, List<HBaseSchemaChange>> changesByType = new HashMap<ChangeType, List<HBaseSchemaChange>>();
+  /** Every table's change, in table name order, once they've been asked for */
+  private volatile List<HBaseSchemaChange> changes;
+  private Map<ChangeType, List<HBaseSchemaChange>> changesByType;
+  private Map<ChangeType, Integer> changeCounts;
+
+  /** Below this many tables, a fork/join task analyzes its tables itself rather than splitting them further */
+  private static final int PARALLEL_THRESHOLD = 256;
 
   /**
    * Make a single pass through the input schemas to detect and organize the changes by type
    */
-  private void analyze() {
+  private synchronized void analyze(ForkJoinPool pool) {
+    if (changes != null) return;
     
-    // reorganize the tables in the two schemas by name
-    Map<String, HTableDescriptor> oldTablesByName = getTableMap(fromSchema);
-    Map<String, HTableDescriptor> newTablesByName = getTableMap(toSchema);
-    Set<String> allTableNames = new HashSet<String>();
-    allTableNames.addAll(oldTablesByName.keySet());
-    allTableNames.addAll(newTablesByName.keySet());
+    String[] sortedTableNames = getSortedTableNames();
     
     // Diff the objects
-    for (String tableName : allTableNames){
-      HTableDescriptor oldTable = oldTablesByName.get(tableName);
-      HTableDescriptor newTable = newTablesByName.get(tableName);
-      
-      // If the object isn't found in old, but is in new, CREATE
-      if (oldTable == null && newTable != null){
-        changeList.create(newTable);
+    List<HBaseSchemaChange> result;
+    if (pool == null) {
+      HBaseSchemaChangeList changeList = new HBaseSchemaChangeList();
+      analyzeTables(sortedTableNames, 0, sortedTableNames.length, changeList);
+      result = changeList.changes;
+    } else {
+      result = pool.invoke(new AnalyzeTask(sortedTableNames, 0, sortedTableNames.length));
+    }
+    
+    // Organize the resulting changes into a map by type, for convenience
+    Map<ChangeType, List<HBaseSchemaChange>> byType = new EnumMap<ChangeType, List<HBaseSchemaChange>>(ChangeType.class);
+    for (ChangeType c : ChangeType.values()) {
+      byType.put(c, new ArrayList<HBaseSchemaChange>());
+    }
+    for (HBaseSchemaChange c : result){
+      byType.get(c.type).add(c);
+    }
+    changesByType = byType;
+    changes = result;
+  }
+
+  /**
+   * The table names of both schemas, merged (they're already in order)
+   */
+  private String[] getSortedTableNames() {
+    return mergeTableNames(fromSchema.getTableNames(), toSchema.getTableNames());
+  }
+
+  /**
+   * Diff the tables with the names from start (inclusive) to end (exclusive), adding the changes to the given list in that order
+   */
+  private void analyzeTables(String[] tableNames, int start, int end, HBaseSchemaChangeList changes) {
+    for (int x = start; x < end; x++){
+      analyzeTable(tableNames[x], changes);
+    }
+  }
+
+  /**
+   * Diff the table with the given name, adding its change to the list if the list takes changes of its type
+   * @return the type of the change
+   */
+  private ChangeType analyzeTable(String tableName, HBaseSchemaChangeList changes) {
+    CompactTable oldCompactTable = fromSchema.getCompactTable(tableName);
+    CompactTable newCompactTable = toSchema.getCompactTable(tableName);
+    
+    // If the object isn't found in old, but is in new, CREATE
+    if (oldCompactTable == null){
+      if (changes.types.contains(ChangeType.CREATE)) changes.create(newCompactTable.toDescriptor());
+      return ChangeType.CREATE;
+    }
+    // if the object isn't found in new, but is in old, DROP
+    if (newCompactTable == null){
+      if (changes.types.contains(ChangeType.DROP)) changes.drop(oldCompactTable.toDescriptor());
+      return ChangeType.DROP;
+    }
+    // identical content can be IGNOREd without comparing attributes, or even making descriptors
+    if (oldCompactTable.fingerprint.equals(newCompactTable.fingerprint)) {
+      if (changes.types.contains(ChangeType.IGNORE)) changes.ignore(tableName);
+      return ChangeType.IGNORE;
+    }
+    // otherwise, it's ALTER or IGNORE
+    HTableDescriptor oldTable = oldCompactTable.toDescriptor();
+    HTableDescriptor newTable = newCompactTable.toDescriptor();
+    List<PropertyChange> tablePropertyChanges = new ArrayList<PropertyChange>();
+    List<ColumnFamilyChange> columnFamilyChanges = new ArrayList<ColumnFamilyChange>();
+    List<PropertyChange> propertyChanges = getTableModifications(oldTable, newTable, tablePropertyChanges, columnFamilyChanges);
+    if (! propertyChanges.isEmpty()){
+      // if it was modified, it's ALTER; metadata only attributes (like the fullSchema every scoot xml table
+      // has) are kept apart, so that changing them alone doesn't make the alter send the whole descriptor
+      List<PropertyChange> metadataChanges = new ArrayList<PropertyChange>();
+      for (PropertyChange p : tablePropertyChanges) {
+        if (p.impact == ChangeImpact.METADATA) metadataChanges.add(p);
       }
-      // if the object isn't found in new, but is in old, DROP
-      else if (oldTable != null && newTable == null){
-        changeList.drop(oldTable);
+      boolean tablePropertiesChanged = metadataChanges.size() < tablePropertyChanges.size();
+      if (changes.types.contains(ChangeType.ALTER)) changes.alter(oldTable, newTable, propertyChanges, tablePropertiesChanged, metadataChanges, columnFamilyChanges);
+      return ChangeType.ALTER;
+    }
+    // if it was not modified, it's IGNORE
+    if (changes.types.contains(ChangeType.IGNORE)) changes.ignore(tableName);
+    return ChangeType.IGNORE;
+  }
+
+  /**
+   * Goes through the tables of the diff one at a time, in table name order, handing back the changes of
+   * the types it was asked for. Changes of every type are counted as the stream goes, and the names of
+   * IGNOREd tables can be kept too, so once the stream is finished, it can report on the tables it skipped.
+   * If the diff's changes were already analyzed when the stream was made, it goes through those rather
+   * than analyzing the tables again. A stream can only be iterated once.
+   */
+  public class ChangeStream implements Iterable<HBaseSchemaChange>, Iterator<HBaseSchemaChange> {
+    private final String[] tableNames;
+    /** The diff's changes, if they were already analyzed */
+    private final List<HBaseSchemaChange> analyzed;
+    private final HBaseSchemaChangeList pending;
+    private final int[] counts = new int[ChangeType.values().length];
+    private final List<String> ignoredTableNames;
+    private int next;
+    private boolean iterated;
+
+    ChangeStream(Set<ChangeType> types, boolean keepIgnoredTableNames) {
+      this.analyzed = changes;
+      this.tableNames = analyzed == null ? getSortedTableNames() : null;
+      this.pending = new HBaseSchemaChangeList(types);
+      this.ignoredTableNames = keepIgnoredTableNames ? new ArrayList<String>() : null;
+    }
+
+    @Override
+    public Iterator<HBaseSchemaChange> iterator() {
+      if (iterated) {
+        throw new IllegalStateException("A change stream can only be iterated once");
       }
-      // otherwise, it's ALTER or IGNORE
-      else if (oldTable != null && newTable != null) {
-        List<PropertyChange> propertyChanges = getTableModifications(oldTable, newTable);
-        if (! propertyChanges.isEmpty()){
-          // if it was modified, it's ALTER
-          changeList.alter(oldTable, newTable, propertyChanges);
+      iterated = true;
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (pending.changes.isEmpty() && next < (analyzed != null ? analyzed.size() : tableNames.length)) {
+        String tableName;
+        ChangeType type;
+        if (analyzed != null) {
+          HBaseSchemaChange c = analyzed.get(next++);
+          tableName = c.tableName;
+          type = c.type;
+          if (pending.types.contains(type)) pending.changes.add(c);
         } else {
-          // if it was not modified, it's IGNORE
-          changeList.ignore(oldTable);
+          tableName = tableNames[next++];
+          type = analyzeTable(tableName, pending);
+        }
+        counts[type.ordinal()]++;
+        if (type == ChangeType.IGNORE && ignoredTableNames != null) {
+          ignoredTableNames.add(tableName);
         }
       }
+      return !pending.changes.isEmpty();
     }
-    
-    // Organize the resulting changes into a map by type, for convenience
-    for (ChangeType c : ChangeType.values()) {
-      changesByType.put(c, new ArrayList<HBaseSchemaChange>());
+
+    @Override
+    public HBaseSchemaChange next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return pending.changes.remove(0);
     }
-    for (HBaseSchemaChange c : changeList.changes){
-      changesByType.get(c.type).add(c);
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The number of tables with the given type of change the stream has gone past so far
+     */
+    public int getCount(ChangeType type) {
+      return counts[type.ordinal()];
+    }
+
+    /**
+     * The names of the IGNOREd tables the stream has gone past so far, if it was asked to keep them
+     */
+    public List<String> getIgnoredTableNames() {
+      Preconditions.checkState(ignoredTableNames != null, "The stream wasn't asked to keep the names of IGNOREd tables");
+      return Collections.unmodifiableList(ignoredTableNames);
+    }
+  }
+
+  /**
+   * Stream the changes that actually do something (CREATE, ALTER and DROP), without keeping the names of
+   * IGNOREd tables
+   */
+  public ChangeStream streamChanges() {
+    return streamChanges(EnumSet.of(ChangeType.CREATE, ChangeType.ALTER, ChangeType.DROP), false);
+  }
+
+  /**
+   * Stream the changes of the given types, optionally keeping the names of IGNOREd tables as the stream
+   * goes past them
+   */
+  public ChangeStream streamChanges(Set<ChangeType> types, boolean keepIgnoredTableNames) {
+    return new ChangeStream(types, keepIgnoredTableNames);
+  }
+
+  /**
+   * The number of tables with each type of change. These are counted with a stream that doesn't keep
+   * any of the changes, unless the lists of changes have already been made.
+   */
+  public synchronized Map<ChangeType, Integer> getChangeCounts() {
+    if (changeCounts == null) {
+      Map<ChangeType, Integer> result = new EnumMap<ChangeType, Integer>(ChangeType.class);
+      if (changes != null) {
+        for (ChangeType type : ChangeType.values()) {
+          result.put(type, changesByType.get(type).size());
+        }
+      } else {
+        ChangeStream stream = streamChanges(EnumSet.noneOf(ChangeType.class), false);
+        while (stream.hasNext()) {
+          stream.next();
+        }
+        for (ChangeType type : ChangeType.values()) {
+          result.put(type, stream.getCount(type));
+        }
+      }
+      changeCounts = Collections.unmodifiableMap(result);
+    }
+    return changeCounts;
+  }
+
+  /**
+   * Splits a range of table names in half until it's small enough to analyze directly, then joins the
+   * halves' changes back together in order.
+   */
+  private class AnalyzeTask extends RecursiveTask<List<HBaseSchemaChange>> {
+    private static final long serialVersionUID = 1L;
+    private final String[] tableNames;
+    private final int start;
+    private final int end;
+
+    AnalyzeTask(String[] tableNames, int start, int end) {
+      this.tableNames = tableNames;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected List<HBaseSchemaChange> compute() {
+      if (end - start <= PARALLEL_THRESHOLD) {
+        HBaseSchemaChangeList changes = new HBaseSchemaChangeList();
+        analyzeTables(tableNames, start, end, changes);
+        return changes.changes;
+      }
+      int middle = (start + end) >>> 1;
+      AnalyzeTask left = new AnalyzeTask(tableNames, start, middle);
+      AnalyzeTask right = new AnalyzeTask(tableNames, middle, end);
+      left.fork();
+      List<HBaseSchemaChange> result = new ArrayList<HBaseSchemaChange>(end - start);
+      List<HBaseSchemaChange> rightChanges = right.compute();
+      result.addAll(left.join());
+      result.addAll(rightChanges);
+      return result;
     }
-    
   }
   
   /**
    * Create the modification data structure from two tables that both exist. Property changes include
    * changes to the properties of the table's attributes, addition or removal of column families, and
-   * changes to the properties of column families.
+   * changes to the properties of column families. The changes to the table's own attributes are also
+   * collected into the first supplied list, and the column families that were added, removed or altered
+   * into the second, in family name order.
    */
-  private List<PropertyChange> getTableModifications(HTableDescriptor oldTable, HTableDescriptor newTable) {
+  private List<PropertyChange> getTableModifications(HTableDescriptor oldTable, HTableDescriptor newTable, 
+      List<PropertyChange> tablePropertyChanges, List<ColumnFamilyChange> columnFamilyChanges) {
     List<PropertyChange> propertyChanges = new ArrayList<PropertyChange>();
     
     // check the table properties
-    propertyChanges.addAll(getPropertyChanges(newTable.getNameAsString(), oldTable.getValues(), newTable.getValues()));
+    for (PropertyChange p : getPropertyChanges(newTable.getNameAsString(), oldTable.getValues(), newTable.getValues())) {
+      if (HBaseSchemaAttribute.isMetadataOnly(p.key)) p.impact = ChangeImpact.METADATA;
+      propertyChanges.add(p);
+      tablePropertyChanges.add(p);
+    }
     
     // check the column families and their properties.
     Map<String,HColumnDescriptor> oldColumnFamilies = getColumnFamilyMap(oldTable.getFamilies());
     Map<String,HColumnDescriptor> newColumnFamilies = getColumnFamilyMap(newTable.getFamilies());
     
     // some are added (new name that didn't previously exist)
-    Set<String> addedColumnFamilies = new HashSet<String>(newColumnFamilies.keySet());
+    Set<String> addedColumnFamilies = new TreeSet<String>(newColumnFamilies.keySet());
     addedColumnFamilies.removeAll(oldColumnFamilies.keySet());
+    Map<String, ColumnFamilyChange> familyChangesByName = new TreeMap<String, ColumnFamilyChange>();
     for (String addedColumnFamily : addedColumnFamilies) {
       propertyChanges.add(new PropertyChange(newTable.getNameAsString(), "Added column family " + addedColumnFamily));
+      familyChangesByName.put(addedColumnFamily, new ColumnFamilyChange(addedColumnFamily, ColumnFamilyChangeType.ADD, null, newColumnFamilies.get(addedColumnFamily)));
     }
 
     // some are removed (old name no longer exists)
-    Set<String> removedColumnFamilies = new HashSet<String>(oldColumnFamilies.keySet());
+    Set<String> removedColumnFamilies = new TreeSet<String>(oldColumnFamilies.keySet());
     removedColumnFamilies.removeAll(newColumnFamilies.keySet());
     for (String removedColumnFamily : removedColumnFamilies) {
       propertyChanges.add(new PropertyChange(oldTable.getNameAsString(), "Removed column family " + removedColumnFamily));
+      familyChangesByName.put(removedColumnFamily, new ColumnFamilyChange(removedColumnFamily, ColumnFamilyChangeType.DELETE, oldColumnFamilies.get(removedColumnFamily), null));
     }
 
     // some are altered
     for (Entry<String, HColumnDescriptor> e : oldColumnFamilies.entrySet()) {
       HColumnDescriptor oldColumnFamily = e.getValue();
       HColumnDescriptor newColumnFamily = newColumnFamilies.get(e.getKey());
-      if (newColumnFamily != null && !oldColumnFamily.equals(newColumnFamily)) {
+      if (newColumnFamily != null && !oldColumnFamily.getValues().equals(newColumnFamily.getValues())) {
         // get the individual property changes, so we can show them as well
-        propertyChanges.addAll(getPropertyChanges(newTable.getNameAsString() + ":" + newColumnFamily.getNameAsString(), oldColumnFamily.getValues(), newColumnFamily.getValues()));
+        for (PropertyChange p : getPropertyChanges(newTable.getNameAsString() + ":" + newColumnFamily.getNameAsString(), oldColumnFamily.getValues(), newColumnFamily.getValues())) {
+          HBaseSchemaAttribute a = HBaseSchemaAttribute.getFromName(p.key);
+          if (a != null && a.requiresRewrite && HColumnDescriptor.class.equals(a.appliesToObjectType)) p.impact = ChangeImpact.REWRITE;
+          propertyChanges.add(p);
+        }
+        familyChangesByName.put(e.getKey(), new ColumnFamilyChange(e.getKey(), ColumnFamilyChangeType.MODIFY, oldColumnFamily, newColumnFamily));
       }
     }
 
+    columnFamilyChanges.addAll(familyChangesByName.values());
     return propertyChanges;
   }
 
@@ -260,25 +587,28 @@ public class HBaseSchemaDiff {
   }
 
   /**
-   * Convert the given collection of tables into a name/object map, throwing an exception if there are duplicates
-   * @param the schema out of which you want to pull tables into the map
+   * Merge two sorted lists of table names into one sorted array, with the names they share appearing once
    */
-  private Map<String, HTableDescriptor> getTableMap(HBaseSchema schema) {
-    Map<String, HTableDescriptor> result = new HashMap<String, HTableDescriptor>();
-    for (HTableDescriptor t : schema.getTables()) {
-      if (result.containsKey(t.getNameAsString())) {
-        throw new ScootException("Schema contains duplicate tables:" + t.getNameAsString());
+  private static String[] mergeTableNames(List<String> oldNames, List<String> newNames) {
+    List<String> result = new ArrayList<String>(Math.max(oldNames.size(), newNames.size()));
+    int o = 0, n = 0;
+    while (o < oldNames.size() || n < newNames.size()) {
+      int cmp = o == oldNames.size() ? 1 : n == newNames.size() ? -1 : oldNames.get(o).compareTo(newNames.get(n));
+      if (cmp <= 0) {
+        result.add(oldNames.get(o++));
+        if (cmp == 0) n++;
+      } else {
+        result.add(newNames.get(n++));
       }
-      result.put(t.getNameAsString(), t);
     }
-    return result;
+    return result.toArray(new String[result.size()]);
   }
 
   /**
    * Convert a collection of column families to a name/object map, throwing an exception if there are duplicates
    */
   private Map<String, HColumnDescriptor> getColumnFamilyMap(Collection<HColumnDescriptor> families) {
-    Map<String, HColumnDescriptor> result = new HashMap<String, HColumnDescriptor>();
+    Map<String, HColumnDescriptor> result = new TreeMap<String, HColumnDescriptor>();
     for (HColumnDescriptor cf : families) {
       if (result.containsKey(cf.getNameAsString())) {
         throw new ScootException("Schema contains duplicate column families:" + cf.getNameAsString());
@@ -288,12 +618,27 @@ public class HBaseSchemaDiff {
     return result;
   }
   
+  /**
+   * The schema being changed from
+   */
+  public HBaseSchema getFromSchema(){
+    return fromSchema;
+  }
+
+  /**
+   * The schema being changed to
+   */
+  public HBaseSchema getToSchema(){
+    return toSchema;
+  }
+
   /**
    * Get the list of tables that are part of this diff
    * @return an umodifiable representation of the list
    */
   public List<HBaseSchemaChange> getTableChanges(){
-    return Collections.unmodifiableList(this.changeList.changes);
+    analyze(null);
+    return Collections.unmodifiableList(this.changes);
   }
   
   /**
@@ -302,6 +647,7 @@ public class HBaseSchemaDiff {
    * @return an umodifiable representation of the list
    */
   public List<HBaseSchemaChange> getTableChangesByType(ChangeType type){
+    analyze(null);
     return Collections.unmodifiableList(changesByType.get(type));
   }
 
@@ -311,6 +657,7 @@ public class HBaseSchemaDiff {
    */
 
   public Map<ChangeType, List<HBaseSchemaChange>> getTableChangesByType(){
+    analyze(null);
     return Collections.unmodifiableMap(changesByType);
   }
 
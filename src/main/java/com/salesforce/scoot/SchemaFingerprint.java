@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * A stable hash of the content of a table or column family: its name and every attribute, taken in
+ * sorted key order so it doesn't depend on how the attributes were put in. A table's fingerprint
+ * covers its column families' fingerprints, so two tables with the same fingerprint are the same,
+ * and the diff doesn't need to compare them attribute by attribute.
+ */
+public final class SchemaFingerprint {
+
+  private final byte[] digest;
+
+  private SchemaFingerprint(byte[] digest) {
+    this.digest = digest;
+  }
+
+  public static SchemaFingerprint of(HColumnDescriptor cf) {
+    MessageDigest md = newDigest();
+    update(md, cf.getName());
+    update(md, cf.getValues());
+    return new SchemaFingerprint(md.digest());
+  }
+
+  /**
+   * Fingerprint a table, using the already computed fingerprints of its column families
+   */
+  public static SchemaFingerprint of(HTableDescriptor table, Map<HColumnDescriptor, SchemaFingerprint> familyFingerprints) {
+    MessageDigest md = newDigest();
+    update(md, table.getName());
+    update(md, table.getValues());
+    // getFamilies() is in family name order
+    for (HColumnDescriptor cf : table.getFamilies()) {
+      SchemaFingerprint f = familyFingerprints.get(cf);
+      md.update((f == null ? of(cf) : f).digest);
+    }
+    return new SchemaFingerprint(md.digest());
+  }
+
+  private static void update(MessageDigest md, byte[] bytes) {
+    // length prefixed, so that adjacent keys and values can't run together into the same bytes
+    md.update(Bytes.toBytes(bytes.length));
+    md.update(bytes);
+  }
+
+  private static void update(MessageDigest md, ImmutableBytesWritable bytes) {
+    md.update(Bytes.toBytes(bytes.getLength()));
+    md.update(bytes.get(), bytes.getOffset(), bytes.getLength());
+  }
+
+  private static void update(MessageDigest md, Map<ImmutableBytesWritable, ImmutableBytesWritable> values) {
+    Map<ImmutableBytesWritable, ImmutableBytesWritable> sorted = values instanceof TreeMap ? values : new TreeMap<ImmutableBytesWritable, ImmutableBytesWritable>(values);
+    md.update(Bytes.toBytes(sorted.size()));
+    for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : sorted.entrySet()) {
+      update(md, e.getKey());
+      update(md, e.getValue());
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new ScootException("MD5 is not available in this JVM.", e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof SchemaFingerprint && Arrays.equals(digest, ((SchemaFingerprint)o).digest);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(digest);
+  }
+
+  @Override
+  public String toString() {
+    return StringUtils.byteToHexString(digest);
+  }
+
+}
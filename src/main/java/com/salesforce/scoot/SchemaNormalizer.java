@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Puts tables into the one form that the diff can compare as plain strings. Schemas come from many places
+ * (files written by hand, live clusters, snapshots, the tuner) and say the same thing in different ways:
+ * "TRUE" or "true", "0100" or "100", "none" or "NONE", or nothing at all where the attribute has its default.
+ * Compared as they are, those all look like changes, and every one of them would cost an alter, and with it
+ * a disable/enable of the table.
+ *
+ * So for every known attribute (see HBaseSchemaAttribute) that applies to the kind of object, the key is
+ * given its proper name, the value is written the canonical way for the attribute's type, and an attribute
+ * that's missing gets its default value, which is what the cluster would report for it anyway. That also
+ * covers attributes that descriptors older than the attribute's minVersion don't carry. Attributes Scoot
+ * doesn't know about are left alone.
+ *
+ * HBaseSchema normalizes every table that's added to it, so this happens to every schema before it's diffed.
+ */
+public final class SchemaNormalizer {
+
+  private SchemaNormalizer() {}
+
+  /**
+   * A normalized copy of the table and its column families. The table passed in isn't changed.
+   */
+  public static HTableDescriptor normalize(HTableDescriptor table) {
+    HTableDescriptor result = new HTableDescriptor(table.getName());
+    copyValues(table.getValues(), result);
+    normalizeTable(result);
+    for (HColumnDescriptor cf : table.getFamilies()) {
+      result.addFamily(normalize(cf));
+    }
+    return result;
+  }
+
+  /**
+   * A normalized copy of the column family. The column family passed in isn't changed.
+   */
+  public static HColumnDescriptor normalize(HColumnDescriptor cf) {
+    HColumnDescriptor result = new HColumnDescriptor(cf.getName());
+    copyValues(cf.getValues(), result);
+    normalizeColumnFamily(result);
+    return result;
+  }
+
+  /**
+   * Replace the values of the table or column family with the given ones, exactly. The copy constructors
+   * aren't used, because they write a column family's cached versions and block size over its values, and
+   * those can be out of date if the values were set directly.
+   */
+  private static void copyValues(Map<ImmutableBytesWritable, ImmutableBytesWritable> values, Object schemaObject) {
+    if (schemaObject instanceof HTableDescriptor) {
+      HTableDescriptor t = (HTableDescriptor)schemaObject;
+      for (ImmutableBytesWritable key : new ArrayList<ImmutableBytesWritable>(t.getValues().keySet())) {
+        t.remove(key.get());
+      }
+      for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : values.entrySet()) {
+        t.setValue(e.getKey().copyBytes(), e.getValue().copyBytes());
+      }
+    } else {
+      HColumnDescriptor cf = (HColumnDescriptor)schemaObject;
+      for (ImmutableBytesWritable key : new ArrayList<ImmutableBytesWritable>(cf.getValues().keySet())) {
+        cf.remove(key.get());
+      }
+      for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : values.entrySet()) {
+        cf.setValue(e.getKey().copyBytes(), e.getValue().copyBytes());
+      }
+    }
+  }
+
+  /**
+   * Normalize the table's own attributes in place, leaving its column families as they are
+   */
+  public static void normalizeTable(HTableDescriptor table) {
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      if (HTableDescriptor.class.equals(a.appliesToObjectType)) {
+        String value = takeValue(table, table.getValues(), a);
+        if (value == null) value = a.defaultValue;
+        if (value != null) table.setValue(a.name, a.normalize(value));
+      }
+    }
+  }
+
+  /**
+   * Normalize the column family's attributes in place
+   */
+  public static void normalizeColumnFamily(HColumnDescriptor cf) {
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      if (HColumnDescriptor.class.equals(a.appliesToObjectType)) {
+        String value = takeValue(cf, cf.getValues(), a);
+        if (value == null) value = a.defaultValue;
+        if (value == null) continue;
+        value = a.normalize(value);
+        // the descriptor caches these two as numbers, and only updates the cache through their setters
+        if (a == HBaseSchemaAttribute.VERSIONS && isInteger(value)) {
+          cf.setMaxVersions(Integer.parseInt(value));
+        } else if (a == HBaseSchemaAttribute.BLOCKSIZE && isInteger(value)) {
+          cf.setBlocksize(Integer.parseInt(value));
+        } else {
+          cf.setValue(a.name, value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove the attribute from the table or column family, under its proper name or any other capitalization
+   * of it, and return its value (or null if it wasn't there). The value under the proper name wins if there's
+   * more than one.
+   */
+  private static String takeValue(Object schemaObject, Map<ImmutableBytesWritable, ImmutableBytesWritable> values, HBaseSchemaAttribute a) {
+    String result = null;
+    List<byte[]> keys = new ArrayList<byte[]>();
+    for (Map.Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : values.entrySet()) {
+      String key = Bytes.toString(e.getKey().get(), e.getKey().getOffset(), e.getKey().getLength());
+      if (a.name.equalsIgnoreCase(key)) {
+        if (result == null || key.equals(a.name)) {
+          result = Bytes.toString(e.getValue().get(), e.getValue().getOffset(), e.getValue().getLength());
+        }
+        keys.add(e.getKey().copyBytes());
+      }
+    }
+    // tables & columns don't share an interface for changing their values
+    for (byte[] key : keys) {
+      if (schemaObject instanceof HTableDescriptor) {
+        ((HTableDescriptor)schemaObject).remove(key);
+      } else {
+        ((HColumnDescriptor)schemaObject).remove(key);
+      }
+    }
+    return result;
+  }
+
+  private static boolean isInteger(String value) {
+    try {
+      Integer.parseInt(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
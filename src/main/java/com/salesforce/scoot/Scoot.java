@@ -27,21 +27,45 @@ package com.salesforce.scoot;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
 
 import com.google.common.base.Preconditions;
+import com.salesforce.scoot.applier.HBaseCompactionScheduler;
+import com.salesforce.scoot.applier.HBaseSchemaPatchApplier;
+import com.salesforce.scoot.applier.HBaseSchemaPatchApplier.StepTiming;
 import com.salesforce.scoot.parser.HBaseClusterParser;
+import com.salesforce.scoot.parser.HBaseClusterParser.SplitPointSource;
+import com.salesforce.scoot.parser.HBaseSchemaAdvisor;
+import com.salesforce.scoot.parser.HBaseSchemaAdvisor.Finding;
 import com.salesforce.scoot.parser.HBaseSchemaParser;
 import com.salesforce.scoot.parser.HBaseScootXMLParser;
 import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+import com.salesforce.scoot.server.HBaseSchemaCache;
+import com.salesforce.scoot.server.ScootClient;
+import com.salesforce.scoot.tuner.HBaseWorkloadTuner;
+import com.salesforce.scoot.tuner.HBaseWorkloadTuner.Recommendation;
+import com.salesforce.scoot.tuner.WorkloadMetrics;
 
 /**
  * Loads, diffs and scripts HBase schemas.
@@ -49,6 +73,7 @@ import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
  */
 public class Scoot {
   
+  private static final Log LOG = LogFactory.getLog(Scoot.class);
   private static final Options options = new Options();
   static {
     options.addOption("f", "from", true, "The schema you want to start with.");
@@ -57,6 +82,22 @@ public class Scoot {
     options.addOption("tp", "to-parser", true, "The parser to use for the 'to' schema. If not supplied, the tool will attempt to auto-detect it.");
     options.addOption("o", "output", true, "The name of the file to output.");
     options.addOption("h", "help", true, "Get help on using this utility.");
+    options.addOption("a", "apply", false, "Apply the changes directly to the 'from' cluster instead of only writing a script.");
+    options.addOption("as", "alter-strategy", true, "How to alter existing tables: OFFLINE (disable, modify, enable; the default), ONLINE (modify while enabled) or AUTO (online, falling back to offline if the cluster refuses).");
+    options.addOption("ms", "metadata-strategy", true, "How to alter existing tables whose only changes are to metadata no region server reads (e.g. fullSchema, OWNER), which never disables them: ONLINE (modify them all online after the other changes; the default) or DEFER (leave them until their next alter).");
+    options.addOption("w", "workers", true, "When applying, how many tables to change at the same time. Defaults to 1.");
+    options.addOption("rs", "rs-limit", true, "When applying with more than one worker, how many table changes may touch a single region server at the same time. Defaults to no limit.");
+    options.addOption("dw", "diff-workers", true, "How many threads to compare tables on. Defaults to 1.");
+    options.addOption("pw", "parse-workers", true, "When parsing a live cluster, how many threads fetch table descriptors at the same time. Defaults to 1 (all in one call).");
+    options.addOption("mc", "major-compact", false, "When applying, major compact the regions of tables whose column families changed an attribute that only applies to rewritten files (compression, encoding, block size, bloom filter).");
+    options.addOption("cr", "compact-rs-limit", true, "When major compacting, how many regions may compact at the same time on a single region server. Defaults to 1.");
+    options.addOption("cb", "compact-mb-per-sec", true, "When major compacting, how many MB of store files per second may be handed to compactions. Defaults to no limit.");
+    options.addOption("l", "lint", false, "Check the 'to' schema (or the 'from' schema, if that's the only one) for settings likely to hurt performance, and print what's found. Without -o or -a, only the check is done.");
+    options.addOption("lf", "lint-fail-on", true, "When linting, fail if anything is found at this severity or above: INFO, WARNING or ERROR. Defaults to OFF (never fail).");
+    options.addOption("lr", "lint-rules", true, "When linting, a properties file of rule severities (e.g. NO_COMPRESSION=ERROR, or OFF), 'failOn' and 'maxVersions'.");
+    options.addOption("wm", "workload-metrics", true, "Instead of a 'to' schema, use the 'from' schema tuned for the workload in this metrics file (scoot's per-region JSON, or a region server JMX JSON dump).");
+    options.addOption("nd", "no-daemon", false, "Do the work in this process, even if a scoot daemon is running.");
+    options.addOption("sp", "split-points", true, "When the 'to' schema is a live cluster, create new tables with the split points its tables have: REGIONS (their current region start keys) or SAMPLE (evenly spaced keys from a sample of their rows). Defaults to NONE.");
   }
   
   private final String fromSchemaName;
@@ -65,6 +106,24 @@ public class Scoot {
   private final String toSchemaParser;
   private final String outputFileName;
   private final boolean helpMode;
+  private final boolean applyMode;
+  private final int applyWorkers;
+  private final int applyRegionServerLimit;
+  private final AlterStrategy alterStrategy;
+  private final MetadataStrategy metadataStrategy;
+  private final int parseWorkers;
+  private final SplitPointSource splitPointSource;
+  private final boolean majorCompactMode;
+  private final boolean lintMode;
+  private final String workloadMetricsFileName;
+  private final String lintFailOn;
+  private final String lintRulesFileName;
+  private final int compactRegionServerLimit;
+  private final long compactBytesPerSecond;
+  private final int diffWorkers;
+  private final boolean noDaemon;
+  private PrintStream out = System.out;
+  private HBaseSchemaCache schemaCache;
   
   /**
    * Create an instance of scoot with the supplied args
@@ -118,6 +177,25 @@ public class Scoot {
         outputFileName = null;
       }
 
+      alterStrategy = AlterStrategy.getFromName(command.getOptionValue("as", AlterStrategy.OFFLINE.name()));
+      metadataStrategy = MetadataStrategy.getFromName(command.getOptionValue("ms", MetadataStrategy.ONLINE.name()));
+      applyMode = command.hasOption("a");
+      applyWorkers = Integer.parseInt(command.getOptionValue("w", "1"));
+      applyRegionServerLimit = Integer.parseInt(command.getOptionValue("rs", "0"));
+      parseWorkers = Integer.parseInt(command.getOptionValue("pw", "1"));
+      splitPointSource = SplitPointSource.getFromName(command.getOptionValue("sp", SplitPointSource.NONE.name()));
+      majorCompactMode = command.hasOption("mc");
+      lintMode = command.hasOption("l");
+      workloadMetricsFileName = command.getOptionValue("wm");
+      lintFailOn = command.getOptionValue("lf");
+      lintRulesFileName = command.getOptionValue("lr");
+      compactRegionServerLimit = Integer.parseInt(command.getOptionValue("cr", "1"));
+      compactBytesPerSecond = Long.parseLong(command.getOptionValue("cb", "0")) * 1024 * 1024;
+      diffWorkers = Integer.parseInt(command.getOptionValue("dw", "1"));
+      noDaemon = command.hasOption("nd");
+
+    } catch (NumberFormatException e) {
+      throw new ScootException("Error during initialization: ", e);
     } catch (ParseException e) {
       throw new ScootException("Error during initialization: ", e);
     }
@@ -125,10 +203,27 @@ public class Scoot {
   }
   
   /**
-   * Can be run from a command line
+   * Where to print reports, instead of standard out
+   */
+  public void setOutput(PrintStream out) {
+    this.out = Preconditions.checkNotNull(out);
+  }
+
+  /**
+   * Reuse parsed schemas and cluster connections from the cache, instead of parsing and connecting afresh
+   */
+  public void setSchemaCache(HBaseSchemaCache schemaCache) {
+    this.schemaCache = schemaCache;
+  }
+
+  /**
+   * Can be run from a command line. If a scoot daemon is running, the work is handed to it.
    */
   public static void main(String[] args) {
-    new Scoot(args).run();
+    Scoot scoot = new Scoot(args);
+    if (scoot.helpMode || scoot.noDaemon || !ScootClient.run(args, System.out)) {
+      scoot.run();
+    }
   }
 
   /**
@@ -138,48 +233,181 @@ public class Scoot {
 
     if (helpMode){
       HelpFormatter hf = new HelpFormatter();
-      hf.printHelp("scoot", options);
+      PrintWriter pw = new PrintWriter(out);
+      hf.printHelp(pw, hf.getWidth(), "scoot", null, options, hf.getLeftPadding(), hf.getDescPadding(), null);
+      pw.flush();
       return;
     }
 
     Preconditions.checkNotNull(fromSchemaName, "Missing 'from' schema argument.");
     
-    HBaseSchema fromSchema = parseSchema(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser);
-    HBaseSchema toSchema = parseSchema(toSchemaName, toSchemaParser == null ? getDefaultParser(toSchemaName) : toSchemaParser);
+    HBaseSchema fromSchema = parseSchema(fromSchemaName, fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser, SplitPointSource.NONE);
+    HBaseSchema toSchema = parseSchema(toSchemaName, toSchemaParser == null ? getDefaultParser(toSchemaName) : toSchemaParser, splitPointSource);
+    if (workloadMetricsFileName != null) {
+      Preconditions.checkArgument(toSchema == null, "A 'to' schema can't be given along with workload metrics.");
+      toSchema = tune(fromSchema);
+    }
     
+    if (lintMode) {
+      lint(toSchema != null ? toSchema : fromSchema);
+      if (outputFileName == null && !applyMode) return;
+    }
+
     // if there's no "to" schema, use an empty one (i.e. script this as a create operation)
     if (toSchema == null) toSchema = new HBaseSchema();
-    HBaseSchemaDiff diff = new HBaseSchemaDiff(fromSchema, toSchema);
-    String script = new HBaseRubySchemaPatchScripter(diff).generateScript();
-    writeFile(outputFileName, script);
+    HBaseSchemaDiff diff = diff(fromSchema, toSchema);
+    if (applyMode) {
+      String parser = fromSchemaParser == null ? getDefaultParser(fromSchemaName) : fromSchemaParser;
+      Preconditions.checkArgument(isClusterParser(parser), "The 'from' schema must be a live cluster to apply changes.");
+      applyChanges(fromSchemaName, diff);
+      // the script is still useful as a record of what was done, if one was asked for
+      if (outputFileName == null) return;
+    } else {
+      Map<String, Set<String>> needCompaction = HBaseCompactionScheduler.getFamiliesNeedingCompaction(diff);
+      if (!needCompaction.isEmpty()) {
+        LOG.info("These column families only pick up their changes once major compacted (apply with -mc to do that gradually): " + needCompaction);
+      }
+    }
+    HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(diff, alterStrategy);
+    scripter.setMetadataStrategy(metadataStrategy);
+    writeFile(outputFileName, scripter);
+  }
+
+  /**
+   * Recommend a schema for the workload in the metrics file, and print the reasons for each change
+   */
+  private HBaseSchema tune(HBaseSchema schema) {
+    HBaseWorkloadTuner tuner = new HBaseWorkloadTuner();
+    HBaseSchema tuned = tuner.tune(schema, WorkloadMetrics.read(new File(workloadMetricsFileName)));
+    for (Recommendation r : tuner.getRecommendations()) {
+      out.println(r);
+    }
+    return tuned;
+  }
+
+  /**
+   * Run the performance advisor over the schema and print its findings; it throws if they're serious enough
+   */
+  private void lint(HBaseSchema schema) {
+    HBaseSchemaAdvisor advisor = new HBaseSchemaAdvisor();
+    if (lintRulesFileName != null) {
+      Properties rules = new Properties();
+      try {
+        Reader in = Files.newBufferedReader(new File(lintRulesFileName).toPath(), StandardCharsets.UTF_8);
+        try {
+          rules.load(in);
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        throw new ScootException("Unable to read lint rules from " + lintRulesFileName + ": " + e.getMessage(), e);
+      }
+      advisor.configure(rules);
+    }
+    if (lintFailOn != null) {
+      Properties failOn = new Properties();
+      failOn.setProperty("failOn", lintFailOn);
+      advisor.configure(failOn);
+    }
+    for (Finding f : advisor.check(schema)) {
+      out.println(f);
+    }
+  }
+
+  /**
+   * Diff the schemas, on a fork/join pool if more than one diff worker was asked for
+   */
+  private HBaseSchemaDiff diff(HBaseSchema fromSchema, HBaseSchema toSchema) {
+    if (diffWorkers <= 1) {
+      return new HBaseSchemaDiff(fromSchema, toSchema);
+    }
+    ForkJoinPool pool = new ForkJoinPool(diffWorkers);
+    try {
+      return new HBaseSchemaDiff(fromSchema, toSchema, pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Apply the diff directly to the cluster with the given zookeeper quorum, and report how long each step took
+   */
+  private void applyChanges(String zookeeperQuorum, HBaseSchemaDiff diff) {
+    try {
+      // a cached connection is shared with later requests, so only an admin with its own connection is closed
+      HBaseAdmin admin = schemaCache != null ? new HBaseAdmin(schemaCache.getConnection(zookeeperQuorum))
+          : new HBaseAdmin(HBaseClusterParser.createConfig(zookeeperQuorum));
+      try {
+        HBaseSchemaPatchApplier applier = new HBaseSchemaPatchApplier(diff, admin);
+        applier.setParallelism(applyWorkers);
+        applier.setMaxConcurrentChangesPerRegionServer(applyRegionServerLimit);
+        applier.setAlterStrategy(alterStrategy);
+        applier.setMetadataStrategy(metadataStrategy);
+        List<StepTiming> timings = applier.apply();
+        for (StepTiming t : timings) {
+          out.println(t);
+        }
+        if (majorCompactMode) {
+          Map<String, Set<String>> needCompaction = HBaseCompactionScheduler.getFamiliesNeedingCompaction(diff);
+          if (!needCompaction.isEmpty()) {
+            HBaseCompactionScheduler scheduler = new HBaseCompactionScheduler(admin);
+            scheduler.setMaxConcurrentPerRegionServer(compactRegionServerLimit);
+            scheduler.setMaxBytesPerSecond(compactBytesPerSecond);
+            out.println(scheduler.compact(needCompaction));
+          }
+        }
+      } finally {
+        if (schemaCache == null) admin.close();
+      }
+    } catch (IOException e) {
+      throw new ScootException("Unable to connect to cluster to apply changes: " + e.getMessage(), e);
+    }
   }
   
   /**
    * Detect the schema type based on the name and / or supplied parser, and return a parsed schema object.
    * @param schemaName The name of the resource you're pulling schema from (the format of which depends on which parser you're using)
    * @param schemaParser Fully qualified class name of the parser to use
+   * @param splitPoints Whether a live cluster's split points should be recorded too
    */
-  private HBaseSchema parseSchema(String schemaName, String schemaParser) {
+  private HBaseSchema parseSchema(String schemaName, String schemaParser, SplitPointSource splitPoints) {
     if (schemaName == null || schemaParser == null) return null;
     try {
       HBaseSchemaParser parser = (HBaseSchemaParser)Class.forName(schemaParser).newInstance();
       try {
     	  parser.setResourceToParse(schemaName);
+    	  if (parser instanceof HBaseClusterParser) {
+    	    ((HBaseClusterParser)parser).setParallelism(parseWorkers);
+    	    ((HBaseClusterParser)parser).setSplitPointSource(splitPoints);
+    	  }
       } catch (Exception e){
           throw new ScootException("Unable to parse given resource using parser '" + schemaParser + "': " + schemaName);
       }
-      return parser.parse();
+      return schemaCache != null ? schemaCache.parse(parser, schemaName, splitPoints) : parser.parse();
     } catch (Exception e) {
       throw new ScootException("Unable to instantiate supplied parser: " + schemaParser);
     } 
   }
 
+  /**
+   * Whether the named parser reads from a live cluster
+   */
+  private boolean isClusterParser(String schemaParser) {
+    try {
+      return HBaseClusterParser.class.isAssignableFrom(Class.forName(schemaParser));
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
   /**
    * For xml files, default is the scoot xml parser; for anything else, assume it's a live cluster.
    * TODO: this should probably be pluggable using an implementation supplied by injected parser classes.
    */
   private String getDefaultParser(String schemaName) {
-    if (schemaName.endsWith(".xml")) {
+    if (schemaName == null) {
+      return null;
+    } else if (schemaName.endsWith(".xml")) {
       return HBaseScootXMLParser.class.getName();
     } else {
       return HBaseClusterParser.class.getName();
@@ -187,23 +415,33 @@ public class Scoot {
   }
 
   /**
-   * First write the file to a temp location, then move it to the desired location
+   * First write the file to a temp location, then move it to the desired location. The script is
+   * streamed to the temp file as it's generated, and the temp file is in the same directory as the
+   * destination, so the move is a rename rather than a second copy.
    */
-  private void writeFile(String outputFileName, String script) {
-    File destination = new File(outputFileName);
+  private void writeFile(String outputFileName, HBaseRubySchemaPatchScripter scripter) {
+    Path destination = new File(outputFileName).getAbsoluteFile().toPath();
     try{
-      File tmp = File.createTempFile("scoot_output_file_" + System.currentTimeMillis(), null);
-      FileWriter fstream = new FileWriter(tmp, false);
-      BufferedWriter out = new BufferedWriter(fstream);
-      out.write(script.toString());
-      out.close();
-
-      // if successful, move to real location
+      Path tmp = Files.createTempFile(destination.getParent(), "scoot_output_file_" + System.currentTimeMillis(), null);
       try {
-        FileUtils.moveFile(tmp, destination);
-      } catch (IOException e) {
-          throw new ScootException("Could not move temporary file " + tmp.getAbsolutePath() + " to " + destination + ": " + e.getMessage());
+        BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+        try {
+          scripter.generateScript(out);
+        } finally {
+          out.close();
+        }
+
+        // if successful, move to real location
+        try {
+          Files.move(tmp, destination);
+        } catch (IOException e) {
+            throw new ScootException("Could not move temporary file " + tmp + " to " + destination + ": " + e.getMessage());
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
       }
+    }catch (ScootException x){
+      throw x;
     }catch (Exception x){ //Catch exception if any
       throw new ScootException("Error writing output script file: " + x.getMessage(), x);
     }
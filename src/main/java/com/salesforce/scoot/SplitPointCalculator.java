@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.RegionSplitter;
+import org.apache.hadoop.hbase.util.RegionSplitter.SplitAlgorithm;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Works out the explicit split keys a new table should be created with, so that its regions
+ * divide the key space the table will actually use rather than the whole \x00-\xFF byte range.
+ *
+ * The inputs are all on the table descriptor:
+ * <ul>
+ * <li>NUMREGIONS: how many regions to create. Without it (and without SALT_BUCKETS) the table isn't pre-split.</li>
+ * <li>SPLITALGO: HexStringSplit, UniformSplit, or the class name of any RegionSplitter.SplitAlgorithm.
+ *     When set, it decides the split keys, just as it would for the hbase shell.</li>
+ * <li>SALT_BUCKETS: the row key starts with a single salt byte in [0, SALT_BUCKETS). Every bucket boundary
+ *     becomes a split key, and the remaining regions are spread evenly within each bucket.</li>
+ * <li>The &lt;key&gt;/&lt;keyPart&gt; definition kept in the table's fullSchema. When there's no SPLITALGO,
+ *     the type and length of the leading key part pick the key space to divide up.</li>
+ * </ul>
+ * Split points captured from a live table (see HBaseClusterParser.setSplitPointSource) take precedence over all of these.
+ */
+public class SplitPointCalculator {
+
+  static final String KEY_ELEMENT = "key";
+  static final String KEY_PART_ELEMENT = "keyPart";
+
+  /** Leading key part types stored as printable ids, e.g. 15 character salesforce ids */
+  private static final byte[] ALPHANUMERIC = Bytes.toBytes("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+  /** Leading key part types stored as lower case hex strings */
+  private static final byte[] HEX = Bytes.toBytes("0123456789abcdef");
+  /** Leading key part types stored as fixed width binary */
+  private static final byte[] BINARY = new byte[256];
+  static {
+    for (int x = 0; x < BINARY.length; x++) BINARY[x] = (byte)x;
+  }
+  /** How many leading characters (or bytes) of the key get divided up; more than this adds nothing useful */
+  private static final int MAX_SPLIT_WIDTH = 4;
+
+  /**
+   * A single part of a table's row key, as declared in the scoot xml
+   */
+  public static class KeyPart {
+    public final String name;
+    public final String type;
+    public final int length;
+    public final boolean inverted;
+
+    public KeyPart(String name, String type, int length, boolean inverted) {
+      this.name = name;
+      this.type = type;
+      this.length = length;
+      this.inverted = inverted;
+    }
+  }
+
+  /**
+   * Return the split keys to create a table from this schema with. Split points the schema captured from
+   * a cluster are used as they are; otherwise they're computed from the table's own settings.
+   */
+  public static byte[][] getSplitPoints(HBaseSchema schema, HTableDescriptor table) {
+    byte[][] captured = schema.getSplitPoints(table.getNameAsString());
+    return captured != null ? captured : getSplitPoints(table);
+  }
+
+  /**
+   * Return the split keys to create this table with, or null if it shouldn't be pre-split.
+   */
+  public static byte[][] getSplitPoints(HTableDescriptor table) {
+    String numRegions = table.getValue(HBaseSchemaAttribute.NUMREGIONS.name());
+    String saltBuckets = table.getValue(HBaseSchemaAttribute.SALT_BUCKETS.name());
+    if (numRegions == null && saltBuckets == null) {
+      return null;
+    }
+    try {
+      int buckets = saltBuckets == null ? 0 : Integer.parseInt(saltBuckets);
+      int regions = numRegions == null ? buckets : Integer.parseInt(numRegions);
+      String fullSchema = table.getValue(HBaseScootXMLParser.FULL_SCHEMA_PROPERTY);
+      return getSplitPoints(regions, table.getValue(HBaseSchemaAttribute.SPLITALGO.name()), buckets,
+          fullSchema == null ? Collections.<KeyPart>emptyList() : getKeyParts(fullSchema));
+    } catch (NumberFormatException e) {
+      throw new ScootException("Invalid pre-split settings for table '" + table.getNameAsString() + "': " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Compute the split keys for a table with the given number of regions. There are always regions - 1 of them,
+   * in ascending order, except where salting forces more (one region per bucket at least).
+   */
+  public static byte[][] getSplitPoints(int numRegions, String splitAlgorithm, int saltBuckets, List<KeyPart> keyParts) {
+    Preconditions.checkArgument(saltBuckets >= 0 && saltBuckets <= 256, "SALT_BUCKETS must be between 0 and 256, not %s", saltBuckets);
+    Preconditions.checkArgument(numRegions >= 1, "NUMREGIONS must be at least 1, not %s", numRegions);
+
+    if (saltBuckets <= 1) {
+      if (splitAlgorithm == null && keyParts.isEmpty()) {
+        return getLegacySplitPoints(numRegions);
+      }
+      return split(numRegions, splitAlgorithm, keyParts);
+    }
+
+    // one region per bucket at least, and any more spread evenly inside each bucket
+    int regionsPerBucket = Math.max(1, numRegions / saltBuckets);
+    byte[][] withinBucket = split(regionsPerBucket, splitAlgorithm, keyParts);
+    List<byte[]> result = new ArrayList<byte[]>(saltBuckets * regionsPerBucket);
+    for (int bucket = 0; bucket < saltBuckets; bucket++) {
+      byte[] salt = new byte[] { (byte)bucket };
+      if (bucket > 0) {
+        result.add(salt);
+      }
+      for (byte[] point : withinBucket) {
+        result.add(Bytes.add(salt, point));
+      }
+    }
+    return result.toArray(new byte[result.size()][]);
+  }
+
+  /**
+   * Read the key parts out of a table's fullSchema xml. Tables without a &lt;key&gt; have none.
+   */
+  public static List<KeyPart> getKeyParts(String fullSchema) {
+    List<KeyPart> result = new ArrayList<KeyPart>();
+    try {
+      Element table = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .parse(new InputSource(new StringReader(fullSchema))).getDocumentElement();
+      NodeList keys = table.getElementsByTagName(KEY_ELEMENT);
+      if (keys.getLength() == 0) {
+        return result;
+      }
+      NodeList parts = ((Element)keys.item(0)).getElementsByTagName(KEY_PART_ELEMENT);
+      for (int x = 0; x < parts.getLength(); x++) {
+        Element part = (Element)parts.item(x);
+        String length = part.getAttribute("length");
+        result.add(new KeyPart(part.getAttribute("name"), part.getAttribute("type"),
+            length.isEmpty() ? 0 : Integer.parseInt(length), Boolean.parseBoolean(part.getAttribute("inverted"))));
+      }
+    } catch (Exception e) {
+      throw new ScootException("Unable to read key definition from table schema: " + e.getMessage(), e);
+    }
+    return result;
+  }
+
+  /**
+   * Split one (unsalted) key space into numRegions, using the split algorithm if there is one,
+   * and otherwise the leading key part.
+   */
+  private static byte[][] split(int numRegions, String splitAlgorithm, List<KeyPart> keyParts) {
+    if (numRegions <= 1) {
+      return new byte[0][];
+    }
+    if (splitAlgorithm != null) {
+      return getSplitAlgorithm(splitAlgorithm).split(numRegions);
+    }
+    if (keyParts.isEmpty()) {
+      return splitEvenly(BINARY, 1, numRegions);
+    }
+    KeyPart leading = keyParts.get(0);
+    int width = Math.min(MAX_SPLIT_WIDTH, leading.length > 0 ? leading.length : MAX_SPLIT_WIDTH);
+    return splitEvenly(getAlphabet(leading.type, leading.inverted), width, numRegions);
+  }
+
+  /**
+   * What bytes can the leading positions of a key part of this type hold? Character data is assumed to be
+   * ids; anything else is treated as fixed width binary.
+   */
+  static byte[] getAlphabet(String keyPartType) {
+    if ("String".equalsIgnoreCase(keyPartType) || "Char".equalsIgnoreCase(keyPartType) || "Varchar".equalsIgnoreCase(keyPartType)) {
+      return ALPHANUMERIC;
+    }
+    if ("Hex".equalsIgnoreCase(keyPartType) || "HexString".equalsIgnoreCase(keyPartType)) {
+      return HEX;
+    }
+    return BINARY;
+  }
+
+  /**
+   * As above, for a key part that may be stored inverted (every byte flipped, so that it sorts descending).
+   * The flipped bytes are returned in ascending order, as splitEvenly needs them.
+   */
+  static byte[] getAlphabet(String keyPartType, boolean inverted) {
+    byte[] alphabet = getAlphabet(keyPartType);
+    if (!inverted) {
+      return alphabet;
+    }
+    byte[] result = new byte[alphabet.length];
+    for (int x = 0; x < alphabet.length; x++) {
+      result[alphabet.length - 1 - x] = (byte)~alphabet[x];
+    }
+    return result;
+  }
+
+  /**
+   * Divide the keys made of width symbols from the alphabet into numRegions equal ranges, and
+   * return the start of every range but the first.
+   */
+  static byte[][] splitEvenly(byte[] alphabet, int width, int numRegions) {
+    BigInteger radix = BigInteger.valueOf(alphabet.length);
+    BigInteger range = radix.pow(width);
+    // don't make more regions than there are distinct keys
+    int regions = (int)Math.min(numRegions, range.min(BigInteger.valueOf(Integer.MAX_VALUE)).longValue());
+    byte[][] result = new byte[regions - 1][];
+    for (int x = 1; x < regions; x++) {
+      BigInteger position = range.multiply(BigInteger.valueOf(x)).divide(BigInteger.valueOf(regions));
+      byte[] key = new byte[width];
+      for (int d = width - 1; d >= 0; d--) {
+        BigInteger[] qr = position.divideAndRemainder(radix);
+        key[d] = alphabet[qr[1].intValue()];
+        position = qr[0];
+      }
+      result[x - 1] = key;
+    }
+    return result;
+  }
+
+  /**
+   * The split keys HBaseAdmin.createTable(desc, \x00, \xFF, numRegions) has always used for tables
+   * we know nothing about.
+   */
+  private static byte[][] getLegacySplitPoints(int numRegions) {
+    if (numRegions <= 1) {
+      return new byte[0][];
+    }
+    if (numRegions == 2) {
+      return splitEvenly(BINARY, 1, 2);
+    }
+    return Bytes.split(new byte[] { (byte)0x00 }, new byte[] { (byte)0xFF }, numRegions - 3);
+  }
+
+  /**
+   * Look up a split algorithm by its short name (as the hbase shell accepts them) or its class name
+   */
+  static SplitAlgorithm getSplitAlgorithm(String name) {
+    if ("HexStringSplit".equalsIgnoreCase(name)) {
+      return new RegionSplitter.HexStringSplit();
+    }
+    if ("UniformSplit".equalsIgnoreCase(name)) {
+      return new RegionSplitter.UniformSplit();
+    }
+    try {
+      Class<?> c = Class.forName(name);
+      if (!SplitAlgorithm.class.isAssignableFrom(c)) {
+        throw new ScootException("Split algorithm '" + name + "' doesn't implement " + SplitAlgorithm.class.getName());
+      }
+      return (SplitAlgorithm)c.newInstance();
+    } catch (ClassNotFoundException e) {
+      throw new ScootException("Unknown split algorithm '" + name + "'; expected HexStringSplit, UniformSplit, or a class name.", e);
+    } catch (InstantiationException e) {
+      throw new ScootException("Unable to create split algorithm '" + name + "'", e);
+    } catch (IllegalAccessException e) {
+      throw new ScootException("Unable to create split algorithm '" + name + "'", e);
+    }
+  }
+
+  /**
+   * Render a split key for a ruby script, in the form Bytes.toBytesBinary reads back
+   */
+  public static String toBinaryString(byte[] key) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : key) {
+      int c = b & 0xFF;
+      if ((c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+        sb.append((char)c);
+      } else {
+        sb.append(String.format("\\x%02X", c));
+      }
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.applier;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.HServerLoad.RegionLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.HBaseSchemaDiff;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChange;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Some column family attributes (see HBaseSchemaAttribute.requiresRewrite) only apply to store files written
+ * after the change, so existing data only picks them up when it's major compacted. This finds the tables a
+ * diff changed in that way, and major compacts them one region at a time, without letting the compactions
+ * swamp the cluster: at most a set number of regions compact on any one region server at once, and new
+ * compactions only start as fast as a budget of bytes per second allows. Only the families that need it
+ * are compacted, where the HBase client can ask for that (releases after 0.94.0); otherwise whole regions are.
+ *
+ * Major compactions are asynchronous, and may sit in the region server's queue for a while before they
+ * start, so progress is followed through the region loads the region servers report to the master (see
+ * CompactionWatch). A region counts as done once a compaction has been seen to run on it since it was
+ * asked for, or when it times out.
+ */
+public class HBaseCompactionScheduler {
+
+  private static final Log LOG = LogFactory.getLog(HBaseCompactionScheduler.class);
+  private static final long MEGABYTE = 1024 * 1024;
+  /** HBaseAdmin.majorCompact(tableOrRegionName, family), or null if this HBase client doesn't have it */
+  private static final Method MAJOR_COMPACT_FAMILY = findMajorCompactFamily();
+
+  private final HBaseAdmin admin;
+  private int maxConcurrentPerRegionServer = 1;
+  private long maxBytesPerSecond = 0;
+  private long pollMillis = 5000;
+  private long regionTimeoutMillis = 60 * 60 * 1000;
+
+  /**
+   * Where a run of compactions has got to
+   */
+  public static class Progress {
+    public int regionsTotal;
+    public int regionsDone;
+    public int regionsTimedOut;
+    public long bytesTotal;
+    public long bytesDone;
+    @Override public String toString(){
+      return regionsDone + " of " + regionsTotal + " regions compacted (" + bytesDone / MEGABYTE + " of " + bytesTotal / MEGABYTE + " MB"
+          + (regionsTimedOut > 0 ? ", " + regionsTimedOut + " timed out" : "") + ")";
+    }
+  }
+
+  /**
+   * One region waiting for, or going through, a major compaction of some of its families
+   */
+  private static class RegionTask {
+    final String tableName;
+    final byte[] regionName;
+    final Collection<String> families;
+    final String server;
+    final long sizeBytes;
+    long requestedMillis;
+    CompactionWatch watch;
+
+    RegionTask(String tableName, byte[] regionName, Collection<String> families, String server, long sizeBytes) {
+      this.tableName = tableName; this.regionName = regionName; this.families = families; this.server = server; this.sizeBytes = sizeBytes;
+    }
+  }
+
+  /**
+   * Follows one region's compaction through the loads it reports, from the moment the compaction is asked
+   * for. A compaction that's still queued looks just like none at all, so it's only seen by what it changes:
+   * either it's caught running, or the region's compaction counters have moved on from where they were when
+   * it was asked for, which they do even if it starts and finishes between two reports. The store file count
+   * dropping counts as well. Anything else, including a region already down to one store file per store,
+   * is still waiting.
+   */
+  public static class CompactionWatch {
+    private RegionLoad before;
+    private boolean seenCompacting;
+
+    /**
+     * Watch a region whose load when its compaction was asked for is the given one (or null if it hadn't
+     * reported one yet, in which case its first report is used instead)
+     */
+    public CompactionWatch(RegionLoad before) {
+      this.before = before;
+    }
+
+    /**
+     * Has the compaction finished, going by the region's latest load? A region that's gone from the loads
+     * has been split or moved, which rewrites or reopens it anyway.
+     */
+    public boolean isFinished(RegionLoad load) {
+      if (load == null) return true;
+      if (load.getCurrentCompactedKVs() < load.getTotalCompactingKVs()) {
+        seenCompacting = true;
+        return false;
+      }
+      if (seenCompacting) return true;
+      if (before == null) {
+        before = load;
+        return false;
+      }
+      return load.getTotalCompactingKVs() != before.getTotalCompactingKVs()
+          || load.getCurrentCompactedKVs() != before.getCurrentCompactedKVs()
+          || load.getStorefiles() < before.getStorefiles();
+    }
+  }
+
+  public HBaseCompactionScheduler(HBaseAdmin admin) {
+    this.admin = admin;
+  }
+
+  /**
+   * How many regions may major compact at the same time on any one region server. Defaults to 1.
+   */
+  public void setMaxConcurrentPerRegionServer(int maxConcurrentPerRegionServer) {
+    Preconditions.checkArgument(maxConcurrentPerRegionServer > 0, "Compactions per region server must be at least 1.");
+    this.maxConcurrentPerRegionServer = maxConcurrentPerRegionServer;
+  }
+
+  /**
+   * How many bytes of store files per second may be handed to compactions, across the cluster. 0 (the default) means no limit.
+   */
+  public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+    Preconditions.checkArgument(maxBytesPerSecond >= 0, "Compaction byte rate can't be negative.");
+    this.maxBytesPerSecond = maxBytesPerSecond;
+  }
+
+  /**
+   * How often to check on running compactions
+   */
+  public void setPollMillis(long pollMillis) {
+    Preconditions.checkArgument(pollMillis > 0, "Poll interval must be positive.");
+    this.pollMillis = pollMillis;
+  }
+
+  /**
+   * How long to wait for any one region before moving on without it
+   */
+  public void setRegionTimeoutMillis(long regionTimeoutMillis) {
+    Preconditions.checkArgument(regionTimeoutMillis > 0, "Region timeout must be positive.");
+    this.regionTimeoutMillis = regionTimeoutMillis;
+  }
+
+  /**
+   * Find the column families, by table name, whose changes in this diff only take effect on rewrite.
+   * Only modified families of altered tables count; new tables and new families have no old data.
+   */
+  public static Map<String, Set<String>> getFamiliesNeedingCompaction(HBaseSchemaDiff diff) {
+    Map<String, Set<String>> result = new TreeMap<String, Set<String>>();
+    for (HBaseSchemaChange c : diff.streamChanges(EnumSet.of(ChangeType.ALTER), false)) {
+      for (ColumnFamilyChange cfc : c.columnFamilyChanges) {
+        if (cfc.type == ColumnFamilyChangeType.MODIFY && changesRewriteAttribute(cfc.oldFamily, cfc.newFamily)) {
+          Set<String> families = result.get(c.tableName);
+          if (families == null) {
+            families = new TreeSet<String>();
+            result.put(c.tableName, families);
+          }
+          families.add(cfc.familyName);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static boolean changesRewriteAttribute(HColumnDescriptor oldFamily, HColumnDescriptor newFamily) {
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      if (a.requiresRewrite && !getValueOrDefault(oldFamily, a).equalsIgnoreCase(getValueOrDefault(newFamily, a))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String getValueOrDefault(HColumnDescriptor family, HBaseSchemaAttribute a) {
+    String value = family.getValue(a.name);
+    return value != null ? value : String.valueOf(a.defaultValue);
+  }
+
+  /**
+   * Major compact the given families (by table name, as from getFamiliesNeedingCompaction) in every region
+   * of their tables, within the limits, and return once they've all finished (or timed out).
+   */
+  public Progress compact(Map<String, ? extends Collection<String>> familiesByTable) {
+    try {
+      return run(listRegions(familiesByTable));
+    } catch (IOException e) {
+      throw new ScootException("Error while major compacting tables: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScootException("Interrupted while major compacting tables.", e);
+    }
+  }
+
+  /**
+   * Every region of the tables, with its size as last reported, in table and region order
+   */
+  private List<RegionTask> listRegions(Map<String, ? extends Collection<String>> familiesByTable) throws IOException {
+    Map<String, RegionLoad> loads = getRegionLoads();
+    List<RegionTask> result = new ArrayList<RegionTask>();
+    for (Map.Entry<String, ? extends Collection<String>> e : familiesByTable.entrySet()) {
+      for (HRegionLocation location : admin.getConnection().locateRegions(Bytes.toBytes(e.getKey()))) {
+        byte[] regionName = location.getRegionInfo().getRegionName();
+        RegionLoad load = loads.get(Bytes.toStringBinary(regionName));
+        long size = load == null ? 0 : load.getStorefileSizeMB() * MEGABYTE;
+        result.add(new RegionTask(e.getKey(), regionName, e.getValue(), location.getHostnamePort(), size));
+      }
+    }
+    return result;
+  }
+
+  private Map<String, RegionLoad> getRegionLoads() throws IOException {
+    Map<String, RegionLoad> result = new HashMap<String, RegionLoad>();
+    ClusterStatus status = admin.getClusterStatus();
+    for (ServerName server : status.getServers()) {
+      for (RegionLoad load : status.getLoad(server).getRegionsLoad().values()) {
+        result.put(Bytes.toStringBinary(load.getName()), load);
+      }
+    }
+    return result;
+  }
+
+  private Progress run(List<RegionTask> pending) throws IOException, InterruptedException {
+    Progress progress = new Progress();
+    progress.regionsTotal = pending.size();
+    for (RegionTask t : pending) progress.bytesTotal += t.sizeBytes;
+    LOG.info("Major compacting " + progress.regionsTotal + " regions (" + progress.bytesTotal / MEGABYTE + " MB), at most "
+        + maxConcurrentPerRegionServer + " per region server" + (maxBytesPerSecond > 0 ? " and " + maxBytesPerSecond / MEGABYTE + " MB/s" : "") + ".");
+    if (MAJOR_COMPACT_FAMILY == null) {
+      LOG.info("This HBase client can't major compact single column families, so whole regions are compacted.");
+    }
+
+    List<RegionTask> running = new ArrayList<RegionTask>();
+    Map<String, Integer> runningPerServer = new HashMap<String, Integer>();
+    long nextStartMillis = 0;
+    while (!pending.isEmpty() || !running.isEmpty()) {
+      long now = System.currentTimeMillis();
+      Map<String, RegionLoad> loads = getRegionLoads();
+
+      // check on what's running
+      if (!running.isEmpty()) {
+        for (Iterator<RegionTask> it = running.iterator(); it.hasNext();) {
+          RegionTask t = it.next();
+          boolean timedOut = now - t.requestedMillis > regionTimeoutMillis;
+          if (t.watch.isFinished(loads.get(Bytes.toStringBinary(t.regionName))) || timedOut) {
+            it.remove();
+            runningPerServer.put(t.server, runningPerServer.get(t.server) - 1);
+            progress.regionsDone++;
+            progress.bytesDone += t.sizeBytes;
+            if (timedOut) {
+              progress.regionsTimedOut++;
+              LOG.warn("Gave up waiting for region " + Bytes.toStringBinary(t.regionName) + " of '" + t.tableName + "' to major compact.");
+            }
+            LOG.info("Major compaction: " + progress);
+          }
+        }
+      }
+
+      // start whatever the limits allow
+      for (Iterator<RegionTask> it = pending.iterator(); it.hasNext();) {
+        RegionTask t = it.next();
+        Integer onServer = runningPerServer.get(t.server);
+        if (onServer != null && onServer >= maxConcurrentPerRegionServer) continue;
+        if (maxBytesPerSecond > 0 && now < nextStartMillis) break;
+        t.watch = new CompactionWatch(loads.get(Bytes.toStringBinary(t.regionName)));
+        majorCompact(t);
+        t.requestedMillis = now;
+        it.remove();
+        running.add(t);
+        runningPerServer.put(t.server, onServer == null ? 1 : onServer + 1);
+        if (maxBytesPerSecond > 0) {
+          nextStartMillis = Math.max(now, nextStartMillis) + t.sizeBytes * 1000 / maxBytesPerSecond;
+        }
+      }
+
+      if (!pending.isEmpty() || !running.isEmpty()) {
+        Thread.sleep(pollMillis);
+      }
+    }
+    LOG.info("Major compaction finished: " + progress);
+    return progress;
+  }
+
+  /**
+   * Ask for a major compaction of the task's families in its region, or of the whole region if this HBase
+   * client can't do single families
+   */
+  private void majorCompact(RegionTask t) throws IOException, InterruptedException {
+    if (MAJOR_COMPACT_FAMILY == null || t.families == null || t.families.isEmpty()) {
+      admin.majorCompact(t.regionName);
+      return;
+    }
+    for (String family : t.families) {
+      try {
+        MAJOR_COMPACT_FAMILY.invoke(admin, t.regionName, Bytes.toBytes(family));
+      } catch (IllegalAccessException e) {
+        throw new ScootException("Unable to major compact column family '" + family + "': " + e.getMessage(), e);
+      } catch (InvocationTargetException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+  }
+
+  private static Method findMajorCompactFamily() {
+    try {
+      return HBaseAdmin.class.getMethod("majorCompact", byte[].class, byte[].class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+}
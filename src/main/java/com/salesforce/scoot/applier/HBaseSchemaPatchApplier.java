@@ -0,0 +1,721 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.applier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableNotDisabledException;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import com.salesforce.scoot.AlterStrategy;
+import com.salesforce.scoot.HBaseSchemaDiff;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChange;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.HBaseSchemaDiff.PropertyChange;
+import com.salesforce.scoot.MetadataStrategy;
+import com.salesforce.scoot.SchemaNormalizer;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.SplitPointCalculator;
+
+/**
+ * Using a schema diff object, apply the changes directly to a cluster through HBaseAdmin, without
+ * generating a script and running it in the hbase shell. It goes through the same steps as the
+ * ruby script generated by HBaseRubySchemaPatchScripter: it verifies the existing schema state,
+ * patches the cluster to install the new schema state, and then validates that it worked correctly.
+ *
+ * Each step is timed, so callers can see where the time went.
+ *
+ * By default, changes are applied one table at a time and the first failure stops the apply. With a
+ * parallelism greater than one, changes to different tables are applied concurrently by a pool of
+ * workers; a failure then only affects its own table, and is reported once the rest have finished.
+ * Since every change to an existing table closes and reopens its regions, the number of concurrent
+ * changes touching any one region server can also be capped.
+ *
+ * Alters follow the configured AlterStrategy. Online alters wait until the master reports that every
+ * region of the table has reopened with the new descriptor before the table counts as modified.
+ *
+ * Alters that only change metadata never disable their tables; they follow the MetadataStrategy instead.
+ * ONLINE sends just the changed attributes of all of them, one table after another, once the other changes
+ * are done, and then waits for them together; a table whose modification the master refuses is deferred.
+ * Deferred tables are left alone, and aren't validated against the new schema. Any other alter sends its
+ * metadata changes along with the rest of it, while the table is still disabled if it was disabled at all.
+ */
+public class HBaseSchemaPatchApplier {
+
+  private static final Log LOG = LogFactory.getLog(HBaseSchemaPatchApplier.class);
+
+  private final HBaseSchemaDiff diff;
+  private final HBaseAdmin admin;
+  private final List<StepTiming> stepTimings = Collections.synchronizedList(new ArrayList<StepTiming>());
+  private final Map<String, Throwable> failedChanges = Collections.synchronizedMap(new LinkedHashMap<String, Throwable>());
+  private final Map<String, Semaphore> regionServerPermits = new HashMap<String, Semaphore>();
+  private int parallelism = 1;
+  private int maxConcurrentChangesPerRegionServer = 0;
+  private AlterStrategy alterStrategy = AlterStrategy.OFFLINE;
+  private MetadataStrategy metadataStrategy = MetadataStrategy.ONLINE;
+  private final Set<String> deferredMetadataChanges = Collections.synchronizedSet(new TreeSet<String>());
+  private long alterStatusPollMillis = 1000;
+
+  /**
+   * Simple struct recording how long a single step of the apply took. The table name is null for
+   * steps that aren't specific to one table.
+   */
+  public static class StepTiming {
+    public final String step;
+    public final String tableName;
+    public final long elapsedMillis;
+    StepTiming(String step, String tableName, long elapsedMillis) { this.step = step; this.tableName = tableName; this.elapsedMillis = elapsedMillis; }
+    @Override public String toString(){ return step + (tableName != null ? " '" + tableName + "'" : "") + ": " + elapsedMillis + " ms"; }
+  }
+
+  public HBaseSchemaPatchApplier(HBaseSchemaDiff diff, HBaseAdmin admin) {
+    this.diff = diff;
+    this.admin = admin;
+  }
+
+  /**
+   * Set how many table changes may be applied at the same time. The default of 1 applies them one
+   * at a time, in diff order.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Set how many table changes may be in flight at the same time on any one region server, counting
+   * every server that hosts a region of the table being changed. 0 (the default) means no limit.
+   * Only has an effect when the parallelism is greater than one.
+   */
+  public void setMaxConcurrentChangesPerRegionServer(int maxConcurrentChangesPerRegionServer) {
+    if (maxConcurrentChangesPerRegionServer < 0) throw new IllegalArgumentException("Region server limit must not be negative: " + maxConcurrentChangesPerRegionServer);
+    this.maxConcurrentChangesPerRegionServer = maxConcurrentChangesPerRegionServer;
+  }
+
+  /**
+   * Set how existing tables are taken through a modification. Defaults to OFFLINE.
+   */
+  public void setAlterStrategy(AlterStrategy alterStrategy) {
+    this.alterStrategy = alterStrategy;
+  }
+
+  /**
+   * Set how alters that only change metadata are carried out. Defaults to ONLINE.
+   */
+  public void setMetadataStrategy(MetadataStrategy metadataStrategy) {
+    this.metadataStrategy = metadataStrategy;
+  }
+
+  /**
+   * The tables whose metadata only changes were left for their next alter
+   */
+  public Set<String> getDeferredMetadataChanges() {
+    synchronized (deferredMetadataChanges) {
+      return Collections.unmodifiableSet(new TreeSet<String>(deferredMetadataChanges));
+    }
+  }
+
+  /**
+   * Set how often to ask the master how many regions are still waiting for an online alter.
+   */
+  public void setAlterStatusPollMillis(long alterStatusPollMillis) {
+    this.alterStatusPollMillis = alterStatusPollMillis;
+  }
+
+  /**
+   * Validate, apply and re-validate the changes in the diff against the cluster.
+   * @return the timings of each step, in the order they ran
+   */
+  public List<StepTiming> apply() {
+    long start = System.currentTimeMillis();
+    try {
+      applyPreValidations();
+      applyChanges();
+      applyPostValidations();
+    } catch (IOException e) {
+      throw new ScootException("Error while applying schema changes: " + e.getMessage(), e);
+    }
+    record("total", null, start);
+    if (failedChanges.size() > 0) {
+      StringBuilder sb = new StringBuilder();
+      for (Entry<String, Throwable> e : failedChanges.entrySet()) {
+        sb.append("Error: table '").append(e.getKey()).append("': ").append(e.getValue().getMessage()).append("\n");
+      }
+      throw new ScootException(failedChanges.size() + " table change(s) failed; the others were applied and validated:\n" + sb);
+    }
+    return getStepTimings();
+  }
+
+  /**
+   * Get the timings of the steps that have been run so far
+   * @return an umodifiable representation of the list
+   */
+  public List<StepTiming> getStepTimings() {
+    synchronized (stepTimings) {
+      return Collections.unmodifiableList(new ArrayList<StepTiming>(stepTimings));
+    }
+  }
+
+  private void record(String step, String tableName, long startMillis) {
+    StepTiming timing = new StepTiming(step, tableName, System.currentTimeMillis() - startMillis);
+    stepTimings.add(timing);
+    LOG.debug(timing);
+  }
+
+  /**
+   * Make sure that the existing schema on the cluster matches what the diff thinks should be there.
+   * Problems that would make the apply fail are errors, and stop it before anything is changed;
+   * the rest are warnings.
+   */
+  private void applyPreValidations() throws IOException {
+    long start = System.currentTimeMillis();
+    List<String> preErrors = new ArrayList<String>();
+    List<String> preWarnings = new ArrayList<String>();
+    for (HBaseSchemaChange c : diff.streamChanges()){
+      switch (c.type) {
+        case CREATE:
+          verifyTableAbsent(c.tableName, preErrors);
+          break;
+        case ALTER:
+          // deferred changes leave the table alone, so there's nothing to check
+          if (c.isMetadataOnly() && metadataStrategy == MetadataStrategy.DEFER) break;
+          if (verifyTablePresent(c.tableName, preErrors)) {
+            verifyTableMatches(c.oldTable, "alter", preErrors); // alters will error out if something doesn't match
+          }
+          break;
+        case DROP:
+          if (verifyTablePresent(c.tableName, preErrors)) {
+            verifyTableMatches(c.oldTable, "drop", preWarnings); // drops will only warn if something doesn't match
+          }
+          break;
+        case IGNORE:
+          break;
+      }
+    }
+    record("pre-validation", null, start);
+
+    if (preErrors.size() > 0) {
+      throw new ScootException("There were " + preErrors.size() + " error(s) and " + preWarnings.size()
+          + " warning(s) during table pre-validation:\n" + join("Error: ", preErrors) + join("Warning: ", preWarnings));
+    } else if (preWarnings.size() > 0) {
+      LOG.warn("Pre-validations successful with " + preWarnings.size() + " warnings:\n" + join("Warning: ", preWarnings));
+    } else {
+      LOG.info("Pre-validations successful.");
+    }
+  }
+
+  private void verifyTableAbsent(String tableName, List<String> errors) throws IOException {
+    if (admin.tableExists(tableName)) {
+      errors.add("Table '" + tableName + "' should not already exist, but it does.");
+    }
+  }
+
+  private boolean verifyTablePresent(String tableName, List<String> errors) throws IOException {
+    if (!admin.tableExists(tableName)) {
+      errors.add("Table '" + tableName + "' should exist, but it does not.");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compare every attribute of the expected table and its column families with what's on the cluster
+   */
+  private void verifyTableMatches(HTableDescriptor expected, String operationName, List<String> errors) throws IOException {
+    // the expected table was normalized on its way into its schema, so read the cluster's the same way
+    HTableDescriptor table = SchemaNormalizer.normalize(admin.getTableDescriptor(expected.getName()));
+    for (Entry<String,String> p : getSortedStringEntries(expected.getValues())){
+      compare(errors, table.getNameAsString(), table.getValue(p.getKey()), operationName, p.getKey(), p.getValue());
+    }
+    // now descend into child objects
+    for (HColumnDescriptor c : expected.getColumnFamilies()){
+      HColumnDescriptor cf = table.getFamily(c.getName());
+      if (cf == null) {
+        errors.add("Column family '" + c.getNameAsString() + "' of table '" + table.getNameAsString() + "', which is targeted for "
+            + operationName + ", should exist, but it does not.");
+        continue;
+      }
+      for (Entry<String,String> p : getSortedStringEntries(c.getValues())){
+        compare(errors, cf.getNameAsString(), cf.getValue(p.getKey()), operationName, p.getKey(), p.getValue());
+      }
+    }
+  }
+
+  private void compare(List<String> errors, String objectName, String actual, String operationName, String attr, String val) {
+    if (!val.equals(actual == null ? "" : actual)) {
+      errors.add("Object '" + objectName + "', which is targeted for " + operationName + " by this apply, should have had a value of \""
+          + val + "\" for " + attr + ", but it was \"" + actual + "\" instead.");
+    }
+  }
+
+  /**
+   * Actually modify the schema on the cluster
+   */
+  private void applyChanges() throws IOException {
+    if (diff.getChangeCounts().get(ChangeType.ALTER) > 0) {
+      LOG.info("Alter strategy: " + alterStrategy);
+    }
+    List<HBaseSchemaChange> metadataOnly = new ArrayList<HBaseSchemaChange>();
+    if (parallelism > 1) {
+      applyChangesInParallel(metadataOnly);
+    } else {
+      for (HBaseSchemaChange c : diff.streamChanges()){
+        if (c.isMetadataOnly()) {
+          metadataOnly.add(c);
+        } else {
+          applyChange(c);
+        }
+      }
+      LOG.info("Table creations & modifications successful.");
+    }
+    applyMetadataChanges(metadataOnly);
+  }
+
+  /**
+   * Carry out the metadata only alters, following the metadata strategy.
+   * A table whose change fails is recorded as failed, and doesn't stop the others; the failures are reported
+   * together at the end of the apply.
+   */
+  private void applyMetadataChanges(List<HBaseSchemaChange> changes) {
+    if (changes.isEmpty()) return;
+    if (metadataStrategy == MetadataStrategy.DEFER) {
+      for (HBaseSchemaChange c : changes) {
+        deferredMetadataChanges.add(c.tableName);
+      }
+      LOG.info("Deferred metadata changes to " + changes.size() + " table(s) until their next alter: " + deferredMetadataChanges);
+      return;
+    }
+    long start = System.currentTimeMillis();
+    List<String> modified = new ArrayList<String>();
+    for (HBaseSchemaChange c : changes) {
+      try {
+        modifyMetadata(c);
+        modified.add(c.tableName);
+      } catch (TableNotDisabledException e) {
+        LOG.warn("Online modification of table '" + c.tableName + "' was refused; its metadata change is deferred until its next alter.");
+        deferredMetadataChanges.add(c.tableName);
+      } catch (IOException e) {
+        LOG.error("Failed to modify the metadata of table '" + c.tableName + "'", e);
+        failedChanges.put(c.tableName, e);
+      }
+    }
+    record("modify-metadata", null, start);
+    start = System.currentTimeMillis();
+    int updated = 0;
+    for (String tableName : modified) {
+      try {
+        waitForAlter(tableName);
+        updated++;
+      } catch (IOException e) {
+        LOG.error("Failed waiting for the regions of table '" + tableName + "' to pick up its metadata change", e);
+        failedChanges.put(tableName, e);
+      }
+    }
+    record("reopen-regions-metadata", null, start);
+    LOG.info("Modified the metadata of " + updated + " table(s) online.");
+  }
+
+  private void applyChange(HBaseSchemaChange c) throws IOException {
+    switch (c.type) {
+      case CREATE:
+        applyTableAdd(c.newTable);
+        break;
+      case DROP:
+        applyTableDrop(c.oldTable);
+        break;
+      case ALTER:
+        applyTableAlter(c);
+        break;
+      case IGNORE:
+        // Nothing to do!
+        break;
+    }
+  }
+
+  /**
+   * Hand each table change to a pool of workers. Changes to different tables don't depend on each
+   * other, so the only ordering is the one imposed by the region server limit. A failed change is
+   * recorded against its table and doesn't stop the others.
+   */
+  private void applyChangesInParallel(List<HBaseSchemaChange> metadataOnly) {
+    List<HBaseSchemaChange> changes = new ArrayList<HBaseSchemaChange>();
+    for (HBaseSchemaChange c : diff.streamChanges()){
+      if (c.isMetadataOnly()) {
+        metadataOnly.add(c);
+      } else {
+        changes.add(c);
+      }
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      ExecutorCompletionService<HBaseSchemaChange> completion = new ExecutorCompletionService<HBaseSchemaChange>(pool);
+      Map<Future<HBaseSchemaChange>, HBaseSchemaChange> submitted = new HashMap<Future<HBaseSchemaChange>, HBaseSchemaChange>();
+      for (final HBaseSchemaChange c : changes) {
+        submitted.put(completion.submit(new Callable<HBaseSchemaChange>() {
+          public HBaseSchemaChange call() throws Exception {
+            applyChangeWithRegionServerLimit(c);
+            return c;
+          }
+        }), c);
+      }
+      for (int done = 1; done <= changes.size(); done++) {
+        Future<HBaseSchemaChange> f = completion.take();
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          HBaseSchemaChange c = submitted.get(f);
+          LOG.error("Failed to " + c.type.toString().toLowerCase() + " table '" + c.tableName + "'", e.getCause());
+          failedChanges.put(c.tableName, e.getCause());
+        }
+        LOG.info("Completed " + done + " of " + changes.size() + " table changes (" + failedChanges.size() + " failed).");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScootException("Interrupted while applying schema changes.", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    if (failedChanges.isEmpty()) {
+      LOG.info("Table creations & modifications successful.");
+    }
+  }
+
+  /**
+   * Apply the change once there's room on every region server hosting the table. Permits are always
+   * taken in server name order, so two changes can't each hold a server the other is waiting for.
+   */
+  private void applyChangeWithRegionServerLimit(HBaseSchemaChange c) throws IOException, InterruptedException {
+    List<Semaphore> permits = new ArrayList<Semaphore>();
+    // a table that's being created doesn't have any regions yet
+    if (maxConcurrentChangesPerRegionServer > 0 && c.type != ChangeType.CREATE) {
+      Set<String> servers = new TreeSet<String>();
+      for (HRegionLocation location : admin.getConnection().locateRegions(Bytes.toBytes(c.tableName))) {
+        servers.add(location.getHostnamePort());
+      }
+      for (String server : servers) {
+        permits.add(getRegionServerPermits(server));
+      }
+    }
+    int acquired = 0;
+    try {
+      for (Semaphore p : permits) {
+        p.acquire();
+        acquired++;
+      }
+      applyChange(c);
+    } finally {
+      for (int x = 0; x < acquired; x++) {
+        permits.get(x).release();
+      }
+    }
+  }
+
+  private synchronized Semaphore getRegionServerPermits(String server) {
+    Semaphore permits = regionServerPermits.get(server);
+    if (permits == null) {
+      permits = new Semaphore(maxConcurrentChangesPerRegionServer, true);
+      regionServerPermits.put(server, permits);
+    }
+    return permits;
+  }
+
+  private void applyTableAdd(HTableDescriptor newTable) throws IOException {
+    String tableName = newTable.getNameAsString();
+    LOG.info("Creating table '" + tableName + "' ... ");
+    long start = System.currentTimeMillis();
+    // If we need to pre-split, hand over the split keys
+    byte[][] splits = SplitPointCalculator.getSplitPoints(diff.getToSchema(), newTable);
+    if (splits != null && splits.length > 0){
+      admin.createTable(newTable, splits);
+    } else {
+      admin.createTable(newTable);
+    }
+    record("create", tableName, start);
+    LOG.info("Created table '" + tableName + "'");
+  }
+
+  private void applyTableDrop(HTableDescriptor oldTable) throws IOException {
+    String tableName = oldTable.getNameAsString();
+    if (admin.tableExists(tableName)) {
+      if (admin.isTableEnabled(tableName)) {
+        LOG.info("Disabling table '" + tableName + "' prior to dropping it ...");
+        long start = System.currentTimeMillis();
+        admin.disableTable(tableName);
+        record("disable", tableName, start);
+      }
+      LOG.info("Dropping table '" + tableName + "' ...");
+      long start = System.currentTimeMillis();
+      admin.deleteTable(tableName);
+      record("drop", tableName, start);
+    }
+    LOG.info("Dropped table '" + tableName + "'");
+  }
+
+  /**
+   * A single admin call that makes up part of an alter
+   */
+  private interface Modification {
+    void run() throws IOException;
+  }
+
+  /**
+   * If any table level attributes changed, the whole descriptor has to be sent with modifyTable. Otherwise,
+   * only the column families that changed are added, deleted or modified, so unchanged families are left alone.
+   */
+  private void applyTableAlter(HBaseSchemaChange c) throws IOException {
+    final String tableName = c.tableName;
+    List<Modification> modifications = new ArrayList<Modification>();
+    if (c.tablePropertiesChanged) {
+      final HTableDescriptor table = admin.getTableDescriptor(c.newTable.getName());
+      for (Entry<ImmutableBytesWritable,ImmutableBytesWritable> entry : c.newTable.getValues().entrySet()){
+        table.setValue(entry.getKey().get(), entry.getValue().get());
+      }
+      for (HColumnDescriptor cf : c.newTable.getColumnFamilies()){
+        table.addFamily(new HColumnDescriptor(cf));
+      }
+      for (ColumnFamilyChange fc : c.columnFamilyChanges) {
+        if (fc.type == ColumnFamilyChangeType.DELETE) {
+          table.removeFamily(Bytes.toBytes(fc.familyName));
+        }
+      }
+      modifications.add(new Modification() {
+        public void run() throws IOException { admin.modifyTable(table.getName(), table); }
+      });
+    } else {
+      for (final ColumnFamilyChange fc : c.columnFamilyChanges) {
+        modifications.add(new Modification() {
+          public void run() throws IOException {
+            switch (fc.type) {
+              case ADD:
+                LOG.info("Adding column family '" + fc.familyName + "' to table '" + tableName + "' ...");
+                admin.addColumn(tableName, new HColumnDescriptor(fc.newFamily));
+                break;
+              case MODIFY:
+                LOG.info("Modifying column family '" + fc.familyName + "' of table '" + tableName + "' ...");
+                admin.modifyColumn(tableName, new HColumnDescriptor(fc.newFamily));
+                break;
+              case DELETE:
+                LOG.info("Deleting column family '" + fc.familyName + "' from table '" + tableName + "' ...");
+                admin.deleteColumn(tableName, fc.familyName);
+                break;
+            }
+          }
+        });
+      }
+      // the families are done first, so the descriptor read back has them already
+      if (c.hasMetadataChangesWithFamilies()) {
+        final HBaseSchemaChange change = c;
+        modifications.add(new Modification() {
+          public void run() throws IOException {
+            LOG.info("Modifying the metadata of table '" + tableName + "' ...");
+            modifyMetadata(change);
+          }
+        });
+      }
+    }
+    if (alterStrategy != AlterStrategy.OFFLINE) {
+      int done = 0;
+      try {
+        LOG.info("Modifying table '" + tableName + "' online ...");
+        for (; done < modifications.size(); done++) {
+          modifyTableOnline(tableName, modifications.get(done));
+        }
+      } catch (TableNotDisabledException e) {
+        if (alterStrategy != AlterStrategy.AUTO) throw e;
+        // the master doesn't allow online alters after all, so do the rest the slow way
+        LOG.warn("Online modification of table '" + tableName + "' was refused; falling back to disabling it.");
+        modifyTableOffline(tableName, modifications.subList(done, modifications.size()));
+      }
+    } else {
+      modifyTableOffline(tableName, modifications);
+    }
+    LOG.info("Modified table '" + tableName + "'");
+  }
+
+  /**
+   * Send the alter's metadata changes to the table as it is now, leaving everything else about it alone
+   */
+  private void modifyMetadata(HBaseSchemaChange c) throws IOException {
+    HTableDescriptor table = admin.getTableDescriptor(Bytes.toBytes(c.tableName));
+    for (PropertyChange pc : c.metadataChanges) {
+      if (pc.newValue != null) {
+        table.setValue(pc.key, pc.newValue);
+      } else {
+        table.remove(pc.key);
+      }
+    }
+    admin.modifyTable(table.getName(), table);
+  }
+
+  /**
+   * Disable the table for the modifications, and enable it again afterwards, even if one of them fails. If
+   * enabling fails after a failed modification, that's logged, and the modification's failure is the one thrown.
+   */
+  private void modifyTableOffline(String tableName, List<Modification> modifications) throws IOException {
+    LOG.info("Disabling table '" + tableName + "' prior to modification ...");
+    long start = System.currentTimeMillis();
+    admin.disableTable(tableName);
+    record("disable", tableName, start);
+    LOG.info("Modifying table '" + tableName + "' ...");
+    start = System.currentTimeMillis();
+    boolean modified = false;
+    try {
+      for (Modification m : modifications) {
+        m.run();
+      }
+      record("modify", tableName, start);
+      modified = true;
+    } catch (Throwable t) {
+      LOG.error("Failed to modify table '" + tableName + "'; enabling it again before giving up.", t);
+      throw t;
+    } finally {
+      LOG.info("Enabling table '" + tableName + "' after modification ...");
+      start = System.currentTimeMillis();
+      try {
+        admin.enableTable(tableName);
+        record("enable", tableName, start);
+      } catch (IOException e) {
+        // don't let this hide the modification's own failure
+        if (modified) throw e;
+        LOG.error("Failed to enable table '" + tableName + "' after its modification failed.", e);
+      }
+    }
+  }
+
+  /**
+   * Run the modification against the enabled table, and wait for its regions to reopen
+   */
+  private void modifyTableOnline(String tableName, Modification modification) throws IOException {
+    long start = System.currentTimeMillis();
+    modification.run();
+    record("modify-online", tableName, start);
+    start = System.currentTimeMillis();
+    waitForAlter(tableName);
+    record("reopen-regions", tableName, start);
+  }
+
+  /**
+   * Poll the master until none of the table's regions are still waiting to reopen with the new descriptor
+   */
+  private void waitForAlter(String tableName) throws IOException {
+    Pair<Integer, Integer> status = admin.getAlterStatus(Bytes.toBytes(tableName));
+    while (status.getFirst() > 0) {
+      LOG.info((status.getSecond() - status.getFirst()) + " of " + status.getSecond() + " regions of '" + tableName + "' updated ...");
+      try {
+        Thread.sleep(alterStatusPollMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ScootException("Interrupted while waiting for table '" + tableName + "' to be modified.", e);
+      }
+      status = admin.getAlterStatus(Bytes.toBytes(tableName));
+    }
+  }
+
+  /**
+   * Ensure that changes were successful, and that the resulting schema on the cluster matches
+   * what you want to be there.
+   */
+  private void applyPostValidations() throws IOException {
+    long start = System.currentTimeMillis();
+    List<String> postErrors = new ArrayList<String>();
+    for (HBaseSchemaChange c : diff.streamChanges()){
+      // tables whose change failed have already been reported
+      if (failedChanges.containsKey(c.tableName)) continue;
+      switch (c.type) {
+        case CREATE:
+          if (verifyTablePresent(c.tableName, postErrors)) {
+            verifyTableMatches(c.newTable, "create", postErrors);
+          }
+          break;
+        case ALTER:
+          if (verifyTablePresent(c.tableName, postErrors)) {
+            // a deferred metadata only alter leaves the table as it was
+            if (!deferredMetadataChanges.contains(c.tableName)) {
+              verifyTableMatches(c.newTable, "alter", postErrors);
+            }
+          }
+          break;
+        case DROP:
+          verifyTableAbsent(c.tableName, postErrors);
+          break;
+        case IGNORE:
+          break;
+      }
+    }
+    record("post-validation", null, start);
+    if (postErrors.size() > 0) {
+      throw new ScootException("There were " + postErrors.size() + " error(s) during table post-validation:\n" + join("Error: ", postErrors));
+    }
+    LOG.info("Post-validation successful.");
+  }
+
+  /**
+   * Get a sorted map of the given ImmutableBytesWritable map as strings
+   */
+  private static Iterable<Entry<String,String>> getSortedStringEntries(Map<ImmutableBytesWritable, ImmutableBytesWritable> m) {
+    Map<String,String> result = new TreeMap<String,String>();
+    for (Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : m.entrySet()){
+      result.put(Bytes.toString(e.getKey().get()), Bytes.toString(e.getValue().get()));
+    }
+    return result.entrySet();
+  }
+
+  private static String join(String prefix, List<String> messages) {
+    StringBuilder sb = new StringBuilder();
+    for (String m : messages) {
+      sb.append(prefix).append(m).append("\n");
+    }
+    return sb.toString();
+  }
+
+}
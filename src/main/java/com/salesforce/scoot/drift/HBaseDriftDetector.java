@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.drift;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSTableDescriptors;
+import org.apache.hadoop.hbase.util.FSUtils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseSchemaDiff;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.parser.HBaseClusterParser;
+import com.salesforce.scoot.parser.HBaseSchemaParser;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Watches a cluster for schema drift: tables whose descriptors no longer match the declared schema, because
+ * someone changed them by hand (or never created them, or dropped them).
+ *
+ * Each poll lists hbase.rootdir once. A table directory's modification time moves whenever the master writes
+ * a new .tableinfo file into it, so only tables whose directories changed since the last poll have their
+ * descriptors read again, straight from their .tableinfo files, without going through the master. Creating
+ * regions also touches the directory, which only costs a descriptor read that turns out to match. The first
+ * poll reads every table. The declared schema is parsed again when its file changes, and then every table is
+ * compared against it, which needs no cluster access.
+ *
+ * Drift is reported as events on the transitions: when a table starts drifting, when the way it drifts
+ * changes, and when it's back in line. Each poll also reports how much work it did.
+ */
+public class HBaseDriftDetector {
+
+  private static final Log LOG = LogFactory.getLog(HBaseDriftDetector.class);
+
+  /**
+   * How a table differs from the declared schema
+   */
+  public enum DriftType {
+    /** The table exists on the cluster and is declared, but its attributes differ */
+    CHANGED,
+    /** The table is declared, but doesn't exist on the cluster */
+    MISSING,
+    /** The table exists on the cluster, but isn't declared */
+    UNDECLARED,
+    /** The table was drifting, and now matches the declared schema */
+    RESOLVED,
+  }
+
+  public static class DriftEvent {
+    public final String cluster;
+    public final String tableName;
+    public final DriftType type;
+    public final String details;
+    public final long timeMillis;
+
+    DriftEvent(String cluster, String tableName, DriftType type, String details, long timeMillis) {
+      this.cluster = cluster;
+      this.tableName = tableName;
+      this.type = type;
+      this.details = details;
+      this.timeMillis = timeMillis;
+    }
+
+    @Override public String toString(){
+      return "DRIFT cluster=" + cluster + " table=" + tableName + " type=" + type + (details.isEmpty() ? "" : " " + details);
+    }
+  }
+
+  /**
+   * What one poll did
+   */
+  public static class PollStats {
+    public final String cluster;
+    public final long poll;
+    public long millis;
+    public int tablesListed;
+    public int tablesRead;
+    public int tablesCompared;
+    public int tablesDrifting;
+    public int events;
+    public boolean declaredSchemaChanged;
+
+    PollStats(String cluster, long poll) {
+      this.cluster = cluster;
+      this.poll = poll;
+    }
+
+    @Override public String toString(){
+      return "POLL cluster=" + cluster + " poll=" + poll + " millis=" + millis + " listed=" + tablesListed + " read=" + tablesRead
+          + " compared=" + tablesCompared + " drifting=" + tablesDrifting + " events=" + events
+          + (declaredSchemaChanged ? " declaredSchemaChanged=true" : "");
+    }
+  }
+
+  /**
+   * Told about drift events and poll statistics as they happen
+   */
+  public interface Listener {
+    void onDrift(DriftEvent event);
+    void onPoll(PollStats stats);
+  }
+
+  private final String cluster;
+  private final Configuration config;
+  private final File declaredSchemaFile;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private String declaredSchemaParser = HBaseScootXMLParser.class.getName();
+  private Path rootDir;
+  private boolean reportUndeclared = false;
+
+  private long polls = 0;
+  private String declaredSchemaVersion;
+  private HBaseSchema declaredSchema = new HBaseSchema();
+  private final Map<String, HTableDescriptor> actualTables = new HashMap<String, HTableDescriptor>();
+  private final Map<String, Long> tableVersions = new HashMap<String, Long>();
+  private final Map<String, String> drifting = new HashMap<String, String>();
+
+  /**
+   * Watch the cluster with the given zookeeper quorum against the declared schema in the file
+   */
+  public HBaseDriftDetector(String zookeeperQuorum, File declaredSchemaFile) {
+    this.cluster = Preconditions.checkNotNull(zookeeperQuorum);
+    this.config = HBaseClusterParser.createConfig(zookeeperQuorum);
+    this.declaredSchemaFile = Preconditions.checkNotNull(declaredSchemaFile);
+  }
+
+  /**
+   * The parser for the declared schema. Defaults to the scoot XML parser.
+   */
+  public void setDeclaredSchemaParser(String declaredSchemaParser) {
+    this.declaredSchemaParser = Preconditions.checkNotNull(declaredSchemaParser);
+  }
+
+  /**
+   * The cluster's hbase.rootdir, if the client configuration doesn't have it
+   */
+  public void setRootDir(Path rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  /**
+   * Whether tables that exist on the cluster but aren't declared count as drift. Defaults to false, so
+   * a declared schema can cover just some of a cluster's tables.
+   */
+  public void setReportUndeclared(boolean reportUndeclared) {
+    this.reportUndeclared = reportUndeclared;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public String getCluster() {
+    return cluster;
+  }
+
+  /**
+   * The tables drifting as of the last poll, with how
+   */
+  public synchronized Map<String, String> getDrifting() {
+    return new HashMap<String, String>(drifting);
+  }
+
+  /**
+   * Look for changes since the last poll, and return (and tell the listeners about) any drift events
+   */
+  public synchronized List<DriftEvent> poll() throws IOException {
+    long start = System.currentTimeMillis();
+    PollStats stats = new PollStats(cluster, ++polls);
+    Set<String> toCompare = new TreeSet<String>();
+
+    stats.declaredSchemaChanged = loadDeclaredSchemaIfChanged();
+
+    Path root = rootDir != null ? rootDir : FSUtils.getRootDir(config);
+    FileSystem fs = root.getFileSystem(config);
+    Map<String, Long> versions = new HashMap<String, Long>();
+    FileStatus[] children = fs.listStatus(root);
+    if (children != null) {
+      for (FileStatus child : children) {
+        String name = child.getPath().getName();
+        if (child.isDir() && !name.startsWith(".") && !HConstants.HBASE_NON_USER_TABLE_DIRS.contains(name)) {
+          versions.put(name, child.getModificationTime());
+        }
+      }
+    }
+    stats.tablesListed = versions.size();
+
+    // dropped since the last poll
+    for (String name : new ArrayList<String>(actualTables.keySet())) {
+      if (!versions.containsKey(name)) {
+        actualTables.remove(name);
+        tableVersions.remove(name);
+        toCompare.add(name);
+      }
+    }
+    // created or touched since the last poll
+    for (Map.Entry<String, Long> v : versions.entrySet()) {
+      if (v.getValue().equals(tableVersions.get(v.getKey()))) continue;
+      HTableDescriptor table = readDescriptor(fs, root, v.getKey());
+      stats.tablesRead++;
+      if (table == null) {
+        // no .tableinfo yet (the table is still being created), so try again next time
+        continue;
+      }
+      tableVersions.put(v.getKey(), v.getValue());
+      actualTables.put(v.getKey(), table);
+      toCompare.add(v.getKey());
+    }
+    // a new declared schema can change the verdict on anything
+    if (stats.declaredSchemaChanged) {
+      toCompare.addAll(actualTables.keySet());
+      toCompare.addAll(declaredSchema.getTableNames());
+      toCompare.addAll(drifting.keySet());
+    }
+
+    List<DriftEvent> events = new ArrayList<DriftEvent>();
+    for (String name : toCompare) {
+      DriftEvent event = compare(name, start);
+      if (event != null) events.add(event);
+    }
+    stats.tablesCompared = toCompare.size();
+    stats.tablesDrifting = drifting.size();
+    stats.events = events.size();
+    stats.millis = System.currentTimeMillis() - start;
+
+    for (Listener l : listeners) {
+      for (DriftEvent e : events) {
+        l.onDrift(e);
+      }
+      l.onPoll(stats);
+    }
+    return events;
+  }
+
+  /**
+   * Read a table's descriptor from its .tableinfo file, or return null if it doesn't have one
+   */
+  private HTableDescriptor readDescriptor(FileSystem fs, Path root, String tableName) {
+    try {
+      return FSTableDescriptors.getTableDescriptor(fs, root, Bytes.toBytes(tableName));
+    } catch (IOException e) {
+      LOG.warn("Unable to read the descriptor of " + tableName + " on " + cluster + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Parse the declared schema again if its file has changed since the last time
+   */
+  private boolean loadDeclaredSchemaIfChanged() {
+    String version = declaredSchemaFile.lastModified() + "/" + declaredSchemaFile.length();
+    if (version.equals(declaredSchemaVersion)) return false;
+    HBaseSchemaParser parser;
+    try {
+      parser = (HBaseSchemaParser)Class.forName(declaredSchemaParser).newInstance();
+    } catch (Exception e) {
+      throw new ScootException("Unable to instantiate supplied parser: " + declaredSchemaParser, e);
+    }
+    parser.setResourceToParse(declaredSchemaFile.getPath());
+    declaredSchema = parser.parse().snapshot();
+    declaredSchemaVersion = version;
+    LOG.info("Loaded " + declaredSchema.size() + " declared tables for " + cluster + " from " + declaredSchemaFile);
+    return true;
+  }
+
+  /**
+   * Compare one table with its declaration, and return an event if its drift has changed
+   */
+  private DriftEvent compare(String tableName, long now) {
+    HTableDescriptor declared = declaredSchema.getTable(tableName);
+    HTableDescriptor actual = actualTables.get(tableName);
+    DriftType type = null;
+    String details = "";
+    if (declared != null || (actual != null && reportUndeclared)) {
+      HBaseSchema from = new HBaseSchema();
+      if (declared != null) from.addTable(declared);
+      HBaseSchema to = new HBaseSchema();
+      if (actual != null) to.addTable(actual);
+      HBaseSchemaChange change = new HBaseSchemaDiff(from, to).getTableChanges().get(0);
+      switch (change.type) {
+        case CREATE: type = DriftType.UNDECLARED; break;
+        case DROP: type = DriftType.MISSING; break;
+        case ALTER:
+          type = DriftType.CHANGED;
+          details = "expected->actual " + Joiner.on(" ").join(change.propertyChanges);
+          break;
+        default: break;
+      }
+    }
+
+    String was = drifting.get(tableName);
+    if (type == null) {
+      if (was == null) return null;
+      drifting.remove(tableName);
+      return new DriftEvent(cluster, tableName, DriftType.RESOLVED, "", now);
+    }
+    String is = type + " " + details;
+    if (is.equals(was)) return null;
+    drifting.put(tableName, is);
+    return new DriftEvent(cluster, tableName, type, details, now);
+  }
+
+  private static final Options options = new Options();
+  static {
+    options.addOption("c", "cluster", true, "A cluster to watch and the declared schema to hold it to, as {zookeeper quorum}={schema file}. Can be given more than once.");
+    options.addOption("p", "parser", true, "The parser for the declared schemas. Defaults to the scoot XML parser.");
+    options.addOption("i", "interval", true, "How many seconds from the start of one round of polls to the start of the next. Defaults to 60.");
+    options.addOption("n", "polls", true, "How many rounds of polls to do before stopping. Defaults to 0 (never stop).");
+    options.addOption("u", "undeclared", false, "Report tables that exist on a cluster but aren't declared.");
+    options.addOption("h", "help", false, "Get help on using this utility.");
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLine command;
+    try {
+      command = new PosixParser().parse(options, args);
+    } catch (ParseException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+    if (command.hasOption("h") || !command.hasOption("c")) {
+      new HelpFormatter().printHelp("scoot-watch", options);
+      return;
+    }
+    long intervalMillis;
+    int rounds;
+    try {
+      intervalMillis = Long.parseLong(command.getOptionValue("i", "60")) * 1000;
+      rounds = Integer.parseInt(command.getOptionValue("n", "0"));
+    } catch (NumberFormatException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+
+    Listener printer = new Listener() {
+      @Override public void onDrift(DriftEvent event) {
+        System.out.println(event);
+      }
+      @Override public void onPoll(PollStats stats) {
+        System.out.println(stats);
+      }
+    };
+    List<HBaseDriftDetector> detectors = new ArrayList<HBaseDriftDetector>();
+    for (String c : command.getOptionValues("c")) {
+      int split = c.lastIndexOf('=');
+      Preconditions.checkArgument(split > 0, "Clusters must be given as {zookeeper quorum}={schema file}: " + c);
+      HBaseDriftDetector detector = new HBaseDriftDetector(c.substring(0, split), new File(c.substring(split + 1)));
+      if (command.hasOption("p")) detector.setDeclaredSchemaParser(command.getOptionValue("p"));
+      detector.setReportUndeclared(command.hasOption("u"));
+      detector.addListener(printer);
+      detectors.add(detector);
+    }
+
+    for (int round = 0; rounds == 0 || round < rounds; round++) {
+      long start = System.currentTimeMillis();
+      for (HBaseDriftDetector detector : detectors) {
+        try {
+          detector.poll();
+        } catch (Exception e) {
+          // one cluster being unreachable shouldn't stop the others being watched
+          LOG.warn("Unable to poll " + detector.getCluster() + ": " + e.getMessage(), e);
+        }
+      }
+      long wait = intervalMillis - (System.currentTimeMillis() - start);
+      if (wait > 0 && (rounds == 0 || round < rounds - 1)) {
+        Thread.sleep(wait);
+      }
+    }
+  }
+}
@@ -0,0 +1,490 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.generator;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.parser.HBaseScootXMLStreamingParser;
+
+/**
+ * Generates large, realistic schemas for benchmarking and load testing, as scoot XML, phoenix XML,
+ * or an in-memory HBaseSchema.
+ *
+ * Every table is generated from its own random number generator, seeded from the generator's seed
+ * and the table's index, so the output depends only on the settings, and tables can be written one
+ * at a time without holding the whole schema in memory. Each schema comes in two versions: FROM,
+ * and TO, in which a configurable fraction of the FROM tables are altered or dropped, and new tables
+ * are created. Attribute values are drawn from weighted distributions, which can be replaced.
+ */
+public class SyntheticSchemaGenerator {
+
+  /** The two versions of a generated schema, for diffing one against the other */
+  public enum Version {
+    FROM,
+    TO,
+  }
+
+  private static final long TABLE_SEED_MULTIPLIER = 0x9E3779B97F4A7C15L;
+  private static final String[] KEY_PART_TYPES = {"String", "Timestamp", "Integer", "Byte"};
+  private static final int[] KEY_PART_LENGTHS = {15, 8, 4, 1};
+  private static final String[] PHOENIX_TYPES = {"CHAR", "DATE", "INTEGER", "TINYINT"};
+
+  private long seed = 1;
+  private int tableCount = 100;
+  private int minColumnFamilies = 1;
+  private int maxColumnFamilies = 5;
+  private int minKeyParts = 1;
+  private int maxKeyParts = 3;
+  private int maxColumnsPerFamily = 5;
+  private double alterRate = 0.05;
+  private double dropRate = 0.01;
+  private double createRate = 0.01;
+  private final Map<String, WeightedChoice> tableDistributions = new LinkedHashMap<String, WeightedChoice>();
+  private final Map<String, WeightedChoice> columnFamilyDistributions = new LinkedHashMap<String, WeightedChoice>();
+
+  public SyntheticSchemaGenerator() {
+    // attributes are named as they are in scoot XML
+    setTableDistribution("maxFileSizeMB", "256:1", "1024:3", "10240:1");
+    setTableDistribution("memStoreFlushSizeMB", "64:1", "128:3", "256:1");
+    setTableDistribution("isReadOnly", "false:19", "true:1");
+    setTableDistribution("useDeferredLogFlush", "false:4", "true:1");
+    setTableDistribution("owner", "team0:1", "team1:1", "team2:1", "team3:1", "team4:1");
+    setColumnFamilyDistribution("maxVersions", "1:3", "3:4", "5:1", "10:1");
+    setColumnFamilyDistribution("blockSizeKB", "16:1", "64:4", "128:1");
+    setColumnFamilyDistribution("blockCache", "true:9", "false:1");
+    setColumnFamilyDistribution("timeToLiveMS", "2147483647:4", "86400:1", "604800:1");
+    setColumnFamilyDistribution("inMemory", "false:9", "true:1");
+    setColumnFamilyDistribution("bloomFilter", "NONE:3", "ROW:4", "ROWCOL:1");
+    setColumnFamilyDistribution("COMPRESSION", "NONE:3", "GZ:2", "SNAPPY:1");
+    setColumnFamilyDistribution("DATA_BLOCK_ENCODING", "NONE:3", "PREFIX:1", "DIFF:1", "FAST_DIFF:2");
+    setColumnFamilyDistribution("replicationScope", "0:4", "1:1");
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /** How many tables the FROM version has */
+  public void setTableCount(int tableCount) {
+    Preconditions.checkArgument(tableCount >= 0, "Table count can't be negative.");
+    this.tableCount = tableCount;
+  }
+
+  public void setColumnFamilyRange(int min, int max) {
+    Preconditions.checkArgument(min >= 1 && max >= min, "Column family range must be at least 1, and max can't be less than min.");
+    this.minColumnFamilies = min;
+    this.maxColumnFamilies = max;
+  }
+
+  public void setKeyPartRange(int min, int max) {
+    Preconditions.checkArgument(min >= 0 && max >= min, "Key part range can't be negative, and max can't be less than min.");
+    this.minKeyParts = min;
+    this.maxKeyParts = max;
+  }
+
+  public void setMaxColumnsPerFamily(int maxColumnsPerFamily) {
+    Preconditions.checkArgument(maxColumnsPerFamily >= 1, "Each family needs at least one column.");
+    this.maxColumnsPerFamily = maxColumnsPerFamily;
+  }
+
+  /**
+   * Set the fraction of FROM tables that are altered and dropped in the TO version, and the number
+   * of tables created in the TO version, as a fraction of the FROM table count.
+   */
+  public void setMutationRates(double alterRate, double dropRate, double createRate) {
+    Preconditions.checkArgument(alterRate >= 0 && dropRate >= 0 && createRate >= 0 && alterRate + dropRate <= 1, "Mutation rates must be positive, and alter plus drop can't be more than 1.");
+    this.alterRate = alterRate;
+    this.dropRate = dropRate;
+    this.createRate = createRate;
+  }
+
+  /**
+   * Set the values (and their relative weights) a table attribute is drawn from, each written as
+   * "value:weight", e.g. setTableDistribution("maxFileSizeMB", "256:1", "1024:3"). Attributes are named
+   * as they are in scoot XML; with no values, the attribute isn't generated at all.
+   */
+  public void setTableDistribution(String attribute, String... weightedValues) {
+    setDistribution(tableDistributions, attribute, weightedValues);
+  }
+
+  /**
+   * Set the values (and their relative weights) a column family attribute is drawn from, as for tables
+   */
+  public void setColumnFamilyDistribution(String attribute, String... weightedValues) {
+    setDistribution(columnFamilyDistributions, attribute, weightedValues);
+  }
+
+  private static void setDistribution(Map<String, WeightedChoice> distributions, String attribute, String... weightedValues) {
+    if (weightedValues.length == 0) {
+      distributions.remove(attribute);
+    } else {
+      distributions.put(attribute, new WeightedChoice(attribute, weightedValues));
+    }
+  }
+
+  /**
+   * Write the given version of the schema as a scoot XML file
+   */
+  public void writeScootXML(Version version, Writer out) throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+    out.write("<schema>\n");
+    for (int x = 0; x < getTableIndexLimit(); x++) {
+      Table t = getTable(x, version);
+      if (t == null) continue;
+      out.write("    <table name=\"" + t.name + "\"");
+      writeAttributes(out, t.attributes, "        ");
+      out.write(">\n");
+      if (!t.keyParts.isEmpty()) {
+        out.write("        <key>\n");
+        for (KeyPart k : t.keyParts) {
+          out.write("            <keyPart name=\"" + k.name + "\" type=\"" + KEY_PART_TYPES[k.type] + "\" length=\"" + KEY_PART_LENGTHS[k.type] + "\" inverted=\"" + k.inverted + "\" />\n");
+        }
+        out.write("        </key>\n");
+      }
+      out.write("        <columnFamilies>\n");
+      for (ColumnFamily cf : t.columnFamilies) {
+        out.write("            <columnFamily name=\"" + cf.name + "\"");
+        writeAttributes(out, cf.attributes, "                ");
+        out.write(">\n");
+        for (int c = 0; c < cf.columnTypes.size(); c++) {
+          out.write("                <column name=\"" + cf.name + "Column" + c + "\" type=\"" + KEY_PART_TYPES[cf.columnTypes.get(c)] + "\" />\n");
+        }
+        out.write("            </columnFamily>\n");
+      }
+      out.write("        </columnFamilies>\n");
+      out.write("    </table>\n");
+    }
+    out.write("</schema>\n");
+    out.flush();
+  }
+
+  /**
+   * Write the given version of the schema as a phoenix XML file. Phoenix files only carry the table
+   * and column family names (and the columns), so the generated attributes aren't included.
+   */
+  public void writePhoenixXML(Version version, Writer out) throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    out.write("<schema version=\"180.0\">\n");
+    out.write("    <tables>\n");
+    for (int x = 0; x < getTableIndexLimit(); x++) {
+      Table t = getTable(x, version);
+      if (t == null) continue;
+      out.write("        <table name=\"" + t.name + "\">\n");
+      out.write("            <pkColumns>\n");
+      for (KeyPart k : t.keyParts) {
+        out.write("                <pkColumn>\n");
+        out.write("                    <column name=\"" + k.name + "\" sqlType=\"" + PHOENIX_TYPES[k.type] + "\" maxLength=\"" + KEY_PART_LENGTHS[k.type] + "\" fixedWidth=\"true\" nullable=\"false\"/>\n");
+        out.write("                </pkColumn>\n");
+      }
+      out.write("            </pkColumns>\n");
+      out.write("            <columnFamilies>\n");
+      for (ColumnFamily cf : t.columnFamilies) {
+        out.write("                <columnFamily name=\"" + cf.name + "\">\n");
+        for (int c = 0; c < cf.columnTypes.size(); c++) {
+          out.write("                    <column name=\"" + cf.name + "Column" + c + "\" sqlType=\"" + PHOENIX_TYPES[cf.columnTypes.get(c)] + "\" maxLength=\"" + KEY_PART_LENGTHS[cf.columnTypes.get(c)] + "\" fixedWidth=\"false\" nullable=\"true\"/>\n");
+        }
+        out.write("                </columnFamily>\n");
+      }
+      out.write("            </columnFamilies>\n");
+      out.write("        </table>\n");
+    }
+    out.write("    </tables>\n");
+    out.write("</schema>\n");
+    out.flush();
+  }
+
+  /**
+   * Get the given version of the schema in memory. It's exactly what parsing the scoot XML for the same
+   * version gives, because that's how it's built: the XML is streamed straight into the streaming parser
+   * from another thread, so it's never held in memory all at once.
+   */
+  public HBaseSchema getSchema(final Version version) {
+    try {
+      final PipedOutputStream pipeOut = new PipedOutputStream();
+      PipedInputStream pipeIn = new PipedInputStream(pipeOut, 64 * 1024);
+      final IOException[] writeFailure = new IOException[1];
+      Thread writer = new Thread("scoot-schema-generator") {
+        @Override
+        public void run() {
+          try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(pipeOut, "UTF-8"));
+            try {
+              writeScootXML(version, out);
+            } finally {
+              out.close();
+            }
+          } catch (IOException e) {
+            writeFailure[0] = e;
+          }
+        }
+      };
+      writer.setDaemon(true);
+      writer.start();
+      HBaseSchema schema;
+      try {
+        schema = new HBaseScootXMLStreamingParser().parseSchemaInputStream(pipeIn);
+      } finally {
+        // if parsing failed part way, this unblocks the writer
+        pipeIn.close();
+      }
+      writer.join();
+      if (writeFailure[0] != null) {
+        throw writeFailure[0];
+      }
+      return schema;
+    } catch (IOException e) {
+      throw new ScootException("Unable to generate schema: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScootException("Interrupted while generating schema.", e);
+    }
+  }
+
+  /** Tables past the FROM table count are the ones created in the TO version */
+  private int getTableIndexLimit() {
+    return tableCount + (int)Math.round(tableCount * createRate);
+  }
+
+  /**
+   * Generate the table with the given index, as it is in the given version; null if the table doesn't
+   * exist in that version
+   */
+  private Table getTable(int index, Version version) {
+    if (index >= tableCount) {
+      return version == Version.TO ? newTable("created" + index, new Random(seed + index * TABLE_SEED_MULTIPLIER)) : null;
+    }
+    Table t = newTable("table" + index, new Random(seed + index * TABLE_SEED_MULTIPLIER));
+    if (version == Version.FROM) return t;
+    Random mutations = new Random(~seed + index * TABLE_SEED_MULTIPLIER);
+    double roll = mutations.nextDouble();
+    if (roll < dropRate) return null;
+    if (roll < dropRate + alterRate) alter(t, mutations);
+    return t;
+  }
+
+  private Table newTable(String name, Random random) {
+    Table t = new Table(name);
+    for (Entry<String, WeightedChoice> e : tableDistributions.entrySet()) {
+      t.attributes.put(e.getKey(), e.getValue().next(random));
+    }
+    int keyParts = minKeyParts + random.nextInt(maxKeyParts - minKeyParts + 1);
+    for (int k = 0; k < keyParts; k++) {
+      t.keyParts.add(new KeyPart(name + "KeyPart" + k, random.nextInt(KEY_PART_TYPES.length), random.nextBoolean()));
+    }
+    int families = minColumnFamilies + random.nextInt(maxColumnFamilies - minColumnFamilies + 1);
+    for (int f = 0; f < families; f++) {
+      t.columnFamilies.add(newColumnFamily("cf" + f, random));
+    }
+    return t;
+  }
+
+  private ColumnFamily newColumnFamily(String name, Random random) {
+    ColumnFamily cf = new ColumnFamily(name);
+    for (Entry<String, WeightedChoice> e : columnFamilyDistributions.entrySet()) {
+      cf.attributes.put(e.getKey(), e.getValue().next(random));
+    }
+    int columns = 1 + random.nextInt(maxColumnsPerFamily);
+    for (int c = 0; c < columns; c++) {
+      cf.columnTypes.add(random.nextInt(KEY_PART_TYPES.length));
+    }
+    return cf;
+  }
+
+  /**
+   * Make one change to the table: a table attribute, a column family attribute, or adding or removing a
+   * column family. Attribute changes are redrawn until they differ, where the distribution allows it.
+   */
+  private void alter(Table t, Random random) {
+    switch (random.nextInt(4)) {
+      case 0:
+        if (changeAttribute(t.attributes, tableDistributions, random)) return;
+        break;
+      case 1:
+        ColumnFamily cf = t.columnFamilies.get(random.nextInt(t.columnFamilies.size()));
+        if (changeAttribute(cf.attributes, columnFamilyDistributions, random)) return;
+        break;
+      case 2:
+        if (t.columnFamilies.size() > minColumnFamilies) {
+          t.columnFamilies.remove(random.nextInt(t.columnFamilies.size()));
+          return;
+        }
+        break;
+      default:
+        break;
+    }
+    // adding a family is always possible, so it's the fallback when the chosen change isn't
+    t.columnFamilies.add(newColumnFamily("added" + t.columnFamilies.size(), random));
+  }
+
+  private static boolean changeAttribute(Map<String, String> attributes, Map<String, WeightedChoice> distributions, Random random) {
+    List<String> changeable = new ArrayList<String>();
+    for (Entry<String, WeightedChoice> e : distributions.entrySet()) {
+      if (e.getValue().values.length > 1) changeable.add(e.getKey());
+    }
+    if (changeable.isEmpty()) return false;
+    String attribute = changeable.get(random.nextInt(changeable.size()));
+    String oldValue = attributes.get(attribute);
+    String newValue = oldValue;
+    while (newValue.equals(oldValue)) {
+      newValue = distributions.get(attribute).next(random);
+    }
+    attributes.put(attribute, newValue);
+    return true;
+  }
+
+  private static void writeAttributes(Writer out, Map<String, String> attributes, String indent) throws IOException {
+    for (Entry<String, String> e : attributes.entrySet()) {
+      out.write("\n" + indent + e.getKey() + "=\"" + e.getValue() + "\"");
+    }
+  }
+
+  /**
+   * A set of values with relative weights, parsed from "value:weight" strings
+   */
+  private static class WeightedChoice {
+    final String[] values;
+    final int[] cumulativeWeights;
+
+    WeightedChoice(String attribute, String... weightedValues) {
+      values = new String[weightedValues.length];
+      cumulativeWeights = new int[weightedValues.length];
+      int total = 0;
+      for (int x = 0; x < weightedValues.length; x++) {
+        int split = weightedValues[x].lastIndexOf(':');
+        try {
+          values[x] = split < 0 ? weightedValues[x] : weightedValues[x].substring(0, split);
+          total += split < 0 ? 1 : Integer.parseInt(weightedValues[x].substring(split + 1));
+        } catch (NumberFormatException e) {
+          throw new ScootException("Invalid weighted value for attribute '" + attribute + "': " + weightedValues[x], e);
+        }
+        cumulativeWeights[x] = total;
+      }
+      Preconditions.checkArgument(total > 0, "Weights for attribute '" + attribute + "' must add up to more than 0.");
+    }
+
+    String next(Random random) {
+      int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+      for (int x = 0; x < cumulativeWeights.length; x++) {
+        if (r < cumulativeWeights[x]) return values[x];
+      }
+      return values[values.length - 1];
+    }
+  }
+
+  private static class Table {
+    final String name;
+    final Map<String, String> attributes = new LinkedHashMap<String, String>();
+    final List<KeyPart> keyParts = new ArrayList<KeyPart>();
+    final List<ColumnFamily> columnFamilies = new ArrayList<ColumnFamily>();
+    Table(String name) { this.name = name; }
+  }
+
+  private static class ColumnFamily {
+    final String name;
+    final Map<String, String> attributes = new LinkedHashMap<String, String>();
+    final List<Integer> columnTypes = new ArrayList<Integer>();
+    ColumnFamily(String name) { this.name = name; }
+  }
+
+  private static class KeyPart {
+    final String name;
+    final int type;
+    final boolean inverted;
+    KeyPart(String name, int type, boolean inverted) { this.name = name; this.type = type; this.inverted = inverted; }
+  }
+
+  private static final Options options = new Options();
+  static {
+    options.addOption("n", "tables", true, "How many tables to generate. Defaults to 100.");
+    options.addOption("s", "seed", true, "The random seed. The same seed and settings always generate the same schema. Defaults to 1.");
+    options.addOption("v", "version", true, "Which version of the schema to write: FROM (the default) or TO.");
+    options.addOption("p", "phoenix", false, "Write phoenix XML instead of scoot XML.");
+    options.addOption("cf", "column-families", true, "The most column families a table can have. Defaults to 5.");
+    options.addOption("ar", "alter-rate", true, "The fraction of tables altered in the TO version. Defaults to 0.05.");
+    options.addOption("dr", "drop-rate", true, "The fraction of tables dropped in the TO version. Defaults to 0.01.");
+    options.addOption("cr", "create-rate", true, "How many tables are created in the TO version, as a fraction of the table count. Defaults to 0.01.");
+    options.addOption("o", "output", true, "The name of the file to write.");
+  }
+
+  /**
+   * Write a generated schema file from the command line
+   */
+  public static void main(String[] args) throws IOException {
+    CommandLine command;
+    try {
+      command = new PosixParser().parse(options, args);
+    } catch (ParseException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+    if (!command.hasOption("o")) {
+      new HelpFormatter().printHelp("scoot-generate", options);
+      return;
+    }
+    SyntheticSchemaGenerator generator = new SyntheticSchemaGenerator();
+    try {
+      generator.setTableCount(Integer.parseInt(command.getOptionValue("n", "100")));
+      generator.setSeed(Long.parseLong(command.getOptionValue("s", "1")));
+      generator.setColumnFamilyRange(1, Integer.parseInt(command.getOptionValue("cf", "5")));
+      generator.setMutationRates(Double.parseDouble(command.getOptionValue("ar", "0.05")),
+          Double.parseDouble(command.getOptionValue("dr", "0.01")), Double.parseDouble(command.getOptionValue("cr", "0.01")));
+    } catch (NumberFormatException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+    Version version = Version.valueOf(command.getOptionValue("v", Version.FROM.name()).toUpperCase());
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(command.getOptionValue("o")), "UTF-8"));
+    try {
+      if (command.hasOption("p")) {
+        generator.writePhoenixXML(version, out);
+      } else {
+        generator.writeScootXML(version, out);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+}
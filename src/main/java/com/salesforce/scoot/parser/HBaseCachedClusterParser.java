@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.util.FSTableDescriptors;
+import org.apache.hadoop.hbase.util.FSUtils;
+import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * A cluster parser that keeps the last schema it read from each cluster in a snapshot file on local disk,
+ * and reuses it instead of asking the master for every descriptor again.
+ *
+ * A snapshot is reused while it's younger than the TTL and the cluster's change signal still matches the
+ * one recorded with it. The signal is cheap to get: the table list marker is the stat of the table znode in
+ * zookeeper (its children change whenever a table is created or dropped), and the per-table markers are the
+ * modification times of the .tableinfo files under hbase.rootdir, which the master rewrites on every schema
+ * change. If the filesystem can't be reached, only the table list and the TTL are checked. With change
+ * checking turned off, a snapshot is reused until the TTL runs out without contacting the cluster at all.
+ *
+ * The cache directory and TTL default to the "scoot.cache.dir" and "scoot.cache.ttl.ms" system properties.
+ */
+public class HBaseCachedClusterParser extends HBaseClusterParser {
+
+  private static final Log LOG = LogFactory.getLog(HBaseCachedClusterParser.class);
+
+  public static final String CACHE_DIR_PROPERTY = "scoot.cache.dir";
+  public static final String CACHE_TTL_PROPERTY = "scoot.cache.ttl.ms";
+
+  private String zookeeperQuorum;
+  private File cacheDirectory = new File(System.getProperty(CACHE_DIR_PROPERTY, System.getProperty("user.home") + File.separator + ".scoot" + File.separator + "cache"));
+  private long ttlMillis = Long.getLong(CACHE_TTL_PROPERTY, 60 * 60 * 1000L);
+  private boolean checkForChanges = true;
+  private boolean lastParseWasCacheHit = false;
+
+  @Override
+  public void setResourceToParse(String zookeeperQuorum) {
+    super.setResourceToParse(zookeeperQuorum);
+    this.zookeeperQuorum = zookeeperQuorum;
+  }
+
+  public void setCacheDirectory(File cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  /**
+   * How long a snapshot can be reused for; 0 means no limit, so only the change signal decides.
+   */
+  public void setTtlMillis(long ttlMillis) {
+    Preconditions.checkArgument(ttlMillis >= 0, "TTL can't be negative.");
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * Whether to compare the cluster's change signal before reusing a snapshot. If not, a snapshot is
+   * trusted until its TTL runs out.
+   */
+  public void setCheckForChanges(boolean checkForChanges) {
+    this.checkForChanges = checkForChanges;
+  }
+
+  public boolean wasLastParseCacheHit() {
+    return lastParseWasCacheHit;
+  }
+
+  /**
+   * The snapshot file for this cluster. The quorum is reduced to characters that are safe in a file name,
+   * with a hash of the original so different quorums can't collide.
+   */
+  public File getSnapshotFile() {
+    Preconditions.checkNotNull(zookeeperQuorum, "Zookeeper quorum must be set first.");
+    String safeName = zookeeperQuorum.replaceAll("[^A-Za-z0-9._-]", "_");
+    return new File(cacheDirectory, safeName + "-" + MD5Hash.digest(zookeeperQuorum).toString().substring(0, 8) + ".snapshot");
+  }
+
+  @Override
+  public HBaseSchema parse() {
+    Preconditions.checkNotNull(zookeeperQuorum, "Configuration with zookeeper quorum must be set before parsing.");
+    lastParseWasCacheHit = false;
+    if (getSplitPointSource() != SplitPointSource.NONE) {
+      // region boundaries move without the table znodes or descriptors changing, so snapshots can't vouch for them
+      LOG.info("Reading the cluster directly, since split points were asked for.");
+      return super.parse();
+    }
+    long now = System.currentTimeMillis();
+    File file = getSnapshotFile();
+
+    HBaseSchemaSnapshot snapshot = null;
+    try {
+      snapshot = HBaseSchemaSnapshot.read(file);
+    } catch (IOException e) {
+      LOG.warn("Ignoring unreadable schema snapshot " + file + ": " + e.getMessage());
+    }
+    boolean fresh = snapshot != null && snapshot.getZookeeperQuorum().equals(zookeeperQuorum)
+        && (ttlMillis == 0 || now - snapshot.getCreatedMillis() < ttlMillis);
+
+    if (fresh && !checkForChanges) {
+      LOG.info("Using schema snapshot " + file + " without checking the cluster.");
+      lastParseWasCacheHit = true;
+      return snapshot.getSchema();
+    }
+
+    String signature = getChangeSignature();
+    if (fresh && signature.equals(snapshot.getSignature())) {
+      LOG.info("Cluster hasn't changed; using schema snapshot " + file);
+      lastParseWasCacheHit = true;
+      return snapshot.getSchema();
+    }
+
+    HBaseSchema schema = super.parse();
+    try {
+      new HBaseSchemaSnapshot(zookeeperQuorum, now, signature, schema).write(file);
+    } catch (IOException e) {
+      // the parse still worked, so the cache is only an optimization
+      LOG.warn("Unable to save schema snapshot " + file + ": " + e.getMessage());
+    }
+    return schema;
+  }
+
+  /**
+   * Get a string that changes whenever tables are created, dropped or modified.
+   */
+  public String getChangeSignature() {
+    StringBuilder sb = new StringBuilder();
+    try {
+      HConnection connection = openConnection();
+      try {
+        ZooKeeperWatcher zkw = connection.getZooKeeperWatcher();
+        Stat stat = zkw.getRecoverableZooKeeper().exists(zkw.tableZNode, false);
+        sb.append("tables:").append(stat == null ? "none" : stat.getCversion() + "/" + stat.getPzxid());
+      } finally {
+        closeConnection(connection);
+      }
+    } catch (Exception e) {
+      throw new ScootException("Unable to get the table list from zookeeper: " + e.getMessage(), e);
+    }
+    sb.append(";tableinfo:");
+    try {
+      Path rootDir = FSUtils.getRootDir(getConfiguration());
+      FileSystem fs = rootDir.getFileSystem(getConfiguration());
+      FileStatus[] tableInfos = fs.globStatus(new Path(rootDir, "*" + Path.SEPARATOR + FSTableDescriptors.TABLEINFO_NAME + "*"));
+      StringBuilder markers = new StringBuilder();
+      if (tableInfos != null) {
+        String[] entries = new String[tableInfos.length];
+        for (int x = 0; x < tableInfos.length; x++) {
+          entries[x] = tableInfos[x].getPath().toUri().getPath() + "@" + tableInfos[x].getModificationTime();
+        }
+        Arrays.sort(entries);
+        for (String entry : entries) {
+          markers.append(entry).append('\n');
+        }
+      }
+      sb.append(MD5Hash.digest(markers.toString()));
+    } catch (IOException e) {
+      LOG.warn("Unable to read table modification times from the filesystem, so only the table list and TTL are checked: " + e.getMessage());
+      sb.append("unavailable");
+    }
+    return sb.toString();
+  }
+
+}
@@ -25,29 +25,221 @@
  */
 package com.salesforce.scoot.parser;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.zookeeper.ZKUtil;
+import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
 
 import com.google.common.base.Preconditions;
 import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseSchemaAttribute;
 import com.salesforce.scoot.ScootException;
 
 /**
  * "Parses" a schema representation out of a running cluster
  *
+ * With the default parallelism of 1, all the descriptors come back from a single listTables() call. With
+ * more than one worker, the table names are listed first (from the table znodes in zookeeper, which is
+ * cheap), and the descriptors are then fetched in batches by that many threads, each batch with its own
+ * timeout and retries. Zookeeper isn't the authority on what tables exist, though, so the names are checked
+ * against the master: every table the znodes name has to come back from it, and every table with regions
+ * in .META. has to have a znode. Only the first row of each table is read from .META., so the check costs
+ * one read per table rather than a scan of every region. If they disagree, the parse fails rather than
+ * return a partial schema. Either way, one connection is shared for the whole parse, and the time spent in
+ * each phase is logged and available from getTimings().
+ *
+ * The parser can also record each table's split points in the schema (see setSplitPointSource), so that
+ * tables created from it start off with the same region boundaries the source tables have.
  */
 public class HBaseClusterParser extends HBaseSchemaParser {
 
+  private static final Log LOG = LogFactory.getLog(HBaseClusterParser.class);
+
+  /**
+   * Where the split points recorded for each table come from
+   */
+  public enum SplitPointSource {
+    /** Don't record split points */
+    NONE,
+    /** The start keys of the table's current regions */
+    REGIONS,
+    /** Evenly spaced keys from a random sample of the table's rows */
+    SAMPLE,
+    ;
+
+    /**
+     * Case insensitive lookup by name, for command line use
+     */
+    public static SplitPointSource getFromName(String name) {
+      for (SplitPointSource s : values()) {
+        if (s.name().equalsIgnoreCase(name)) {
+          return s;
+        }
+      }
+      throw new ScootException("Unknown split point source '" + name + "'; expected one of NONE, REGIONS or SAMPLE.");
+    }
+  }
+
   private Configuration config;
+  private HConnection sharedConnection;
+  private int parallelism = 1;
+  private int batchSize = 100;
+  private long batchTimeoutMillis = 60000;
+  private int batchRetries = 3;
+  private SplitPointSource splitPointSource = SplitPointSource.NONE;
+  private int sampleRegions = 0;
+  private float sampleRate = 0.001f;
+  private int maxSamples = 100000;
+  private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
 
   public void setResourceToParse(String zookeeperQuorum){
     this.config = createConfig(zookeeperQuorum);
   }
 
+  /**
+   * Use a connection that outlives the parse (and is left open afterwards), instead of opening a new one
+   * each time. It must point at the same cluster as the zookeeper quorum.
+   */
+  public void setConnection(HConnection connection) {
+    this.sharedConnection = connection;
+  }
+
+  /**
+   * The shared connection if there is one, and otherwise a new one, which closeConnection() closes
+   */
+  protected HConnection openConnection() throws IOException {
+    return sharedConnection != null ? sharedConnection : HConnectionManager.createConnection(config);
+  }
+
+  protected void closeConnection(HConnection connection) throws IOException {
+    if (connection != sharedConnection) {
+      connection.close();
+    }
+  }
+
+  /**
+   * How many threads fetch table descriptors at the same time. 1 (the default) gets them all in one call.
+   */
+  public void setParallelism(int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "Parallelism must be at least 1.");
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * How many table descriptors each request to the master asks for, when fetching in parallel
+   */
+  public void setBatchSize(int batchSize) {
+    Preconditions.checkArgument(batchSize > 0, "Batch size must be at least 1.");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * How long to wait for one batch of descriptors before giving up on that attempt
+   */
+  public void setBatchTimeoutMillis(long batchTimeoutMillis) {
+    Preconditions.checkArgument(batchTimeoutMillis > 0, "Batch timeout must be positive.");
+    this.batchTimeoutMillis = batchTimeoutMillis;
+  }
+
+  /**
+   * How many more times to try a batch of descriptors after its first attempt fails or times out
+   */
+  public void setBatchRetries(int batchRetries) {
+    Preconditions.checkArgument(batchRetries >= 0, "Batch retries can't be negative.");
+    this.batchRetries = batchRetries;
+  }
+
+  /**
+   * Whether (and how) to record each table's split points in the parsed schema. Defaults to NONE.
+   */
+  public void setSplitPointSource(SplitPointSource splitPointSource) {
+    this.splitPointSource = Preconditions.checkNotNull(splitPointSource);
+  }
+
+  public SplitPointSource getSplitPointSource() {
+    return splitPointSource;
+  }
 
-  private static Configuration createConfig(String zookeeperQuorum) {
+  /**
+   * When sampling, how many regions the split points should make. 0 (the default) uses the table's
+   * NUMREGIONS if it has one, and its current number of regions otherwise.
+   */
+  public void setSampleRegions(int sampleRegions) {
+    Preconditions.checkArgument(sampleRegions >= 0, "Sample regions can't be negative.");
+    this.sampleRegions = sampleRegions;
+  }
+
+  /**
+   * When sampling, the chance of any one row being returned by the region servers
+   */
+  public void setSampleRate(float sampleRate) {
+    Preconditions.checkArgument(sampleRate > 0 && sampleRate <= 1, "Sample rate must be greater than 0 and at most 1.");
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * When sampling, the most row keys kept in memory per table
+   */
+  public void setMaxSamples(int maxSamples) {
+    Preconditions.checkArgument(maxSamples > 0, "Max samples must be at least 1.");
+    this.maxSamples = maxSamples;
+  }
+
+  /**
+   * Milliseconds spent in each phase of the last parse, in the order they happened
+   */
+  public Map<String, Long> getTimings() {
+    synchronized (timings) {
+      return new LinkedHashMap<String, Long>(timings);
+    }
+  }
+
+  /**
+   * The client configuration, once the zookeeper quorum has been set
+   */
+  protected Configuration getConfiguration() {
+    return config;
+  }
+
+  /**
+   * Create a client configuration pointing at the cluster with the given zookeeper quorum
+   */
+  public static Configuration createConfig(String zookeeperQuorum) {
     Configuration configuration = HBaseConfiguration.create();
     configuration.set("hbase.zookeeper.quorum", zookeeperQuorum);
     return configuration;
@@ -60,16 +252,327 @@ public class HBaseClusterParser extends HBaseSchemaParser {
   @Override
   public HBaseSchema parse() {
     Preconditions.checkNotNull(config, "Configuration with zookeeper quorum must be set before parsing.");
+    timings.clear();
     HBaseSchema s = new HBaseSchema();
+    long start = System.currentTimeMillis();
     try {
-      HBaseAdmin admin = new HBaseAdmin(config);
-      for (HTableDescriptor t : admin.listTables()){
-        s.addTable(t);
+      HConnection connection = openConnection();
+      try {
+        HTableDescriptor[] tables = parallelism > 1 ? fetchInParallel(connection) : listTables(connection);
+        for (HTableDescriptor t : tables){
+          s.addTable(t);
+        }
+        if (splitPointSource != SplitPointSource.NONE) {
+          captureSplitPoints(connection, s);
+        }
+      } finally {
+        closeConnection(connection);
       }
+    } catch (ScootException x) {
+      throw x;
     } catch (Exception x) {
       throw new ScootException("Unable to connect and get current HBase schema information: " + x.getMessage(), x);
     }
+    recordTiming("total", start);
+    LOG.info("Parsed " + s.size() + " tables from the cluster: " + getTimings());
     return s;
   }
 
+  /**
+   * Get every descriptor in a single call
+   */
+  private HTableDescriptor[] listTables(HConnection connection) throws IOException {
+    long start = System.currentTimeMillis();
+    HTableDescriptor[] tables = new HBaseAdmin(connection).listTables();
+    recordTiming("list-tables", start);
+    return tables;
+  }
+
+  /**
+   * List the table names, then fetch their descriptors in batches on a pool of threads. The result is in
+   * table name order, the same as listTables() gives.
+   */
+  private HTableDescriptor[] fetchInParallel(HConnection connection) throws Exception {
+    long start = System.currentTimeMillis();
+    List<String> tableNames = listTableNames(connection);
+    recordTiming("list-table-names", start);
+    if (tableNames == null) {
+      LOG.info("No table znodes in zookeeper; falling back to listing all tables at once.");
+      return listTables(connection);
+    }
+
+    start = System.currentTimeMillis();
+    List<List<String>> batches = new ArrayList<List<String>>();
+    for (int x = 0; x < tableNames.size(); x += batchSize) {
+      batches.add(tableNames.subList(x, Math.min(x + batchSize, tableNames.size())));
+    }
+    List<HTableDescriptor> result = new ArrayList<HTableDescriptor>(tableNames.size());
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, batches.size())));
+    try {
+      List<Future<HTableDescriptor[]>> futures = new ArrayList<Future<HTableDescriptor[]>>();
+      for (List<String> batch : batches) {
+        futures.add(pool.submit(new BatchFetch(connection, batch)));
+      }
+      for (Future<HTableDescriptor[]> f : futures) {
+        try {
+          Collections.addAll(result, f.get());
+        } catch (ExecutionException e) {
+          throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    recordTiming("fetch-descriptors", start);
+    LOG.info("Fetched " + result.size() + " of " + tableNames.size() + " table descriptors in " + batches.size() + " batches of up to " + batchSize + " using " + parallelism + " workers.");
+
+    start = System.currentTimeMillis();
+    Set<String> metaTableNames = listMetaTableNames(connection);
+    recordTiming("list-meta-tables", start);
+    checkTableNames(tableNames, result, metaTableNames);
+    return result.toArray(new HTableDescriptor[result.size()]);
+  }
+
+  /**
+   * Make sure the tables listed from zookeeper are the ones the master has: it must have returned a descriptor
+   * for each of them, and there mustn't be a table with regions in .META. that zookeeper didn't list.
+   */
+  private void checkTableNames(List<String> tableNames, List<HTableDescriptor> fetched, Set<String> metaTableNames) {
+    Set<String> notOnMaster = new TreeSet<String>(tableNames);
+    for (HTableDescriptor t : fetched) {
+      notOnMaster.remove(t.getNameAsString());
+    }
+    Set<String> notInZookeeper = new TreeSet<String>(metaTableNames);
+    notInZookeeper.removeAll(tableNames);
+    if (!notOnMaster.isEmpty() || !notInZookeeper.isEmpty()) {
+      throw new ScootException("Zookeeper and the master disagree about which tables exist"
+          + (notOnMaster.isEmpty() ? "" : "; zookeeper lists tables the master doesn't have: " + notOnMaster)
+          + (notInZookeeper.isEmpty() ? "" : "; the master has tables zookeeper doesn't list: " + notInZookeeper)
+          + ". Parse with a parallelism of 1 to list the tables from the master alone.");
+    }
+  }
+
+  /**
+   * The names of the tables with regions in .META., read batchSize tables at a time, each read with the
+   * batch timeout and retries
+   */
+  private Set<String> listMetaTableNames(final HConnection connection) throws Exception {
+    Set<String> result = new TreeSet<String>();
+    byte[] startRow = HConstants.EMPTY_START_ROW;
+    while (true) {
+      final byte[] from = startRow;
+      List<String> found = callWithRetries("reading the tables in .META. from '" + Bytes.toStringBinary(from) + "'", new Callable<List<String>>() {
+        @Override
+        public List<String> call() throws IOException {
+          return readMetaTableNames(connection, from);
+        }
+      });
+      result.addAll(found);
+      if (found.size() < batchSize) {
+        return result;
+      }
+      startRow = getRowAfterTable(Bytes.toBytes(found.get(found.size() - 1)));
+    }
+  }
+
+  /**
+   * Read the names of up to batchSize tables from .META., starting at the given row. Only the first row of
+   * each table is read; after it, the next scan starts past all of that table's regions.
+   */
+  private List<String> readMetaTableNames(HConnection connection, byte[] startRow) throws IOException {
+    List<String> result = new ArrayList<String>();
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    HTable meta = new HTable(HConstants.META_TABLE_NAME, connection, pool);
+    try {
+      byte[] row = startRow;
+      while (result.size() < batchSize) {
+        Scan scan = new Scan(row);
+        scan.addColumn(HConstants.CATALOG_FAMILY, HConstants.REGIONINFO_QUALIFIER);
+        scan.setFilter(new FirstKeyOnlyFilter());
+        scan.setCaching(1);
+        ResultScanner scanner = meta.getScanner(scan);
+        Result r;
+        try {
+          r = scanner.next();
+        } finally {
+          scanner.close();
+        }
+        if (r == null) {
+          break;
+        }
+        byte[] tableName = HRegionInfo.getTableName(r.getRow());
+        result.add(Bytes.toString(tableName));
+        row = getRowAfterTable(tableName);
+      }
+    } finally {
+      meta.close();
+      pool.shutdownNow();
+    }
+    return result;
+  }
+
+  /**
+   * The first .META. row that can come after every region of the table. Region names are the table name,
+   * a delimiter, and the start key, and no table name can have the delimiter in it.
+   */
+  private static byte[] getRowAfterTable(byte[] tableName) {
+    return Bytes.add(tableName, new byte[] { (byte)(HConstants.META_ROW_DELIMITER + 1) });
+  }
+
+  /**
+   * Every table has a znode under the table node in zookeeper; listing them avoids reading every descriptor
+   * just to find out what tables there are. Returns null if there are none, which may just mean the tables
+   * predate the znodes, so the caller can fall back to listTables().
+   */
+  private List<String> listTableNames(HConnection connection) throws Exception {
+    ZooKeeperWatcher zkw = connection.getZooKeeperWatcher();
+    List<String> children = ZKUtil.listChildrenNoWatch(zkw, zkw.tableZNode);
+    if (children == null || children.isEmpty()) return null;
+    List<String> tableNames = new ArrayList<String>();
+    for (String name : children) {
+      if (!name.equals(Bytes.toString(HConstants.ROOT_TABLE_NAME)) && !name.equals(Bytes.toString(HConstants.META_TABLE_NAME))) {
+        tableNames.add(name);
+      }
+    }
+    Collections.sort(tableNames);
+    return tableNames;
+  }
+
+  /**
+   * Fetch the descriptors for one batch of table names. Each attempt runs on its own thread so a hung
+   * call to the master can be abandoned after the timeout and retried.
+   */
+  private class BatchFetch implements Callable<HTableDescriptor[]> {
+    private final HConnection connection;
+    private final List<String> tableNames;
+
+    BatchFetch(HConnection connection, List<String> tableNames) {
+      this.connection = connection;
+      this.tableNames = tableNames;
+    }
+
+    @Override
+    public HTableDescriptor[] call() throws Exception {
+      return callWithRetries("fetching descriptors for " + tableNames.size() + " tables starting at '" + tableNames.get(0) + "'", new Callable<HTableDescriptor[]>() {
+        @Override
+        public HTableDescriptor[] call() throws IOException {
+          return connection.getHTableDescriptors(tableNames);
+        }
+      });
+    }
+  }
+
+  /**
+   * Run the call on a thread of its own, so that a hung call to the cluster can be abandoned after the batch
+   * timeout, and try it again up to batchRetries more times if it fails or times out
+   * @param what describes the call, for the log and the exception
+   */
+  private <T> T callWithRetries(String what, Callable<T> call) throws Exception {
+    Exception lastFailure = null;
+    for (int attempt = 0; attempt <= batchRetries; attempt++) {
+      ExecutorService attemptThread = Executors.newSingleThreadExecutor();
+      try {
+        return attemptThread.submit(call).get(batchTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        lastFailure = e;
+        LOG.warn("Timed out after " + batchTimeoutMillis + "ms " + what + " (attempt " + (attempt + 1) + ")");
+      } catch (ExecutionException e) {
+        lastFailure = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        LOG.warn("Failed " + what + " (attempt " + (attempt + 1) + "): " + lastFailure.getMessage());
+      } finally {
+        attemptThread.shutdownNow();
+      }
+    }
+    throw new ScootException("Gave up " + what + " after " + (batchRetries + 1) + " attempts: " + lastFailure.getMessage(), lastFailure);
+  }
+
+  /**
+   * Record the split points of every table in the schema, from the source set by setSplitPointSource()
+   */
+  private void captureSplitPoints(HConnection connection, HBaseSchema schema) throws IOException {
+    long start = System.currentTimeMillis();
+    for (String tableName : schema.getTableNames()) {
+      byte[] name = Bytes.toBytes(tableName);
+      List<byte[]> startKeys = getRegionStartKeys(connection, name);
+      byte[][] points;
+      if (splitPointSource == SplitPointSource.SAMPLE) {
+        String numRegions = schema.getTable(tableName).getValue(HBaseSchemaAttribute.NUMREGIONS.name());
+        int regions = sampleRegions > 0 ? sampleRegions : numRegions != null ? Integer.parseInt(numRegions) : startKeys.size() + 1;
+        points = sampleSplitPoints(connection, name, regions);
+      } else {
+        points = startKeys.toArray(new byte[startKeys.size()][]);
+      }
+      schema.setSplitPoints(tableName, points);
+    }
+    recordTiming("split-points", start);
+    LOG.info("Captured " + splitPointSource + " split points for " + schema.size() + " tables.");
+  }
+
+  /**
+   * The start keys of a table's regions, leaving out the first region's empty one
+   */
+  private List<byte[]> getRegionStartKeys(HConnection connection, byte[] tableName) throws IOException {
+    List<byte[]> result = new ArrayList<byte[]>();
+    for (HRegionLocation location : connection.locateRegions(tableName)) {
+      byte[] startKey = location.getRegionInfo().getStartKey();
+      if (startKey.length > 0) {
+        result.add(startKey);
+      }
+    }
+    Collections.sort(result, Bytes.BYTES_COMPARATOR);
+    return result;
+  }
+
+  /**
+   * Scan a random fraction of the table's row keys (filtered on the region servers, so only the sample comes
+   * back), keep at most maxSamples of them by reservoir sampling, and pick regions - 1 evenly spaced keys.
+   */
+  private byte[][] sampleSplitPoints(HConnection connection, byte[] tableName, int regions) throws IOException {
+    List<byte[]> sample = new ArrayList<byte[]>();
+    Random random = new Random();
+    long seen = 0;
+    Scan scan = new Scan();
+    scan.setFilter(new FilterList(new RandomRowFilter(sampleRate), new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+    scan.setCacheBlocks(false);
+    scan.setCaching(1000);
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    HTable table = new HTable(tableName, connection, pool);
+    try {
+      ResultScanner scanner = table.getScanner(scan);
+      try {
+        for (Result r : scanner) {
+          seen++;
+          if (sample.size() < maxSamples) {
+            sample.add(r.getRow());
+          } else {
+            long replace = (long)(random.nextDouble() * seen);
+            if (replace < maxSamples) {
+              sample.set((int)replace, r.getRow());
+            }
+          }
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      table.close();
+      pool.shutdownNow();
+    }
+    Collections.sort(sample, Bytes.BYTES_COMPARATOR);
+
+    List<byte[]> points = new ArrayList<byte[]>();
+    for (int x = 1; x < regions && !sample.isEmpty(); x++) {
+      byte[] point = sample.get((int)((long)sample.size() * x / regions));
+      if (point.length > 0 && (points.isEmpty() || Bytes.compareTo(points.get(points.size() - 1), point) < 0)) {
+        points.add(point);
+      }
+    }
+    LOG.info("Sampled " + sample.size() + " of " + seen + " row keys returned for '" + Bytes.toString(tableName) + "', giving " + (points.size() + 1) + " regions.");
+    return points.toArray(new byte[points.size()][]);
+  }
+
+  private void recordTiming(String phase, long startMillis) {
+    timings.put(phase, System.currentTimeMillis() - startMillis);
+  }
+
 }
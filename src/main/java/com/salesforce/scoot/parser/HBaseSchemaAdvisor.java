@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.SplitPointCalculator;
+import com.salesforce.scoot.SplitPointCalculator.KeyPart;
+
+/**
+ * Lints a schema for settings that are legal (validateTableDefinition and validateColumnFamily already
+ * catch the illegal ones) but likely to hurt read or write performance. Each rule has a default severity,
+ * which can be changed or turned off, and check() can be told to fail at a given severity so that a
+ * build can refuse schemas that break the rules a team cares about.
+ */
+public class HBaseSchemaAdvisor {
+
+  public enum Severity {
+    INFO,
+    WARNING,
+    ERROR,
+    /** Don't report this rule at all */
+    OFF,
+    ;
+  }
+
+  /**
+   * The things the advisor looks for, and how serious each is by default
+   */
+  public enum Rule {
+    NO_BLOOMFILTER(Severity.WARNING, "Without a bloom filter, every get has to read a block from each store file."),
+    EXCESSIVE_VERSIONS(Severity.WARNING, "Every extra version is stored, cached and skipped over on reads."),
+    LARGE_BLOCKSIZE_FOR_POINT_LOOKUPS(Severity.INFO, "Point lookups read and cache a whole block for one row; smaller blocks waste less."),
+    VERY_LARGE_BLOCKSIZE(Severity.WARNING, "Blocks this big make every random read expensive."),
+    NO_COMPRESSION(Severity.WARNING, "Uncompressed families use more disk, I/O and block cache."),
+    NO_DATA_BLOCK_ENCODING(Severity.INFO, "Encoding the keys in data blocks lets more rows fit in the block cache."),
+    IN_MEMORY_WITHOUT_BLOCKCACHE(Severity.WARNING, "IN_MEMORY has no effect when the block cache is turned off."),
+    TOO_MANY_FAMILIES(Severity.WARNING, "Families flush and compact together, so many of them multiply the write work."),
+    SMALL_MAX_FILESIZE(Severity.INFO, "A small maximum file size makes many regions, and many splits while the table grows."),
+    SMALL_MEMSTORE_FLUSHSIZE(Severity.INFO, "Small flushes make many small files, and more compactions."),
+    MONOTONIC_KEY_NOT_SALTED(Severity.WARNING, "Keys that start with a timestamp send all writes to the last region."),
+    ;
+
+    public final Severity defaultSeverity;
+    public final String description;
+
+    private Rule(Severity defaultSeverity, String description) {
+      this.defaultSeverity = defaultSeverity;
+      this.description = description;
+    }
+  }
+
+  /**
+   * Simple struct describing one thing the advisor found. The family and attribute are null for findings
+   * about a whole table, and the suggested value is null when there isn't a single right answer.
+   */
+  public static class Finding {
+    public final Rule rule;
+    public final Severity severity;
+    public final String tableName;
+    public final String familyName;
+    public final String attribute;
+    public final String value;
+    public final String suggestedValue;
+    Finding(Rule rule, Severity severity, String tableName, String familyName, String attribute, String value, String suggestedValue) {
+      this.rule = rule; this.severity = severity; this.tableName = tableName; this.familyName = familyName;
+      this.attribute = attribute; this.value = value; this.suggestedValue = suggestedValue;
+    }
+    @Override public String toString(){
+      return severity + " " + rule + " " + tableName + (familyName != null ? ":" + familyName : "")
+          + (attribute != null ? " " + attribute + "=" + value : "") + (suggestedValue != null ? " (suggest " + suggestedValue + ")" : "")
+          + ": " + rule.description;
+    }
+  }
+
+  static final int POINT_LOOKUP_BLOCKSIZE = 16 * 1024;
+  static final int MAX_BLOCKSIZE = 256 * 1024;
+  static final long MIN_MAX_FILESIZE = 1024L * 1024 * 1024;
+  static final long MIN_MEMSTORE_FLUSHSIZE = 64L * 1024 * 1024;
+  static final int MAX_FAMILIES = 3;
+
+  private final Map<Rule, Severity> severities = new EnumMap<Rule, Severity>(Rule.class);
+  private int maxVersions = 10;
+  private Severity failOn = Severity.OFF;
+
+  public HBaseSchemaAdvisor() {
+    for (Rule r : Rule.values()) {
+      severities.put(r, r.defaultSeverity);
+    }
+  }
+
+  /**
+   * Change how serious a rule is, or turn it off
+   */
+  public void setSeverity(Rule rule, Severity severity) {
+    severities.put(Preconditions.checkNotNull(rule), Preconditions.checkNotNull(severity));
+  }
+
+  /**
+   * The number of versions above which EXCESSIVE_VERSIONS is reported. Defaults to 10.
+   */
+  public void setMaxVersions(int maxVersions) {
+    Preconditions.checkArgument(maxVersions > 0, "Max versions must be at least 1.");
+    this.maxVersions = maxVersions;
+  }
+
+  /**
+   * Make check() throw if anything is found at this severity or above. Defaults to OFF, which never throws.
+   */
+  public void setFailOn(Severity failOn) {
+    this.failOn = Preconditions.checkNotNull(failOn);
+  }
+
+  /**
+   * Read settings from properties: a rule name with a severity (e.g. NO_COMPRESSION=ERROR), "failOn" with a
+   * severity, or "maxVersions" with a number.
+   */
+  public void configure(Properties properties) {
+    for (String key : properties.stringPropertyNames()) {
+      String value = properties.getProperty(key).trim();
+      try {
+        if (key.equals("failOn")) {
+          setFailOn(Severity.valueOf(value.toUpperCase()));
+        } else if (key.equals("maxVersions")) {
+          setMaxVersions(Integer.parseInt(value));
+        } else {
+          setSeverity(Rule.valueOf(key.toUpperCase()), Severity.valueOf(value.toUpperCase()));
+        }
+      } catch (IllegalArgumentException e) {
+        throw new ScootException("Invalid advisor setting '" + key + "=" + value + "'", e);
+      }
+    }
+  }
+
+  /**
+   * Lint every table in the schema, and return what was found in table order. Throws a ScootException
+   * listing the findings if any of them is at or above the fail-on severity.
+   */
+  public List<Finding> check(HBaseSchema schema) {
+    List<Finding> findings = new ArrayList<Finding>();
+    for (HTableDescriptor t : schema.getTables()) {
+      checkTable(t, findings);
+      for (HColumnDescriptor cf : t.getColumnFamilies()) {
+        checkColumnFamily(t, cf, findings);
+      }
+    }
+    if (failOn != Severity.OFF) {
+      StringBuilder failures = new StringBuilder();
+      for (Finding f : findings) {
+        if (f.severity.compareTo(failOn) >= 0) {
+          failures.append(f).append("\n");
+        }
+      }
+      if (failures.length() > 0) {
+        throw new ScootException("Schema has performance problems at " + failOn + " or above:\n" + failures);
+      }
+    }
+    return findings;
+  }
+
+  private void checkTable(HTableDescriptor t, List<Finding> findings) {
+    String name = t.getNameAsString();
+    if (t.getColumnFamilies().length > MAX_FAMILIES) {
+      report(findings, Rule.TOO_MANY_FAMILIES, name, null, null, String.valueOf(t.getColumnFamilies().length), String.valueOf(MAX_FAMILIES));
+    }
+    if (t.getMaxFileSize() > 0 && t.getMaxFileSize() < MIN_MAX_FILESIZE) {
+      report(findings, Rule.SMALL_MAX_FILESIZE, name, null, HBaseSchemaAttribute.MAX_FILESIZE.name, String.valueOf(t.getMaxFileSize()), String.valueOf(MIN_MAX_FILESIZE));
+    }
+    if (t.getMemStoreFlushSize() > 0 && t.getMemStoreFlushSize() < MIN_MEMSTORE_FLUSHSIZE) {
+      report(findings, Rule.SMALL_MEMSTORE_FLUSHSIZE, name, null, HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE.name, String.valueOf(t.getMemStoreFlushSize()), String.valueOf(MIN_MEMSTORE_FLUSHSIZE));
+    }
+    String fullSchema = t.getValue(HBaseScootXMLParser.FULL_SCHEMA_PROPERTY);
+    if (fullSchema != null && t.getValue(HBaseSchemaAttribute.SALT_BUCKETS.name) == null) {
+      List<KeyPart> keyParts = SplitPointCalculator.getKeyParts(fullSchema);
+      if (!keyParts.isEmpty() && !keyParts.get(0).inverted
+          && ("Timestamp".equalsIgnoreCase(keyParts.get(0).type) || "Date".equalsIgnoreCase(keyParts.get(0).type))) {
+        report(findings, Rule.MONOTONIC_KEY_NOT_SALTED, name, null, HBaseSchemaAttribute.SALT_BUCKETS.name, null, null);
+      }
+    }
+  }
+
+  private void checkColumnFamily(HTableDescriptor t, HColumnDescriptor cf, List<Finding> findings) {
+    String table = t.getNameAsString();
+    String family = cf.getNameAsString();
+    String bloom = getValue(cf, HBaseSchemaAttribute.BLOOMFILTER);
+    if ("NONE".equalsIgnoreCase(bloom)) {
+      report(findings, Rule.NO_BLOOMFILTER, table, family, HBaseSchemaAttribute.BLOOMFILTER.name, bloom, "ROW");
+    }
+    // the descriptor caches some numbers when they're set through setters, so read them from the values the parsers set
+    int versions = Integer.parseInt(getValue(cf, HBaseSchemaAttribute.VERSIONS));
+    if (versions > maxVersions) {
+      report(findings, Rule.EXCESSIVE_VERSIONS, table, family, HBaseSchemaAttribute.VERSIONS.name, String.valueOf(versions), String.valueOf(maxVersions));
+    }
+    int blocksize = Integer.parseInt(getValue(cf, HBaseSchemaAttribute.BLOCKSIZE));
+    if (blocksize > MAX_BLOCKSIZE) {
+      report(findings, Rule.VERY_LARGE_BLOCKSIZE, table, family, HBaseSchemaAttribute.BLOCKSIZE.name, String.valueOf(blocksize), String.valueOf(HColumnDescriptor.DEFAULT_BLOCKSIZE));
+    } else if (blocksize > POINT_LOOKUP_BLOCKSIZE && (cf.isInMemory() || "ROWCOL".equalsIgnoreCase(bloom))) {
+      // in-memory families and row+column blooms are the signs of a family read a cell at a time
+      report(findings, Rule.LARGE_BLOCKSIZE_FOR_POINT_LOOKUPS, table, family, HBaseSchemaAttribute.BLOCKSIZE.name, String.valueOf(blocksize), String.valueOf(POINT_LOOKUP_BLOCKSIZE));
+    }
+    String compression = getValue(cf, HBaseSchemaAttribute.COMPRESSION);
+    if ("NONE".equalsIgnoreCase(compression)) {
+      report(findings, Rule.NO_COMPRESSION, table, family, HBaseSchemaAttribute.COMPRESSION.name, compression, "SNAPPY");
+    }
+    String encoding = getValue(cf, HBaseSchemaAttribute.DATA_BLOCK_ENCODING);
+    if ("NONE".equalsIgnoreCase(encoding)) {
+      report(findings, Rule.NO_DATA_BLOCK_ENCODING, table, family, HBaseSchemaAttribute.DATA_BLOCK_ENCODING.name, encoding, "FAST_DIFF");
+    }
+    if (cf.isInMemory() && !cf.isBlockCacheEnabled()) {
+      report(findings, Rule.IN_MEMORY_WITHOUT_BLOCKCACHE, table, family, HBaseSchemaAttribute.BLOCKCACHE.name, "false", "true");
+    }
+  }
+
+  private static String getValue(HColumnDescriptor cf, HBaseSchemaAttribute a) {
+    String value = cf.getValue(a.name);
+    return value != null ? value : a.defaultValue;
+  }
+
+  private void report(List<Finding> findings, Rule rule, String table, String family, String attribute, String value, String suggestedValue) {
+    Severity severity = severities.get(rule);
+    if (severity != Severity.OFF) {
+      findings.add(new Finding(rule, severity, table, family, attribute, value, suggestedValue));
+    }
+  }
+
+}
@@ -29,7 +29,7 @@ import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 
 import com.salesforce.scoot.HBaseSchema;
-import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.SchemaNormalizer;
 import com.salesforce.scoot.ScootException;
 
 /**
@@ -52,34 +52,22 @@ public abstract class HBaseSchemaParser {
 
 
   /** 
-   * Interrogate the table object and give any un-set attributes their default values explicitly. 
-   * This is required because they'll get them anyway when the table is applied, and we need to compare 
-   * them with other objects.
+   * Interrogate the table object and give any un-set attributes their default values explicitly, writing
+   * the ones that are set the canonical way (see SchemaNormalizer). This is required because they'll get
+   * them anyway when the table is applied, and we need to compare them with other objects.
    */
    protected void applyMissingTableDefaults(HTableDescriptor t) {
-     for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()){
-       if (HTableDescriptor.class.equals(a.appliesToObjectType) 
-           && t.getValue(a.name) == null 
-           && a.defaultValue != null) {
-         t.setValue(a.name, a.defaultValue);
-       }
-     }
+     SchemaNormalizer.normalizeTable(t);
    }
 
   /** 
-  * Interrogate the column family object and give any un-set attributes their default values explicitly. 
-  * This is required because they'll get them anyway when the table is applied, and we need to compare 
-  * them with other objects.
+  * Interrogate the column family object and give any un-set attributes their default values explicitly,
+  * writing the ones that are set the canonical way (see SchemaNormalizer). This is required because they'll
+  * get them anyway when the table is applied, and we need to compare them with other objects.
   */
    protected void applyMissingColumnFamilyDefaults(HColumnDescriptor cf) {
-    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()){
-      if (HColumnDescriptor.class.equals(a.appliesToObjectType) 
-          && cf.getValue(a.name) == null 
-          && a.defaultValue != null) {
-        cf.setValue(a.name, a.defaultValue);
-      }
-    }
-  }
+     SchemaNormalizer.normalizeColumnFamily(cf);
+   }
    
    /**
     * Sanity check for table definition
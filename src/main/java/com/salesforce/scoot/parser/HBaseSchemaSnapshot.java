@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseSchema;
+
+/**
+ * A schema read from a cluster, along with when it was read and the change signal the cluster gave at the
+ * time, so it can be saved to disk and reused until the cluster changes. The tables are stored as the schema
+ * holds them, normalized on their way into it (see SchemaNormalizer), in the descriptors' own Writable form.
+ * So a snapshot reads back exactly as the parsed schema was, not as the cluster returned it.
+ */
+public class HBaseSchemaSnapshot {
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final String zookeeperQuorum;
+  private final long createdMillis;
+  private final String signature;
+  private final HBaseSchema schema;
+
+  public HBaseSchemaSnapshot(String zookeeperQuorum, long createdMillis, String signature, HBaseSchema schema) {
+    this.zookeeperQuorum = zookeeperQuorum;
+    this.createdMillis = createdMillis;
+    this.signature = signature;
+    this.schema = schema;
+  }
+
+  public String getZookeeperQuorum() {
+    return zookeeperQuorum;
+  }
+
+  public long getCreatedMillis() {
+    return createdMillis;
+  }
+
+  public String getSignature() {
+    return signature;
+  }
+
+  public HBaseSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Write the snapshot to the given file. It's written to a temporary file first and then renamed, so
+   * a concurrent reader never sees half a snapshot.
+   */
+  public void write(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create snapshot directory " + dir);
+    }
+    File temp = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      try {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(zookeeperQuorum);
+        out.writeLong(createdMillis);
+        out.writeUTF(signature);
+        out.writeInt(schema.getTables().size());
+        for (HTableDescriptor t : schema.getTables()) {
+          t.write(out);
+        }
+      } finally {
+        out.close();
+      }
+      if (!temp.renameTo(file)) {
+        // renameTo won't replace an existing file on every platform
+        if (!file.delete() || !temp.renameTo(file)) {
+          throw new IOException("Unable to move snapshot into place at " + file);
+        }
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * Read a snapshot written by write(), or return null if the file doesn't exist or is from an older format
+   */
+  public static HBaseSchemaSnapshot read(File file) throws IOException {
+    if (!file.isFile()) return null;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != FORMAT_VERSION) return null;
+      String zookeeperQuorum = in.readUTF();
+      long createdMillis = in.readLong();
+      String signature = in.readUTF();
+      int tableCount = in.readInt();
+      HBaseSchema schema = new HBaseSchema();
+      for (int x = 0; x < tableCount; x++) {
+        HTableDescriptor t = new HTableDescriptor();
+        t.readFields(in);
+        schema.addTable(t);
+      }
+      return new HBaseSchemaSnapshot(zookeeperQuorum, createdMillis, signature, schema);
+    } finally {
+      in.close();
+    }
+  }
+
+}
@@ -28,11 +28,13 @@ package com.salesforce.scoot.parser;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -74,6 +76,8 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     propertyNames.put("memStoreFlushSizeMB", HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE.name());
     propertyNames.put("owner", HBaseSchemaAttribute.OWNER.name());
     propertyNames.put("numRegionsToPreSplitOnCreation", HBaseSchemaAttribute.NUMREGIONS.name());
+    propertyNames.put("splitAlgorithm", HBaseSchemaAttribute.SPLITALGO.name());
+    propertyNames.put("saltBuckets", HBaseSchemaAttribute.SALT_BUCKETS.name());
     // column family
     propertyNames.put("blockCache", HBaseSchemaAttribute.BLOCKCACHE.name());
     propertyNames.put("blockSizeKB", HBaseSchemaAttribute.BLOCKSIZE.name());
@@ -101,12 +105,13 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
     multiplier.put("blockSizeKB", KILOBYTE_TO_BYTE_CONVERSION);
   }
   
-  private static final String TABLE_ELEMENT = "table";
-  private static final String TABLE_NAME_ATTRIBUTE = "name";
-  private static final String COLUMN_FAMILIES_ELEMENT = "columnFamilies";
-  private static final String FULL_SCHEMA_PROPERTY = "fullSchema";
-  private static final String COLUMN_FAMILY_ELEMENT = "columnFamily";
-  private static final String COLUMN_FAMILY_NAME_ATTRIBUTE = "name"; 
+  static final String TABLE_ELEMENT = "table";
+  static final String TABLE_NAME_ATTRIBUTE = "name";
+  static final String COLUMN_FAMILIES_ELEMENT = "columnFamilies";
+  public static final String FULL_SCHEMA_PROPERTY = "fullSchema";
+  static final String COLUMN_FAMILY_ELEMENT = "columnFamily";
+  static final String COLUMN_FAMILY_NAME_ATTRIBUTE = "name"; 
+  private static final Pattern WHITESPACE_BETWEEN_TAGS = Pattern.compile(">[\\t\\s\\n\\r]+<");
 
   
   public void setResourceToParse(String schemaFileName){
@@ -129,9 +134,9 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
   }
 
   /**
-   * Extract an object representation of the schema from an xml file
+   * Extract an object representation of the schema from an xml stream
    */
-  private HBaseSchema parseSchemaInputStream(FileInputStream inputStream) {
+  public HBaseSchema parseSchemaInputStream(InputStream inputStream) {
     
     HBaseSchema s = new HBaseSchema();
     
@@ -197,18 +202,25 @@ public class HBaseScootXMLParser extends HBaseSchemaParser {
       t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
       t.setOutputProperty(OutputKeys.INDENT, "no");
       t.transform(new DOMSource(tableNode), new StreamResult(writer));
-      return writer.toString().replaceAll(">[\\t\\s\\n\\r]+<", "><"); // remove whitespace and linebreaks between tags
+      return removeWhitespaceBetweenTags(writer.toString());
     } catch (Exception e) {
       throw new ScootException("Error while serializing table xml.", e);
     }
   }
 
+  /**
+   * Remove whitespace and linebreaks between tags
+   */
+  static String removeWhitespaceBetweenTags(String xml) {
+    return WHITESPACE_BETWEEN_TAGS.matcher(xml).replaceAll("><");
+  }
+
   /**
    * Use the propertyNames and multipliers map to attempt to cast the value to a strong type (if appropriate)
    * and apply a multiplier (if there is one), and then push the resulting name/value pair into this schema 
    * object's property collection.
    */
-  private void setAttributeValue(Object schemaObject, String originalName, String originalValue) {
+  void setAttributeValue(Object schemaObject, String originalName, String originalValue) {
     String attributeName = propertyNames.containsKey(originalName) ? propertyNames.get(originalName) : originalName;
     String attributeValue = originalValue;
 
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.parser;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Parse the schema from a "scoot" style XML file, like HBaseScootXMLParser, but by streaming through
+ * the file with StAX rather than building a DOM of the whole thing. Each table is turned into an
+ * HTableDescriptor as soon as its closing tag is read, and the table's fullSchema text is written
+ * straight from the events, so memory use doesn't depend on the size of the file. The resulting
+ * schema is the same as the one HBaseScootXMLParser produces.
+ */
+public class HBaseScootXMLStreamingParser extends HBaseScootXMLParser {
+
+  /** Not every StAX implementation can tell CDATA apart from other text, but the JDK's can if asked */
+  private static final String REPORT_CDATA_PROPERTY = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  @Override
+  public HBaseSchema parseSchemaInputStream(InputStream inputStream) {
+    HBaseSchema s = new HBaseSchema();
+    try {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      if (factory.isPropertySupported(REPORT_CDATA_PROPERTY)) {
+        factory.setProperty(REPORT_CDATA_PROPERTY, Boolean.TRUE);
+      }
+      XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(TABLE_ELEMENT)) {
+            s.addTable(getTable(reader));
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (ScootException x) {
+      throw new ScootException("Unable to parse schema file: " + x.getMessage(), x);
+    } catch (XMLStreamException x) {
+      throw new ScootException("Unable to parse schema file: " + x.getMessage(), x);
+    }
+    return s;
+  }
+
+  /**
+   * Read from the start of a <table> element through to its end, converting it into an HTableDescriptor
+   * (with its column families) and recording the text of the element as the table's schema.
+   */
+  private HTableDescriptor getTable(XMLStreamReader reader) throws XMLStreamException {
+    TableXMLWriter xml = new TableXMLWriter();
+    Map<String, String> tableAttributes = getAttributes(reader);
+    xml.startElement(reader, tableAttributes);
+
+    String tableName = tableAttributes.get(TABLE_NAME_ATTRIBUTE);
+    if (tableName == null) {
+      throw new ScootException("Table element is missing its '" + TABLE_NAME_ATTRIBUTE + "' attribute.");
+    }
+    HTableDescriptor tableDescriptor = new HTableDescriptor(tableName);
+    for (Entry<String, String> attr : tableAttributes.entrySet()) {
+      if (!attr.getKey().equalsIgnoreCase(TABLE_NAME_ATTRIBUTE)) { // skip name, already got it
+        setAttributeValue(tableDescriptor, attr.getKey(), attr.getValue());
+      }
+    }
+    applyMissingTableDefaults(tableDescriptor);
+
+    // depth is relative to the table element, so column families are at depth 2 inside a <columnFamilies> at depth 1
+    int depth = 0;
+    boolean inColumnFamilies = false;
+    while (true) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          Map<String, String> attributes = getAttributes(reader);
+          xml.startElement(reader, attributes);
+          if (depth == 1 && reader.getLocalName().equals(COLUMN_FAMILIES_ELEMENT)) {
+            inColumnFamilies = true;
+          } else if (depth == 2 && inColumnFamilies && reader.getLocalName().equals(COLUMN_FAMILY_ELEMENT)) {
+            tableDescriptor.addFamily(getColumnFamily(attributes));
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          xml.endElement(reader);
+          if (depth == 0) {
+            // push this entire subtree of the xml file into the table metadata as the table's schema
+            tableDescriptor.setValue(FULL_SCHEMA_PROPERTY, removeWhitespaceBetweenTags(xml.toString()));
+            validateTableDefinition(tableDescriptor);
+            return tableDescriptor;
+          }
+          if (depth == 1) {
+            inColumnFamilies = false;
+          }
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          xml.characters(reader.getText());
+          break;
+        case XMLStreamConstants.CDATA:
+          xml.cdata(reader.getText());
+          break;
+        case XMLStreamConstants.COMMENT:
+          xml.comment(reader.getText());
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          xml.processingInstruction(reader.getPITarget(), reader.getPIData());
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Convert the attributes of a <columnFamily> element to an HColumnDescriptor
+   */
+  private HColumnDescriptor getColumnFamily(Map<String, String> columnFamilyAttributes) {
+    String familyName = columnFamilyAttributes.get(COLUMN_FAMILY_NAME_ATTRIBUTE);
+    if (familyName == null) {
+      throw new ScootException("Column family element is missing its '" + COLUMN_FAMILY_NAME_ATTRIBUTE + "' attribute.");
+    }
+    HColumnDescriptor cf = new HColumnDescriptor(familyName);
+    for (Entry<String, String> attr : columnFamilyAttributes.entrySet()) {
+      if (!attr.getKey().equalsIgnoreCase(COLUMN_FAMILY_NAME_ATTRIBUTE)) { // skip name, already got it
+        setAttributeValue(cf, attr.getKey(), attr.getValue());
+      }
+    }
+    applyMissingColumnFamilyDefaults(cf);
+    validateColumnFamily(cf);
+    return cf;
+  }
+
+  /**
+   * Get the attributes of the current element, sorted by name the same way a DOM attribute map is.
+   * Namespace declarations are included, since a DOM that isn't namespace aware treats them as attributes.
+   */
+  private static Map<String, String> getAttributes(XMLStreamReader reader) {
+    Map<String, String> result = new TreeMap<String, String>();
+    for (int x = 0; x < reader.getNamespaceCount(); x++) {
+      String prefix = reader.getNamespacePrefix(x);
+      result.put(isEmpty(prefix) ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(x));
+    }
+    for (int x = 0; x < reader.getAttributeCount(); x++) {
+      result.put(getQualifiedName(reader.getAttributePrefix(x), reader.getAttributeLocalName(x)), reader.getAttributeValue(x));
+    }
+    return result;
+  }
+
+  private static String getQualifiedName(String prefix, String localName) {
+    return isEmpty(prefix) ? localName : prefix + ":" + localName;
+  }
+
+  private static boolean isEmpty(String s) {
+    return s == null || s.length() == 0;
+  }
+
+  /**
+   * Writes the events of a table element back out as text, the same way the DOM parser's transformer
+   * serializes a table node: attributes in name order, empty elements closed with "/>", and the same
+   * characters escaped.
+   */
+  private static class TableXMLWriter {
+    private final StringBuilder sb = new StringBuilder();
+    private boolean startTagOpen = false;
+
+    void startElement(XMLStreamReader reader, Map<String, String> attributes) {
+      closeStartTag();
+      sb.append('<').append(getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+      for (Entry<String, String> attr : attributes.entrySet()) {
+        sb.append(' ').append(attr.getKey()).append("=\"");
+        escape(attr.getValue(), true);
+        sb.append('"');
+      }
+      startTagOpen = true;
+    }
+
+    void endElement(XMLStreamReader reader) {
+      if (startTagOpen) {
+        sb.append("/>");
+        startTagOpen = false;
+      } else {
+        sb.append("</").append(getQualifiedName(reader.getPrefix(), reader.getLocalName())).append('>');
+      }
+    }
+
+    void characters(String text) {
+      if (text.length() == 0) return;
+      closeStartTag();
+      escape(text, false);
+    }
+
+    void cdata(String text) {
+      closeStartTag();
+      sb.append("<![CDATA[").append(text).append("]]>");
+    }
+
+    void comment(String text) {
+      closeStartTag();
+      sb.append("<!--").append(text).append("-->");
+    }
+
+    void processingInstruction(String target, String data) {
+      closeStartTag();
+      sb.append("<?").append(target);
+      if (!isEmpty(data)) sb.append(' ').append(data);
+      sb.append("?>");
+    }
+
+    private void closeStartTag() {
+      if (startTagOpen) {
+        sb.append('>');
+        startTagOpen = false;
+      }
+    }
+
+    private void escape(String text, boolean inAttribute) {
+      for (int x = 0; x < text.length(); x++) {
+        char c = text.charAt(x);
+        switch (c) {
+          case '&': sb.append("&amp;"); break;
+          case '<': sb.append("&lt;"); break;
+          case '>': sb.append("&gt;"); break;
+          case '"': sb.append(inAttribute ? "&quot;" : "\""); break;
+          case '\n': sb.append(inAttribute ? "&#10;" : "\n"); break;
+          case '\r': sb.append("&#13;"); break;
+          case '\t': sb.append(inAttribute ? "&#9;" : "\t"); break;
+          default: sb.append(c);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return sb.toString();
+    }
+  }
+
+}
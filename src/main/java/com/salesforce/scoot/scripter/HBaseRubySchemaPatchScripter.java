@@ -25,8 +25,14 @@
  */
 package com.salesforce.scoot.scripter;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -34,89 +40,184 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import com.google.common.base.Joiner;
+import com.salesforce.scoot.AlterStrategy;
 import com.salesforce.scoot.HBaseSchemaAttribute;
 import com.salesforce.scoot.HBaseSchemaDiff;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeStream;
 import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChange;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChangeType;
 import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
 import com.salesforce.scoot.HBaseSchemaDiff.PropertyChange;
+import com.salesforce.scoot.MetadataStrategy;
+import com.salesforce.scoot.ScootException;
+import com.salesforce.scoot.SplitPointCalculator;
 
 /**
  * Using a schema diff object, output a ruby script that verifies the existing schema state,
  * and then patches the cluster to install the new schema state, and then validates that
  * it worked correctly.
+ *
+ * The script is written from streams over the diff rather than its lists of changes, so that together
+ * with generateScript(Writer), a diff of any size is scripted without holding its changes in memory. A
+ * first pass gathers the summary and the metadata changes, which are small; after that, the validations
+ * and the changes each take one more pass.
+ *
+ * Alters that only change metadata never disable their tables, whatever the alter strategy. They follow
+ * the MetadataStrategy instead: they're either batched into one online step after the other changes,
+ * with only the changed attributes sent, or left for the table's next real alter. Any other alter sends
+ * its metadata changes along with the rest of it, in the same modification window.
  */
 public class HBaseRubySchemaPatchScripter {
   
   private final HBaseSchemaDiff diff;
-  private final StringBuilder script = new StringBuilder();
+  private final AlterStrategy alterStrategy;
+  private MetadataStrategy metadataStrategy = MetadataStrategy.ONLINE;
+  private Writer script;
+  /** The number of tables with each type of change, counted by the first pass */
+  private Map<ChangeType, Integer> counts;
+  /** The header's lines for each type of change, gathered by the first pass */
+  private Map<ChangeType, List<String>> summaries;
+  /** The changes of the metadata only alters, by table name in order, gathered by the first pass */
+  private Map<String, List<PropertyChange>> metadataOnlyChanges;
 
   public HBaseRubySchemaPatchScripter(HBaseSchemaDiff diff) {
+    this(diff, AlterStrategy.OFFLINE);
+  }
+
+  public HBaseRubySchemaPatchScripter(HBaseSchemaDiff diff, AlterStrategy alterStrategy) {
     this.diff = diff;
+    this.alterStrategy = alterStrategy;
   }
 
+  /**
+   * How to carry out alters that only change metadata. Defaults to ONLINE.
+   */
+  public void setMetadataStrategy(MetadataStrategy metadataStrategy) {
+    this.metadataStrategy = metadataStrategy;
+  }
+
+  /**
+   * Generate the whole script as a string. For big diffs, prefer generateScript(Writer), which doesn't
+   * need to hold the script in memory.
+   */
   public String generateScript() {
-    scriptHeaders();
-    scriptPreValidations();
-    scriptChanges();
-    scriptPostValidations();
-    scriptFooters();
-    return getScript();
+    StringWriter out = new StringWriter();
+    try {
+      generateScript(out);
+    } catch (IOException e) {
+      // can't happen with a StringWriter
+      throw new ScootException("Error generating script: " + e.getMessage(), e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Write the script to the given writer as it's generated, a line at a time. The writer isn't closed.
+   */
+  public void generateScript(Writer out) throws IOException {
+    this.script = out;
+    summarize();
+    try {
+      scriptHeaders();
+      scriptPreValidations();
+      scriptChanges();
+      scriptPostValidations();
+      scriptFooters();
+      out.flush();
+    } catch (ScriptWriteException e) {
+      throw e.getCause();
+    } finally {
+      this.script = null;
+      this.counts = null;
+      this.summaries = null;
+      this.metadataOnlyChanges = null;
+    }
+  }
+
+  /**
+   * Go through the diff once for everything the script needs ahead of the changes themselves: the counts
+   * and summary lines for the header, and the changes of the metadata only alters
+   */
+  private void summarize() {
+    summaries = new EnumMap<ChangeType, List<String>>(ChangeType.class);
+    for (ChangeType type : ChangeType.values()) {
+      summaries.put(type, new ArrayList<String>());
+    }
+    metadataOnlyChanges = new LinkedHashMap<String, List<PropertyChange>>();
+    ChangeStream stream = diff.streamChanges(EnumSet.of(ChangeType.CREATE, ChangeType.ALTER, ChangeType.DROP), true);
+    for (HBaseSchemaChange c : stream) {
+      List<String> lines = summaries.get(c.type);
+      if (c.type != ChangeType.ALTER) {
+        lines.add("#       " + c.tableName);
+        continue;
+      }
+      lines.add("#       " + c.tableName + (c.isMetadataOnly() ? " (metadata only, " + (metadataStrategy == MetadataStrategy.ONLINE ? "modified online" : "deferred") + ")" : ""));
+      // write the properties out in sorted order
+      List<String> lp = new ArrayList<String>();
+      for (PropertyChange pc : c.propertyChanges) lp.add("property change: " + pc.toString());
+      Collections.sort(lp);
+      for (String pc : lp) lines.add("#       " + pc);
+      if (c.isMetadataOnly()) metadataOnlyChanges.put(c.tableName, c.metadataChanges);
+    }
+    for (String tableName : stream.getIgnoredTableNames()) {
+      summaries.get(ChangeType.IGNORE).add("#       " + tableName);
+    }
+    counts = new EnumMap<ChangeType, Integer>(ChangeType.class);
+    for (ChangeType type : ChangeType.values()) {
+      counts.put(type, stream.getCount(type));
+    }
   }
 
   /**
-   * Get the script that has been generated by running generateScript
+   * Carries an IOException from the writer out through the script* methods, which don't declare it
    */
-  private String getScript() {
-    return this.script.toString();
+  private static class ScriptWriteException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    ScriptWriteException(IOException cause) { super(cause); }
+    @Override public IOException getCause() { return (IOException)super.getCause(); }
   }
 
   /**
    * Shorthand
    */
   private void s(String toScript){
-    script.append(toScript + "\n");
+    try {
+      script.write(toScript);
+      script.write('\n');
+    } catch (IOException e) {
+      throw new ScriptWriteException(e);
+    }
   }
   
   private void scriptHeaders() {
     
-    Map<ChangeType, List<HBaseSchemaChange>> m = diff.getTableChangesByType();
     s("###############################################################################");
     s("# HBase Schema Update Script");
     s("#");
     s("# Summary:");
     s("#");
-    int size = m.get(ChangeType.CREATE).size();
+    int size = counts.get(ChangeType.CREATE);
     s("#  * Create " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.CREATE)){
-      s("#       " + c.tableName);
-    }
+    for (String line : summaries.get(ChangeType.CREATE)) s(line);
     s("#");
-    size = m.get(ChangeType.ALTER).size();
+    size = counts.get(ChangeType.ALTER);
     s("#  * Alter " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.ALTER)){
-      s("#       " + c.tableName);
-      // write the properties out in sorted order
-      List<String> lp = new ArrayList<String>();
-      for (PropertyChange pc : c.propertyChanges) lp.add("property change: " + pc.toString());
-      Collections.sort(lp);
-      for (String pc : lp) s("#       " + pc);
-    }
+    for (String line : summaries.get(ChangeType.ALTER)) s(line);
     s("#");
-    size = m.get(ChangeType.DROP).size();
+    size = counts.get(ChangeType.DROP);
     s("#  * Drop " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.DROP)){
-      s("#       " + c.tableName);
-    }
+    for (String line : summaries.get(ChangeType.DROP)) s(line);
     s("#");
-    size = m.get(ChangeType.IGNORE).size();
+    size = counts.get(ChangeType.IGNORE);
     s("#  * Ignore " + size + " table" + (size !=1 ? "s" : "") + (size > 0 ? ":" : "."));
-    for (HBaseSchemaChange c : m.get(ChangeType.IGNORE)){
-      s("#       " + c.tableName);
-    }
+    for (String line : summaries.get(ChangeType.IGNORE)) s(line);
     s("###############################################################################");
     s("");
     s("###############################################################################");
@@ -141,14 +242,72 @@ public class HBaseRubySchemaPatchScripter {
     s("# Utility methods"); 
     s("###############################################################################");
     s("");
+    scriptKnownAttributes();
+    s("def canonical(attr, val)");
+    s("    known = KNOWN_ATTRIBUTES[attr]");
+    s("    return val.to_s if known.nil?");
+    s("    val = known[0] if val.nil?");
+    s("    s = val.to_s.strip");
+    s("    if known[1] == \"boolean\" && (s.downcase == \"true\" || s.downcase == \"false\")");
+    s("        return s.downcase");
+    s("    elsif known[1] == \"number\" && attr == \"" + HColumnDescriptor.TTL + "\" && s.upcase == \"" + HColumnDescriptor.FOREVER + "\"");
+    s("        return \"" + HConstants.FOREVER + "\"");
+    s("    elsif known[1] == \"number\" && s =~ /\\A[+-]?\\d+\\z/");
+    s("        return s.to_i.to_s");
+    s("    else");
+    s("        constant = known[2].find { |c| c.casecmp(s) == 0 }");
+    s("        return constant unless constant.nil?");
+    s("    end");
+    s("    val.to_s");
+    s("end");
+    s("");
     s("def compare(errs, obj, action, attr, val)");
-    s("    if (obj.getValue(attr).to_s != val)");
-    s("        errs << \"Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \\\"#{val}\\\" for #{attr}, but it was \\\"#{obj.getValue(attr)}\\\" instead.\\n\"");
+    s("    actual = canonical(attr, obj.getValue(attr))");
+    s("    if (actual != val)");
+    s("        errs << \"Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \\\"#{val}\\\" for #{attr}, but it was \\\"#{actual}\\\" instead.\\n\"");
     s("    end");
     s("end");
     s("");
+    if (alterStrategy != AlterStrategy.OFFLINE || (!metadataOnlyChanges.isEmpty() && metadataStrategy == MetadataStrategy.ONLINE)) {
+      s("def waitForAlter(admin, tablename)");
+      s("    status = admin.getAlterStatus(tablename.bytes.to_a)");
+      s("    while (status.getFirst() > 0)");
+      s("        puts \"#{status.getSecond() - status.getFirst()} of #{status.getSecond()} regions of '#{tablename}' updated ...\"");
+      s("        sleep 1");
+      s("        status = admin.getAlterStatus(tablename.bytes.to_a)");
+      s("    end");
+      s("end");
+      s("");
+    }
   }
   
+  /**
+   * The default and type of every attribute Scoot knows, so the validations can read the cluster's values in
+   * the same canonical form the schema's values are written in (see SchemaNormalizer). Without it, a missing
+   * attribute or a "TRUE" on the cluster would be reported as different from the schema's default or "true".
+   */
+  private void scriptKnownAttributes() {
+    s("KNOWN_ATTRIBUTES = {");
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      String kind = "string";
+      List<String> constants = new ArrayList<String>();
+      if (a.type.equals(Boolean.class)) {
+        kind = "boolean";
+      } else if (a.type.equals(Integer.class) || a.type.equals(Long.class)) {
+        kind = "number";
+      } else if (a.type.isEnum()) {
+        kind = "enum";
+        for (Object constant : a.type.getEnumConstants()) {
+          constants.add("\"" + ((Enum<?>)constant).name() + "\"");
+        }
+      }
+      s("    \"" + a.name + "\" => [" + (a.defaultValue == null ? "nil" : "\"" + a.normalize(a.defaultValue) + "\"") 
+          + ", \"" + kind + "\", [" + Joiner.on(", ").join(constants) + "]],");
+    }
+    s("}");
+    s("");
+  }
+
   private void scriptPreValidations() {
 
     s("###############################################################################");
@@ -160,12 +319,14 @@ public class HBaseRubySchemaPatchScripter {
     s("# will make the script fail."); 
     s("###############################################################################");
 
-    for (HBaseSchemaChange c : diff.getTableChanges()){
+    for (HBaseSchemaChange c : diff.streamChanges()){
       switch (c.type) {
         case CREATE:
           scriptVerifyTableAbsent(c.tableName, "create", true);
           break;
         case ALTER:
+          // deferred changes leave the table alone, so there's nothing to check
+          if (c.isMetadataOnly() && metadataStrategy == MetadataStrategy.DEFER) break;
           scriptVerifyTablePresent(c.tableName, "alter", true);
           scriptVerifyTableMatches(c.oldTable, "alter", true); // alters will error out if something doesn't match
           break;
@@ -215,9 +376,16 @@ public class HBaseRubySchemaPatchScripter {
   }
 
   private void scriptVerifyTableMatches(HTableDescriptor oldTable, String operationName, boolean shouldThrowError) {
+    scriptVerifyTableMatches(oldTable, operationName, shouldThrowError, null);
+  }
+
+  /**
+   * As above, but only checks the table when the given ruby condition also holds
+   */
+  private void scriptVerifyTableMatches(HTableDescriptor oldTable, String operationName, boolean shouldThrowError, String condition) {
     String errorCollectionName = shouldThrowError ? "preErrors" : "preWarnings";
     s("# Table '" + oldTable.getNameAsString() + "' will " + (shouldThrowError ? "error" : "warn") + " if it doesn't match the expected definition.");
-    s("if admin.tableExists(tablename)");
+    s("if admin.tableExists(tablename)" + (condition != null ? " && " + condition : ""));
     s("    table = admin.getTableDescriptor(tablename.bytes.to_a)");
     for (Entry<String,String> p : getSortedStringEntries(oldTable.getValues())){
       s("    compare(" + errorCollectionName + ", table, \"" + operationName + "\", \"" + p.getKey() + "\", \"" + escapeDoubleQuotes(p.getValue()) + "\")");
@@ -263,8 +431,12 @@ public class HBaseRubySchemaPatchScripter {
     s("# This step actually modifies the schema on the cluster.");
     s("###############################################################################");
     s("");
+    if (counts.get(ChangeType.ALTER) > 0) {
+      s("# Alter strategy: " + alterStrategy);
+      s("");
+    }
     
-    for (HBaseSchemaChange c : diff.getTableChanges()){
+    for (HBaseSchemaChange c : diff.streamChanges()){
       switch (c.type) {
         case CREATE:
           scriptTableAdd(c.newTable);
@@ -273,17 +445,54 @@ public class HBaseRubySchemaPatchScripter {
           scriptTableDrop(c.oldTable);
           break;
       case ALTER:
-          scriptTableAlter(c.newTable);
+          // metadata only alters are done together afterwards
+          if (!c.isMetadataOnly()) scriptTableAlter(c);
           break;
       case IGNORE:
           // Nothing to do!
           break;
       }
     }
+    if (!metadataOnlyChanges.isEmpty()) {
+      scriptMetadataChanges();
+    }
     s("puts \"Table creations & modifications successful.\"");
     s("");
  }
   
+  /**
+   * Either send the changed metadata attributes of every metadata only alter, without disabling any of the
+   * tables, and then wait for them all; or just note that they're deferred.
+   */
+  private void scriptMetadataChanges() {
+    if (metadataStrategy == MetadataStrategy.DEFER) {
+      s("# Metadata only changes, deferred until each table's next alter:");
+      for (String tableName : metadataOnlyChanges.keySet()) {
+        s("#   " + tableName);
+      }
+      s("");
+      return;
+    }
+    s("# Metadata only changes: no region server reads these attributes, so the tables");
+    s("# are modified online, without being disabled.");
+    s("metadataUpdated = Array.new");
+    s("metadataDeferred = Array.new");
+    for (Entry<String, List<PropertyChange>> e : metadataOnlyChanges.entrySet()) {
+      s("tablename = \"" + e.getKey() + "\"");
+      for (String line : getMetadataLines(e.getValue())) s(line);
+      s("begin");
+      s("    admin.modifyTable(tablename.bytes.to_a, table)");
+      s("    metadataUpdated << tablename");
+      s("rescue Java::OrgApacheHadoopHbase::TableNotDisabledException");
+      s("    metadataDeferred << tablename");
+      s("    puts \"Online modification of table '#{tablename}' was refused; its metadata change is deferred until its next alter.\"");
+      s("end");
+    }
+    s("metadataUpdated.each { |tablename| waitForAlter(admin, tablename) }");
+    s("puts \"Modified the metadata of #{metadataUpdated.length} table(s) online.\"");
+    s("");
+  }
+
   private void scriptTableAdd(HTableDescriptor newTable) {
     s("# Create Table: " + newTable.getNameAsString());
     s("tablename = \"" + newTable.getNameAsString() + "\"");
@@ -293,17 +502,19 @@ public class HBaseRubySchemaPatchScripter {
       s("table.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
     }
     for (HColumnDescriptor cf : newTable.getColumnFamilies()){
-      s("cf = HColumnDescriptor.new(\"" + cf.getNameAsString() + "\")");
-      for (Entry<String,String> entry : getSortedStringEntries(cf.getValues())){
-        s("cf.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
-      }
+      for (String line : getColumnFamilyLines(cf)) s(line);
       s("table.addFamily(cf)");
     }
     s("puts \"Creating table '#{tablename}' ... \"");
     
-    // If we need to pre-split, that's a special method call
-    if (newTable.getValue(HBaseSchemaAttribute.NUMREGIONS.name()) != null){
-    	s("admin.createTable(table, Bytes.toBytes(\"\\x00\"), Bytes.toBytes(\"\\xFF\"), " + newTable.getValue(HBaseSchemaAttribute.NUMREGIONS.name()) + ")");
+    // If we need to pre-split, spell out the split keys and pass them along
+    byte[][] splits = SplitPointCalculator.getSplitPoints(diff.getToSchema(), newTable);
+    if (splits != null && splits.length > 0){
+      s("splits = Java::byte[][" + splits.length + "].new");
+      for (int x = 0; x < splits.length; x++){
+        s("splits[" + x + "] = Bytes.toBytesBinary('" + SplitPointCalculator.toBinaryString(splits[x]) + "')");
+      }
+      s("admin.createTable(table, splits)");
     } else {
     	s("admin.createTable(table)");
     }
@@ -327,30 +538,136 @@ public class HBaseRubySchemaPatchScripter {
     s("");
   }
 
-  private void scriptTableAlter(HTableDescriptor newTable) {
+  /**
+   * If any table level attributes changed, the whole descriptor has to be sent with modifyTable. Otherwise,
+   * only the column families that changed are added, deleted or modified, so unchanged families are left alone.
+   */
+  private void scriptTableAlter(HBaseSchemaChange c) {
+    HTableDescriptor newTable = c.newTable;
     s("# Modify table: " + newTable.getNameAsString());
     s("tablename = \"" + newTable.getNameAsString() + "\"");
-    s("table = admin.getTableDescriptor(tablename.bytes.to_a)");
-    for (Entry<String,String> entry : getSortedStringEntries(newTable.getValues())){
-      s("table.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
-    }
-    for (HColumnDescriptor cf : newTable.getColumnFamilies()){
-      s("cf = HColumnDescriptor.new(\"" + cf.getNameAsString() + "\")");
-      for (Entry<String,String> entry : getSortedStringEntries(cf.getValues())){
-        s("cf.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
+    List<List<String>> modifications = new ArrayList<List<String>>();
+    if (c.tablePropertiesChanged) {
+      s("table = admin.getTableDescriptor(tablename.bytes.to_a)");
+      for (Entry<String,String> entry : getSortedStringEntries(newTable.getValues())){
+        s("table.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
+      }
+      for (HColumnDescriptor cf : newTable.getColumnFamilies()){
+        for (String line : getColumnFamilyLines(cf)) s(line);
+        s("table.addFamily(cf)");
+      }
+      for (ColumnFamilyChange fc : c.columnFamilyChanges) {
+        if (fc.type == ColumnFamilyChangeType.DELETE) {
+          s("table.removeFamily(\"" + fc.familyName + "\".bytes.to_a)");
+        }
+      }
+      modifications.add(Collections.singletonList("admin.modifyTable(tablename.bytes.to_a, table)"));
+    } else {
+      for (ColumnFamilyChange fc : c.columnFamilyChanges) {
+        List<String> m = new ArrayList<String>();
+        switch (fc.type) {
+          case ADD:
+            m.add("puts \"Adding column family '" + fc.familyName + "' to table '#{tablename}' ...\"");
+            m.addAll(getColumnFamilyLines(fc.newFamily));
+            m.add("admin.addColumn(tablename, cf)");
+            break;
+          case MODIFY:
+            m.add("puts \"Modifying column family '" + fc.familyName + "' of table '#{tablename}' ...\"");
+            m.addAll(getColumnFamilyLines(fc.newFamily));
+            m.add("admin.modifyColumn(tablename, cf)");
+            break;
+          case DELETE:
+            m.add("puts \"Deleting column family '" + fc.familyName + "' from table '#{tablename}' ...\"");
+            m.add("admin.deleteColumn(tablename, \"" + fc.familyName + "\")");
+            break;
+        }
+        modifications.add(m);
+      }
+      // the families are done first, so the descriptor read back has them already
+      if (c.hasMetadataChangesWithFamilies()) {
+        List<String> m = new ArrayList<String>();
+        m.add("puts \"Modifying the metadata of table '#{tablename}' ...\"");
+        m.addAll(getMetadataLines(c.metadataChanges));
+        m.add("admin.modifyTable(tablename.bytes.to_a, table)");
+        modifications.add(m);
       }
-      s("table.addFamily(cf)");
     }
-    s("puts \"Disabling table '#{tablename}' prior to modification ...\"");
-    s("admin.disableTable(tablename)");
-    s("puts \"Modifying table '#{tablename}' ...\"");
-    s("admin.modifyTable(tablename.bytes.to_a, table)");
-    s("puts \"Enabling table '#{tablename}' after modification ...\"");
-    s("admin.enableTable(tablename)");
+    switch (alterStrategy) {
+      case OFFLINE:
+        scriptOfflineModify(modifications, "");
+        break;
+      case ONLINE:
+        scriptOnlineModify(modifications, "");
+        break;
+      case AUTO:
+        // if the master doesn't allow online alters, it refuses to modify an enabled table
+        s("begin");
+        scriptOnlineModify(modifications, "  ");
+        s("rescue Java::OrgApacheHadoopHbase::TableNotDisabledException");
+        s("  puts \"Online modification of table '#{tablename}' was refused; falling back to disabling it.\"");
+        scriptOfflineModify(modifications, "  ");
+        s("end");
+        break;
+    }
     s("puts \"Modified table '#{tablename}\"");
     s("");
   }
 
+  /**
+   * The lines that read the table's current descriptor into the "table" variable, and make the given
+   * metadata changes to it
+   */
+  private List<String> getMetadataLines(List<PropertyChange> metadataChanges) {
+    List<String> lines = new ArrayList<String>();
+    lines.add("table = admin.getTableDescriptor(tablename.bytes.to_a)");
+    for (PropertyChange pc : metadataChanges) {
+      if (pc.newValue != null) {
+        lines.add("table.setValue(\"" + pc.key + "\", \"" + escapeDoubleQuotes(pc.newValue) + "\")");
+      } else {
+        lines.add("table.remove(\"" + pc.key + "\")");
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * The lines that build the given column family into the "cf" variable
+   */
+  private List<String> getColumnFamilyLines(HColumnDescriptor cf) {
+    List<String> lines = new ArrayList<String>();
+    lines.add("cf = HColumnDescriptor.new(\"" + cf.getNameAsString() + "\")");
+    for (Entry<String,String> entry : getSortedStringEntries(cf.getValues())){
+      lines.add("cf.setValue(\"" + entry.getKey() + "\", \"" + escapeDoubleQuotes(entry.getValue()) + "\")");
+    }
+    return lines;
+  }
+
+  /**
+   * Take the table offline for the modifications; this works on any cluster
+   */
+  private void scriptOfflineModify(List<List<String>> modifications, String indent) {
+    s(indent + "puts \"Disabling table '#{tablename}' prior to modification ...\"");
+    s(indent + "admin.disableTable(tablename)");
+    s(indent + "puts \"Modifying table '#{tablename}' ...\"");
+    for (List<String> m : modifications) {
+      for (String line : m) s(indent + line);
+    }
+    s(indent + "puts \"Enabling table '#{tablename}' after modification ...\"");
+    s(indent + "admin.enableTable(tablename)");
+  }
+
+  /**
+   * Modify the table while it stays enabled, waiting after each modification until all of its regions have 
+   * picked up the change
+   */
+  private void scriptOnlineModify(List<List<String>> modifications, String indent) {
+    s(indent + "puts \"Modifying table '#{tablename}' online ...\"");
+    for (List<String> m : modifications) {
+      for (String line : m) s(indent + line);
+      s(indent + "waitForAlter(admin, tablename)");
+    }
+  }
+
   private void scriptPostValidations() {
     
     s("###############################################################################");
@@ -360,7 +677,7 @@ public class HBaseRubySchemaPatchScripter {
     s("# on the cluster matches what you want to be there.");
     s("###############################################################################");
 
-    for (HBaseSchemaChange c : diff.getTableChanges()){
+    for (HBaseSchemaChange c : diff.streamChanges()){
       switch (c.type) {
       case CREATE:
         scriptVerifyTablePresent(c.tableName, "create", true);
@@ -368,7 +685,12 @@ public class HBaseRubySchemaPatchScripter {
         break;
       case ALTER:
         scriptVerifyTablePresent(c.tableName, "alter", true);
-        scriptVerifyTableMatches(c.newTable, "alter", true); 
+        if (!c.isMetadataOnly()) {
+          scriptVerifyTableMatches(c.newTable, "alter", true);
+        } else if (metadataStrategy == MetadataStrategy.ONLINE) {
+          // the online metadata step may still have been refused for this table; deferred ones are left alone
+          scriptVerifyTableMatches(c.newTable, "alter", true, "!metadataDeferred.include?(tablename)");
+        }
         break;
       case DROP:
         scriptVerifyTableAbsent(c.tableName, "drop", true);
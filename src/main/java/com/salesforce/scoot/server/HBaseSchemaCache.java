@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.parser.HBaseCachedClusterParser;
+import com.salesforce.scoot.parser.HBaseClusterParser;
+import com.salesforce.scoot.parser.HBaseClusterParser.SplitPointSource;
+import com.salesforce.scoot.parser.HBaseSchemaParser;
+
+/**
+ * Keeps parsed schemas, and a connection to each cluster, in memory between requests to the scoot daemon.
+ *
+ * A schema parsed from a file is reused until the file's modification time or length changes. A schema
+ * parsed from a live cluster is reused while the cluster's change signature (see HBaseCachedClusterParser)
+ * is the same as when it was parsed, and it's younger than the cluster TTL; checking the signature over the
+ * open connection takes milliseconds. Schemas with split points aren't cached, because regions move without
+ * the signature changing. The least recently used schemas are dropped once there are more than the limit.
+ *
+ * Cached schemas are shared by every request that uses them, so they must be treated as read only.
+ */
+public class HBaseSchemaCache {
+
+  private static final Log LOG = LogFactory.getLog(HBaseSchemaCache.class);
+
+  private static class Entry {
+    final String version;
+    final long createdMillis;
+    final HBaseSchema schema;
+
+    Entry(String version, long createdMillis, HBaseSchema schema) {
+      this.version = version;
+      this.createdMillis = createdMillis;
+      this.schema = schema;
+    }
+  }
+
+  private final Map<String, HConnection> connections = new HashMap<String, HConnection>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long clusterTtlMillis = 10 * 60 * 1000L;
+  private int maxEntries = 16;
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+    @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > maxEntries;
+    }
+  };
+
+  /**
+   * How long a cluster's schema is reused, even if its change signature hasn't changed. 0 means there's no
+   * limit. Defaults to 10 minutes.
+   */
+  public void setClusterTtlMillis(long clusterTtlMillis) {
+    Preconditions.checkArgument(clusterTtlMillis >= 0, "Cluster TTL can't be negative.");
+    this.clusterTtlMillis = clusterTtlMillis;
+  }
+
+  /**
+   * How many parsed schemas to keep. Defaults to 16.
+   */
+  public synchronized void setMaxEntries(int maxEntries) {
+    Preconditions.checkArgument(maxEntries > 0, "Max entries must be at least 1.");
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * The connection to the cluster with the given zookeeper quorum, which stays open until close()
+   */
+  public synchronized HConnection getConnection(String zookeeperQuorum) throws IOException {
+    HConnection connection = connections.get(zookeeperQuorum);
+    if (connection == null || connection.isClosed()) {
+      LOG.info("Connecting to " + zookeeperQuorum);
+      connection = HConnectionManager.createConnection(HBaseClusterParser.createConfig(zookeeperQuorum));
+      connections.put(zookeeperQuorum, connection);
+    }
+    return connection;
+  }
+
+  /**
+   * Parse the named schema with the parser (which has already been given the name), or return the schema
+   * from the last time, if it's still current.
+   */
+  public HBaseSchema parse(HBaseSchemaParser parser, String schemaName, SplitPointSource splitPoints) throws IOException {
+    String version;
+    long ttlMillis;
+    if (parser instanceof HBaseClusterParser) {
+      HConnection connection = getConnection(schemaName);
+      ((HBaseClusterParser)parser).setConnection(connection);
+      if (splitPoints != SplitPointSource.NONE) {
+        misses.incrementAndGet();
+        return parser.parse();
+      }
+      HBaseCachedClusterParser signer = new HBaseCachedClusterParser();
+      signer.setResourceToParse(schemaName);
+      signer.setConnection(connection);
+      version = signer.getChangeSignature();
+      ttlMillis = clusterTtlMillis;
+    } else {
+      File file = new File(schemaName);
+      if (!file.isFile()) {
+        misses.incrementAndGet();
+        return parser.parse();
+      }
+      version = file.lastModified() + "/" + file.length();
+      ttlMillis = 0;
+    }
+
+    String key = parser.getClass().getName() + " " + schemaName;
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.version.equals(version) && (ttlMillis == 0 || now - entry.createdMillis < ttlMillis)) {
+        hits.incrementAndGet();
+        return entry.schema;
+      }
+    }
+    // the version was taken before parsing, so anything that changes during the parse forces another one next time
+    misses.incrementAndGet();
+    HBaseSchema schema = parser.parse();
+    synchronized (this) {
+      entries.put(key, new Entry(version, now, schema));
+    }
+    return schema;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Drop every cached schema, but keep the connections
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Drop every cached schema and close the connections
+   */
+  public synchronized void close() {
+    entries.clear();
+    for (Map.Entry<String, HConnection> c : connections.entrySet()) {
+      try {
+        c.getValue().close();
+      } catch (IOException e) {
+        LOG.warn("Unable to close the connection to " + c.getKey() + ": " + e.getMessage());
+      }
+    }
+    connections.clear();
+  }
+
+  @Override public synchronized String toString(){
+    return "Cached schemas: " + size() + ", hits: " + hits + ", misses: " + misses + ", connections: " + connections.keySet();
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.io.ByteStreams;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Sends scoot command lines to a running scoot daemon (see ScootServer), which it finds through the
+ * daemon's port file. If there's no port file, or nothing is listening on the port in it, the caller is
+ * told to do the work itself.
+ *
+ * Since the daemon has its own working directory, arguments that name existing files, and the output file,
+ * are made absolute before they're sent.
+ */
+public class ScootClient {
+
+  private static final Log LOG = LogFactory.getLog(ScootClient.class);
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+  /**
+   * Where the daemon advertises itself unless told otherwise: scoot-daemon-{user}.port in the temp directory
+   */
+  public static File getDefaultPortFile() {
+    return new File(System.getProperty("java.io.tmpdir"), "scoot-daemon-" + System.getProperty("user.name") + ".port");
+  }
+
+  /**
+   * Run the command line on the daemon, printing its output to out. Returns false if no daemon is running.
+   */
+  public static boolean run(String[] args, PrintStream out) {
+    return run(getDefaultPortFile(), args, out);
+  }
+
+  public static boolean run(File portFile, String[] args, PrintStream out) {
+    StringBuilder body = new StringBuilder();
+    for (String arg : resolvePaths(args)) {
+      body.append(ScootServer.encode(arg)).append('\n');
+    }
+    HttpURLConnection connection = connect(portFile, "/run", "POST");
+    if (connection == null) return false;
+    try {
+      byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+      connection.setDoOutput(true);
+      // streaming the body stops HttpURLConnection from quietly sending the command again when a kept alive
+      // connection turns out to be closed, which would run it twice
+      connection.setFixedLengthStreamingMode(bytes.length);
+      OutputStream requestBody = connection.getOutputStream();
+      try {
+        requestBody.write(bytes);
+      } finally {
+        requestBody.close();
+      }
+      int status = connection.getResponseCode();
+      if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_INTERNAL_ERROR) {
+        InputStream in = status == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+          try {
+            ByteStreams.copy(in, out);
+          } finally {
+            in.close();
+          }
+        }
+        out.flush();
+      }
+      if (status == HttpURLConnection.HTTP_INTERNAL_ERROR) {
+        String error = connection.getHeaderField(ScootServer.ERROR_HEADER);
+        throw new ScootException(error == null ? "The scoot daemon failed to run the command." : ScootServer.decode(error));
+      } else if (status != HttpURLConnection.HTTP_OK) {
+        throw new ScootException("The scoot daemon refused the command: " + status + " " + connection.getResponseMessage());
+      }
+      return true;
+    } catch (ConnectException e) {
+      LOG.info("The scoot daemon in " + portFile + " isn't answering; running here instead.");
+      return false;
+    } catch (IOException e) {
+      throw new ScootException("Lost contact with the scoot daemon: " + e.getMessage(), e);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * The daemon's cache statistics, or null if no daemon is running
+   */
+  public static String status(File portFile) {
+    HttpURLConnection connection = connect(portFile, "/status", "GET");
+    if (connection == null) return null;
+    try {
+      InputStream in = connection.getInputStream();
+      try {
+        return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8).trim();
+      } finally {
+        in.close();
+      }
+    } catch (ConnectException e) {
+      return null;
+    } catch (IOException e) {
+      throw new ScootException("Unable to get the scoot daemon's status: " + e.getMessage(), e);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Ask the daemon to stop. Returns false if no daemon is running.
+   */
+  public static boolean stop(File portFile) {
+    HttpURLConnection connection = connect(portFile, "/shutdown", "POST");
+    if (connection == null) return false;
+    try {
+      return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+    } catch (ConnectException e) {
+      return false;
+    } catch (IOException e) {
+      throw new ScootException("Unable to stop the scoot daemon: " + e.getMessage(), e);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * A request to the daemon named in the port file, with its token, or null if there's no port file
+   */
+  private static HttpURLConnection connect(File portFile, String path, String method) {
+    if (!portFile.isFile()) return null;
+    try {
+      List<String> lines = Files.readAllLines(portFile.toPath(), StandardCharsets.UTF_8);
+      if (lines.size() < 2) return null;
+      URL url = new URL("http", "127.0.0.1", Integer.parseInt(lines.get(0).trim()), path);
+      HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+      connection.setRequestMethod(method);
+      connection.setRequestProperty(ScootServer.TOKEN_HEADER, lines.get(1).trim());
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      // applying a big change can take as long as it takes
+      connection.setReadTimeout(0);
+      return connection;
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring unreadable port file " + portFile);
+      return null;
+    } catch (IOException e) {
+      LOG.warn("Ignoring unreadable port file " + portFile + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Make arguments that name existing files, and the value of the output option, absolute
+   */
+  static String[] resolvePaths(String[] args) {
+    String[] result = new String[args.length];
+    for (int x = 0; x < args.length; x++) {
+      String arg = args[x];
+      boolean isOutput = x > 0 && (args[x - 1].equals("-o") || args[x - 1].equals("-output") || args[x - 1].equals("--output"));
+      if (!arg.startsWith("-") && (isOutput || new File(arg).exists())) {
+        arg = new File(arg).getAbsolutePath();
+      }
+      result[x] = arg;
+    }
+    return result;
+  }
+}
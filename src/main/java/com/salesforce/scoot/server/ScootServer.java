@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import com.salesforce.scoot.Scoot;
+import com.salesforce.scoot.ScootException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long running scoot, which keeps its JVM, its cluster connections and the schemas it has parsed warm
+ * (see HBaseSchemaCache), and runs scoot commands sent to it over HTTP. Once the daemon is up, the scoot
+ * command line hands its work to it (see ScootClient), so a small diff costs a round trip instead of a JVM
+ * start, HBase class loading and a zookeeper connection.
+ *
+ * The daemon only listens on the loopback interface. When it starts, it writes its port and a random token
+ * to a file only its user can read, and every request has to present that token.
+ *
+ * Requests:
+ *   POST /run       the command line arguments, one per line (URL encoded); the response is what scoot
+ *                   printed, and on failure a 500 with the error in the X-Scoot-Error header
+ *   GET  /status    cache statistics
+ *   POST /shutdown  stop the daemon
+ */
+public class ScootServer {
+
+  private static final Log LOG = LogFactory.getLog(ScootServer.class);
+
+  static final String TOKEN_HEADER = "X-Scoot-Token";
+  static final String ERROR_HEADER = "X-Scoot-Error";
+
+  private final HttpServer server;
+  private final File portFile;
+  private final String token;
+  private final HBaseSchemaCache cache = new HBaseSchemaCache();
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private final AtomicBoolean stopping = new AtomicBoolean();
+  private int workers = 4;
+  private ExecutorService executor;
+
+  /**
+   * A daemon on the given port (0 picks a free one), which advertises itself in the port file
+   */
+  public ScootServer(int port, File portFile) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.portFile = portFile;
+    byte[] random = new byte[16];
+    new SecureRandom().nextBytes(random);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : random) {
+      sb.append(String.format("%02x", b));
+    }
+    this.token = sb.toString();
+  }
+
+  /**
+   * How many requests to run at the same time. Defaults to 4.
+   */
+  public void setWorkers(int workers) {
+    Preconditions.checkArgument(workers > 0, "Workers must be at least 1.");
+    this.workers = workers;
+  }
+
+  public HBaseSchemaCache getCache() {
+    return cache;
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Start serving requests, and write the port file so clients can find the daemon
+   */
+  public void start() throws IOException {
+    executor = Executors.newFixedThreadPool(workers);
+    server.setExecutor(executor);
+    server.createContext("/run", new RunHandler());
+    server.createContext("/status", new StatusHandler());
+    server.createContext("/shutdown", new ShutdownHandler());
+    server.start();
+    writePortFile();
+    LOG.info("Scoot daemon listening on port " + getPort() + "; port file is " + portFile);
+  }
+
+  /**
+   * Stop serving, close the cluster connections and remove the port file
+   */
+  public void stop() {
+    if (!stopping.compareAndSet(false, true)) return;
+    server.stop(0);
+    if (executor != null) executor.shutdown();
+    cache.close();
+    if (portFile.isFile() && token.equals(readToken())) {
+      portFile.delete();
+    }
+    stopped.countDown();
+    LOG.info("Scoot daemon stopped.");
+  }
+
+  /**
+   * Block until the daemon has been stopped
+   */
+  public void awaitStop() throws InterruptedException {
+    stopped.await();
+  }
+
+  private void writePortFile() throws IOException {
+    File tmp = new File(portFile.getAbsoluteFile().getParentFile(), portFile.getName() + ".tmp");
+    tmp.delete();
+    if (!tmp.createNewFile()) {
+      throw new ScootException("Unable to create port file " + tmp);
+    }
+    // only the user running the daemon gets to read the token
+    tmp.setReadable(false, false);
+    tmp.setReadable(true, true);
+    tmp.setWritable(false, false);
+    tmp.setWritable(true, true);
+    Files.write(tmp.toPath(), (getPort() + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp.toPath(), portFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private String readToken() {
+    try {
+      List<String> lines = Files.readAllLines(portFile.toPath(), StandardCharsets.UTF_8);
+      return lines.size() > 1 ? lines.get(1) : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Check the request's token, and answer 403 if it's wrong
+   */
+  private boolean authorize(HttpExchange exchange) throws IOException {
+    String presented = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+    if (presented != null && MessageDigest.isEqual(presented.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+      return true;
+    }
+    respond(exchange, 403, "Wrong or missing token.\n".getBytes(StandardCharsets.UTF_8));
+    return false;
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    OutputStream out = exchange.getResponseBody();
+    try {
+      // with no body, the stream is already closed, and even an empty write fails (and drops the connection)
+      if (body.length > 0) out.write(body);
+    } finally {
+      out.close();
+    }
+  }
+
+  static String encode(String s) {
+    try {
+      return URLEncoder.encode(s, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static String decode(String s) {
+    try {
+      return URLDecoder.decode(s, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Runs a scoot command line, against the shared cache, and sends back what it printed
+   */
+  private class RunHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!authorize(exchange)) return;
+        if (!"POST".equals(exchange.getRequestMethod())) {
+          respond(exchange, 405, new byte[0]);
+          return;
+        }
+        InputStream in = exchange.getRequestBody();
+        List<String> args = new ArrayList<String>();
+        try {
+          for (String line : new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) args.add(decode(line));
+          }
+        } finally {
+          in.close();
+        }
+
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true, "UTF-8");
+        int status = 200;
+        try {
+          Scoot scoot = new Scoot(args.toArray(new String[args.size()]));
+          scoot.setOutput(out);
+          scoot.setSchemaCache(cache);
+          scoot.run();
+        } catch (RuntimeException e) {
+          LOG.warn("Request " + args + " failed", e);
+          status = 500;
+          exchange.getResponseHeaders().set(ERROR_HEADER, encode(String.valueOf(e.getMessage())));
+        }
+        out.flush();
+        LOG.info("Ran " + args + " in " + (System.currentTimeMillis() - start) + "ms. " + cache);
+        respond(exchange, status, output.toByteArray());
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  private class StatusHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!authorize(exchange)) return;
+        respond(exchange, 200, (cache + "\n").getBytes(StandardCharsets.UTF_8));
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  private class ShutdownHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!authorize(exchange)) return;
+        respond(exchange, 200, "Stopping.\n".getBytes(StandardCharsets.UTF_8));
+      } finally {
+        exchange.close();
+      }
+      // stopping waits for exchanges to finish, so it can't happen on this one's thread
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          stop();
+        }
+      }, "scoot-daemon-shutdown").start();
+    }
+  }
+
+  private static final Options options = new Options();
+  static {
+    options.addOption("p", "port", true, "The port to listen on (on the loopback interface only). Defaults to any free port.");
+    options.addOption("pf", "port-file", true, "Where to advertise the port to clients. Defaults to scoot-daemon-{user}.port in the temp directory.");
+    options.addOption("w", "workers", true, "How many requests to run at the same time. Defaults to 4.");
+    options.addOption("ct", "cluster-ttl", true, "How many seconds a cluster's schema is reused for, even if the cluster says it hasn't changed. 0 means no limit. Defaults to 600.");
+    options.addOption("ce", "cache-entries", true, "How many parsed schemas to keep in memory. Defaults to 16.");
+    options.addOption("s", "stop", false, "Stop the running daemon.");
+    options.addOption("h", "help", false, "Get help on using this utility.");
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLine command;
+    try {
+      command = new PosixParser().parse(options, args);
+    } catch (ParseException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+    if (command.hasOption("h")) {
+      new HelpFormatter().printHelp("scoot-daemon", options);
+      return;
+    }
+    File portFile = command.hasOption("pf") ? new File(command.getOptionValue("pf")) : ScootClient.getDefaultPortFile();
+    if (command.hasOption("s")) {
+      System.out.println(ScootClient.stop(portFile) ? "Stopped." : "No daemon is running.");
+      return;
+    }
+
+    final ScootServer server;
+    try {
+      server = new ScootServer(Integer.parseInt(command.getOptionValue("p", "0")), portFile);
+      server.setWorkers(Integer.parseInt(command.getOptionValue("w", "4")));
+      server.getCache().setClusterTtlMillis(Long.parseLong(command.getOptionValue("ct", "600")) * 1000);
+      server.getCache().setMaxEntries(Integer.parseInt(command.getOptionValue("ce", "16")));
+    } catch (NumberFormatException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        server.stop();
+      }
+    }));
+    server.start();
+    server.awaitStop();
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.tuner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchema;
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.tuner.WorkloadMetrics.FamilyStats;
+
+/**
+ * Works out a recommended schema from the current one and a snapshot of how it's used. The result is an
+ * ordinary HBaseSchema, so it can be diffed against the current schema and scripted or applied like any
+ * other change. Families the snapshot has nothing on, or too few requests to judge, are left alone.
+ *
+ * Each family's requests are classified by what dominates them:
+ * <ul>
+ * <li>Gets: ROW bloom filters, small blocks, data block encoding, and IN_MEMORY if the family is small
+ *     and isn't already served from cache.</li>
+ * <li>Scans: bigger blocks, and no block cache if it isn't getting hits anyway, so scans stop evicting
+ *     everything else.</li>
+ * <li>Writes: a bigger memstore flush size for the table when its regions pile up store files.</li>
+ * </ul>
+ */
+public class HBaseWorkloadTuner {
+
+  static final int POINT_LOOKUP_BLOCKSIZE = 16 * 1024;
+  static final int SCAN_BLOCKSIZE = 128 * 1024;
+  static final long MAX_MEMSTORE_FLUSHSIZE = 512L * 1024 * 1024;
+
+  private long minRequests = 1000;
+  private double dominantShare = 0.8;
+  private long maxInMemorySizeMB = 1024;
+  private double storeFilesPerRegionThreshold = 5;
+
+  /**
+   * Simple struct describing one recommended change, and why
+   */
+  public static class Recommendation {
+    public final String tableName;
+    public final String familyName;
+    public final String attribute;
+    public final String oldValue;
+    public final String newValue;
+    public final String reason;
+    Recommendation(String tableName, String familyName, String attribute, String oldValue, String newValue, String reason) {
+      this.tableName = tableName; this.familyName = familyName; this.attribute = attribute;
+      this.oldValue = oldValue; this.newValue = newValue; this.reason = reason;
+    }
+    @Override public String toString(){
+      return tableName + (familyName != null ? ":" + familyName : "") + " " + attribute + ": " + oldValue + " -> " + newValue + " (" + reason + ")";
+    }
+  }
+
+  private final List<Recommendation> recommendations = new ArrayList<Recommendation>();
+
+  /**
+   * How many requests a family needs before its workload is judged. Defaults to 1000.
+   */
+  public void setMinRequests(long minRequests) {
+    Preconditions.checkArgument(minRequests >= 0, "Min requests can't be negative.");
+    this.minRequests = minRequests;
+  }
+
+  /**
+   * What share of a family's requests one kind needs to be considered dominant. Defaults to 0.8.
+   */
+  public void setDominantShare(double dominantShare) {
+    Preconditions.checkArgument(dominantShare > 0.5 && dominantShare <= 1, "Dominant share must be over 0.5 and at most 1.");
+    this.dominantShare = dominantShare;
+  }
+
+  /**
+   * The largest family, in MB of store files, that may be recommended for IN_MEMORY. Defaults to 1024.
+   */
+  public void setMaxInMemorySizeMB(long maxInMemorySizeMB) {
+    this.maxInMemorySizeMB = maxInMemorySizeMB;
+  }
+
+  /**
+   * Above this many store files per region, write heavy tables are recommended a bigger flush size. Defaults to 5.
+   */
+  public void setStoreFilesPerRegionThreshold(double storeFilesPerRegionThreshold) {
+    this.storeFilesPerRegionThreshold = storeFilesPerRegionThreshold;
+  }
+
+  /**
+   * The recommendations behind the last tune() call, in table and family order
+   */
+  public List<Recommendation> getRecommendations() {
+    return Collections.unmodifiableList(recommendations);
+  }
+
+  /**
+   * Return a copy of the schema with the recommended changes made. The current schema isn't changed.
+   */
+  public HBaseSchema tune(HBaseSchema current, WorkloadMetrics metrics) {
+    recommendations.clear();
+    HBaseSchema result = new HBaseSchema();
+    for (HTableDescriptor table : current.getTables()) {
+      HTableDescriptor tuned = new HTableDescriptor(table);
+      String tableName = tuned.getNameAsString();
+      boolean writeHeavyWithManyFiles = false;
+      for (HColumnDescriptor cf : tuned.getColumnFamilies()) {
+        FamilyStats stats = metrics.getFamilyStats(tableName, cf.getNameAsString());
+        if (stats == null || stats.getTotalRequests() < minRequests) continue;
+        tuneFamily(tableName, cf, stats);
+        if (isDominant(stats.writes, stats) && stats.getStoreFilesPerRegion() > storeFilesPerRegionThreshold) {
+          writeHeavyWithManyFiles = true;
+        }
+      }
+      if (writeHeavyWithManyFiles) {
+        long flushSize = Long.parseLong(getValue(tuned, HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE));
+        long doubled = Math.min(MAX_MEMSTORE_FLUSHSIZE, flushSize * 2);
+        if (doubled > flushSize) {
+          set(tuned, null, HBaseSchemaAttribute.MEMSTORE_FLUSHSIZE, String.valueOf(doubled),
+              "write heavy, with more than " + storeFilesPerRegionThreshold + " store files per region");
+        }
+      }
+      result.addTable(tuned);
+    }
+    return result;
+  }
+
+  private void tuneFamily(String tableName, HColumnDescriptor cf, FamilyStats stats) {
+    double hitRatio = stats.getBlockCacheHitRatio();
+    if (isDominant(stats.reads, stats)) {
+      String reason = "get heavy";
+      if ("NONE".equalsIgnoreCase(getValue(cf, HBaseSchemaAttribute.BLOOMFILTER))) {
+        set(tableName, cf, HBaseSchemaAttribute.BLOOMFILTER, "ROW", reason);
+      }
+      if (Integer.parseInt(getValue(cf, HBaseSchemaAttribute.BLOCKSIZE)) > POINT_LOOKUP_BLOCKSIZE) {
+        set(tableName, cf, HBaseSchemaAttribute.BLOCKSIZE, String.valueOf(POINT_LOOKUP_BLOCKSIZE), reason);
+      }
+      if (!Boolean.parseBoolean(getValue(cf, HBaseSchemaAttribute.BLOCKCACHE))) {
+        set(tableName, cf, HBaseSchemaAttribute.BLOCKCACHE, "true", reason);
+      }
+      if ("NONE".equalsIgnoreCase(getValue(cf, HBaseSchemaAttribute.DATA_BLOCK_ENCODING))) {
+        set(tableName, cf, HBaseSchemaAttribute.DATA_BLOCK_ENCODING, "FAST_DIFF", reason + ", so more rows fit in the block cache");
+      }
+      if (hitRatio >= 0 && hitRatio < dominantShare && stats.storeFileSizeMB > 0 && stats.storeFileSizeMB <= maxInMemorySizeMB
+          && !Boolean.parseBoolean(getValue(cf, HBaseSchemaAttribute.IN_MEMORY))) {
+        set(tableName, cf, HBaseSchemaAttribute.IN_MEMORY, "true", reason + ", small, and only " + Math.round(hitRatio * 100) + "% cache hits");
+      }
+    } else if (isDominant(stats.scans, stats)) {
+      String reason = "scan heavy";
+      if (Integer.parseInt(getValue(cf, HBaseSchemaAttribute.BLOCKSIZE)) < SCAN_BLOCKSIZE) {
+        set(tableName, cf, HBaseSchemaAttribute.BLOCKSIZE, String.valueOf(SCAN_BLOCKSIZE), reason);
+      }
+      if (Boolean.parseBoolean(getValue(cf, HBaseSchemaAttribute.IN_MEMORY))) {
+        set(tableName, cf, HBaseSchemaAttribute.IN_MEMORY, "false", reason);
+      }
+      if (hitRatio >= 0 && hitRatio < 1 - dominantShare && Boolean.parseBoolean(getValue(cf, HBaseSchemaAttribute.BLOCKCACHE))) {
+        set(tableName, cf, HBaseSchemaAttribute.BLOCKCACHE, "false", reason + ", with only " + Math.round(hitRatio * 100) + "% cache hits");
+      }
+    }
+  }
+
+  private boolean isDominant(long requests, FamilyStats stats) {
+    return stats.getTotalRequests() > 0 && (double)requests / stats.getTotalRequests() >= dominantShare;
+  }
+
+  private void set(String tableName, HColumnDescriptor cf, HBaseSchemaAttribute a, String value, String reason) {
+    recommendations.add(new Recommendation(tableName, cf.getNameAsString(), a.name, getValue(cf, a), value, reason));
+    cf.setValue(a.name, value);
+  }
+
+  private void set(HTableDescriptor table, String familyName, HBaseSchemaAttribute a, String value, String reason) {
+    recommendations.add(new Recommendation(table.getNameAsString(), familyName, a.name, getValue(table, a), value, reason));
+    table.setValue(a.name, value);
+  }
+
+  private static String getValue(HColumnDescriptor cf, HBaseSchemaAttribute a) {
+    String value = cf.getValue(a.name);
+    return value != null ? value : a.defaultValue;
+  }
+
+  private static String getValue(HTableDescriptor table, HBaseSchemaAttribute a) {
+    String value = table.getValue(a.name);
+    return value != null ? value : a.defaultValue;
+  }
+
+}
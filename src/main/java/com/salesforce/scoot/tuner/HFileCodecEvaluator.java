@@ -0,0 +1,558 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.tuner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoder;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoder.EncodedSeeker;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.Compression;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.regionserver.metrics.SchemaMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.google.common.base.Preconditions;
+import com.salesforce.scoot.HBaseSchemaAttribute;
+import com.salesforce.scoot.ScootException;
+
+/**
+ * Picks COMPRESSION and DATA_BLOCK_ENCODING for a column family from its actual data. It reads key values from
+ * a sample of the family's HFiles (on the local file system or HDFS), cuts them into blocks the way a region
+ * server would, and trial encodes and compresses those blocks with every encoding and every compression
+ * algorithm that's usable here. For each combination it measures the stored size, encode and decode
+ * throughput, and the cost of seeking to a key inside a block.
+ *
+ * The winner is the smallest combination that still decodes at a set minimum throughput, so that a codec
+ * that saves a little space but makes every read CPU bound doesn't win. The winning settings can
+ * be written into a scoot XML schema, as a proposal to review and diff like any other schema change.
+ */
+public class HFileCodecEvaluator {
+
+  private static final Log LOG = LogFactory.getLog(HFileCodecEvaluator.class);
+
+  /** How many keys to seek to in each block */
+  private static final int SEEKS_PER_BLOCK = 16;
+
+  private final Configuration conf;
+  private int maxFiles = 10;
+  private long maxSampleBytes = 64L * 1024 * 1024;
+  private int blockSize = HColumnDescriptor.DEFAULT_BLOCKSIZE;
+  private double minDecodeMBPerSecond = 100;
+
+  /**
+   * The measurements for one encoding and compression algorithm
+   */
+  public static class Result {
+    public final DataBlockEncoding encoding;
+    public final Compression.Algorithm compression;
+    public long rawBytes;
+    public long encodedBytes;
+    public long compressedBytes;
+    public long encodeNanos;
+    public long decodeNanos;
+    public long seeks;
+    public long seekNanos;
+
+    Result(DataBlockEncoding encoding, Compression.Algorithm compression) {
+      this.encoding = encoding;
+      this.compression = compression;
+    }
+
+    /** Stored size as a fraction of the raw key values */
+    public double getRatio() {
+      return rawBytes == 0 ? 1 : (double)compressedBytes / rawBytes;
+    }
+
+    public double getEncodeMBPerSecond() {
+      return mbPerSecond(rawBytes, encodeNanos);
+    }
+
+    public double getDecodeMBPerSecond() {
+      return mbPerSecond(rawBytes, decodeNanos);
+    }
+
+    public double getNanosPerSeek() {
+      return seeks == 0 ? 0 : (double)seekNanos / seeks;
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+      return nanos == 0 ? 0 : (bytes / (1024.0 * 1024)) / (nanos / 1e9);
+    }
+
+    @Override public String toString(){
+      return String.format("%-10s %-7s %6.1f%% %10.1f MB/s %10.1f MB/s %10.0f ns/seek",
+          encoding, compression, getRatio() * 100, getEncodeMBPerSecond(), getDecodeMBPerSecond(), getNanosPerSeek());
+    }
+  }
+
+  public HFileCodecEvaluator(Configuration conf) {
+    this.conf = new Configuration(conf);
+    // the sample is only read once, so keep it out of any block cache
+    this.conf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0f);
+    // HFile readers report per-table metrics, which have to be set up outside a region server too
+    SchemaMetrics.configureGlobally(this.conf);
+  }
+
+  /**
+   * How many HFiles to read key values from, spread evenly across the files found. Defaults to 10.
+   */
+  public void setMaxFiles(int maxFiles) {
+    Preconditions.checkArgument(maxFiles > 0, "Max files must be at least 1.");
+    this.maxFiles = maxFiles;
+  }
+
+  /**
+   * How many bytes of key values to sample in total. Defaults to 64MB.
+   */
+  public void setMaxSampleBytes(long maxSampleBytes) {
+    Preconditions.checkArgument(maxSampleBytes > 0, "Sample size must be positive.");
+    this.maxSampleBytes = maxSampleBytes;
+  }
+
+  /**
+   * The block size to cut the sample into, normally the family's BLOCKSIZE. Defaults to 64KB.
+   */
+  public void setBlockSize(int blockSize) {
+    Preconditions.checkArgument(blockSize > 0, "Block size must be positive.");
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * The decode throughput a combination needs to be picked. Set it to about what storage can deliver a
+   * region server, since decoding faster than that doesn't make reads any faster. Defaults to 100MB/s.
+   */
+  public void setMinDecodeMBPerSecond(double minDecodeMBPerSecond) {
+    Preconditions.checkArgument(minDecodeMBPerSecond >= 0, "Min decode throughput can't be negative.");
+    this.minDecodeMBPerSecond = minDecodeMBPerSecond;
+  }
+
+  /**
+   * Sample the HFiles under the path (a file, a directory searched recursively, or a glob), and measure
+   * every usable combination. Results are in encoding, then compression order.
+   */
+  public List<Result> evaluate(Path path) throws IOException {
+    List<byte[]> blocks = readBlocks(findHFiles(path));
+    if (blocks.isEmpty()) {
+      throw new ScootException("No key values found in the HFiles under " + path);
+    }
+    List<Compression.Algorithm> algorithms = getUsableAlgorithms();
+    // a throwaway round first, so the JIT has compiled the codecs before anything is timed
+    List<byte[]> warmup = blocks.subList(0, Math.min(blocks.size(), 8));
+    for (DataBlockEncoding encoding : DataBlockEncoding.values()) {
+      for (Compression.Algorithm algorithm : algorithms) {
+        measure(warmup, encoding, algorithm);
+      }
+    }
+    List<Result> results = new ArrayList<Result>();
+    for (DataBlockEncoding encoding : DataBlockEncoding.values()) {
+      for (Compression.Algorithm algorithm : algorithms) {
+        results.add(measure(blocks, encoding, algorithm));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * The smallest result that decodes fast enough, or the fastest to decode if none do
+   */
+  public Result pickWinner(List<Result> results) {
+    Result fastest = null;
+    for (Result r : results) {
+      if (fastest == null || r.getDecodeMBPerSecond() > fastest.getDecodeMBPerSecond()) fastest = r;
+    }
+    Result winner = null;
+    for (Result r : results) {
+      if (r.getDecodeMBPerSecond() < minDecodeMBPerSecond) continue;
+      if (winner == null || r.compressedBytes < winner.compressedBytes
+          || (r.compressedBytes == winner.compressedBytes && r.getDecodeMBPerSecond() > winner.getDecodeMBPerSecond())) {
+        winner = r;
+      }
+    }
+    return winner == null ? fastest : winner;
+  }
+
+  /**
+   * Every HFile under the path, leaving out hidden files, temporary files and recovered edits
+   */
+  List<Path> findHFiles(Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    List<Path> result = new ArrayList<Path>();
+    FileStatus[] matches = fs.globStatus(path);
+    if (matches != null) {
+      for (FileStatus status : matches) {
+        addHFiles(fs, status, result);
+      }
+    }
+    // the same files in the same order every time, so that the sample is repeatable
+    Collections.sort(result, new Comparator<Path>() {
+      @Override
+      public int compare(Path a, Path b) {
+        return a.toString().compareTo(b.toString());
+      }
+    });
+    if (result.size() <= maxFiles) {
+      return result;
+    }
+    List<Path> sample = new ArrayList<Path>();
+    for (int x = 0; x < maxFiles; x++) {
+      sample.add(result.get((int)((long)x * result.size() / maxFiles)));
+    }
+    return sample;
+  }
+
+  private void addHFiles(FileSystem fs, FileStatus status, List<Path> result) throws IOException {
+    String name = status.getPath().getName();
+    if (name.startsWith(".") || name.equals(HConstants.HREGION_OLDLOGDIR_NAME) || name.equals("recovered.edits")) {
+      return;
+    }
+    if (status.isDir()) {
+      for (FileStatus child : fs.listStatus(status.getPath())) {
+        addHFiles(fs, child, result);
+      }
+    } else if (status.getLen() > 0) {
+      result.add(status.getPath());
+    }
+  }
+
+  /**
+   * Read key values from the files, in turn, into blocks of the configured size, until the sample is full
+   */
+  private List<byte[]> readBlocks(List<Path> files) throws IOException {
+    List<byte[]> blocks = new ArrayList<byte[]>();
+    ByteArrayOutputStream block = new ByteArrayOutputStream(blockSize * 2);
+    long sampled = 0;
+    long perFile = Math.max(1, maxSampleBytes / Math.max(1, files.size()));
+    CacheConfig cacheConfig = new CacheConfig(conf);
+    for (Path file : files) {
+      FileSystem fs = file.getFileSystem(conf);
+      HFile.Reader reader;
+      try {
+        reader = HFile.createReader(fs, file, cacheConfig);
+      } catch (IOException e) {
+        LOG.warn("Skipping " + file + ", which isn't a readable HFile: " + e.getMessage());
+        continue;
+      }
+      try {
+        HFileScanner scanner = reader.getScanner(false, false);
+        long fromThisFile = 0;
+        if (scanner.seekTo()) {
+          do {
+            KeyValue kv = scanner.getKeyValue();
+            block.write(kv.getBuffer(), kv.getOffset(), kv.getLength());
+            fromThisFile += kv.getLength();
+            if (block.size() >= blockSize) {
+              blocks.add(block.toByteArray());
+              block.reset();
+            }
+          } while (fromThisFile < perFile && sampled + fromThisFile < maxSampleBytes && scanner.next());
+        }
+        sampled += fromThisFile;
+      } finally {
+        reader.close(false);
+      }
+      // blocks don't span files
+      if (block.size() > 0) {
+        blocks.add(block.toByteArray());
+        block.reset();
+      }
+      if (sampled >= maxSampleBytes) break;
+    }
+    LOG.info("Sampled " + sampled + " bytes of key values from " + files.size() + " files into " + blocks.size() + " blocks.");
+    return blocks;
+  }
+
+  /**
+   * The compression algorithms whose codecs can actually be loaded here (LZO and SNAPPY need native libraries)
+   */
+  private static List<Compression.Algorithm> getUsableAlgorithms() {
+    List<Compression.Algorithm> result = new ArrayList<Compression.Algorithm>();
+    for (Compression.Algorithm algorithm : Compression.Algorithm.values()) {
+      Compressor compressor = null;
+      try {
+        compressor = algorithm.getCompressor();
+        compress(algorithm, compressor, new byte[] { 1, 2, 3 });
+        result.add(algorithm);
+      } catch (Throwable t) {
+        LOG.info("Compression " + algorithm + " isn't available here: " + t);
+      } finally {
+        if (compressor != null) algorithm.returnCompressor(compressor);
+      }
+    }
+    return result;
+  }
+
+  private Result measure(List<byte[]> blocks, DataBlockEncoding encoding, Compression.Algorithm algorithm) throws IOException {
+    Result result = new Result(encoding, algorithm);
+    DataBlockEncoder encoder = encoding.getEncoder();
+    Compressor compressor = algorithm.getCompressor();
+    Decompressor decompressor = algorithm.getDecompressor();
+    EncodedSeeker seeker = encoder == null ? null : encoder.createSeeker(KeyValue.KEY_COMPARATOR, false);
+    try {
+      for (byte[] raw : blocks) {
+        result.rawBytes += raw.length;
+
+        long start = System.nanoTime();
+        byte[] encoded = encode(encoder, raw);
+        byte[] compressed = compress(algorithm, compressor, encoded);
+        result.encodeNanos += System.nanoTime() - start;
+        result.encodedBytes += encoded.length;
+        result.compressedBytes += compressed.length;
+
+        start = System.nanoTime();
+        byte[] decompressed = decompress(algorithm, decompressor, compressed, encoded.length);
+        if (encoder != null) {
+          encoder.uncompressKeyValues(new DataInputStream(new ByteArrayInputStream(decompressed)), false);
+        }
+        result.decodeNanos += System.nanoTime() - start;
+
+        List<byte[]> keys = getSeekKeys(raw);
+        start = System.nanoTime();
+        for (byte[] key : keys) {
+          if (seeker != null) {
+            seeker.setCurrentBuffer(ByteBuffer.wrap(encoded));
+            seeker.seekToKeyInBlock(key, 0, key.length, false);
+          } else {
+            seekUnencoded(raw, key);
+          }
+        }
+        result.seekNanos += System.nanoTime() - start;
+        result.seeks += keys.size();
+      }
+    } finally {
+      if (compressor != null) algorithm.returnCompressor(compressor);
+      if (decompressor != null) algorithm.returnDecompressor(decompressor);
+    }
+    return result;
+  }
+
+  private static byte[] encode(DataBlockEncoder encoder, byte[] raw) throws IOException {
+    if (encoder == null) return raw;
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+    encoder.compressKeyValues(new DataOutputStream(out), ByteBuffer.wrap(raw), false);
+    return out.toByteArray();
+  }
+
+  private static byte[] compress(Compression.Algorithm algorithm, Compressor compressor, byte[] data) throws IOException {
+    if (compressor != null) compressor.reset();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+    OutputStream cos = algorithm.createCompressionStream(out, compressor, 0);
+    cos.write(data);
+    cos.flush();
+    cos.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] decompress(Compression.Algorithm algorithm, Decompressor decompressor, byte[] data, int length) throws IOException {
+    if (decompressor != null) decompressor.reset();
+    InputStream in = algorithm.createDecompressionStream(new ByteArrayInputStream(data), decompressor, 0);
+    byte[] result = new byte[length];
+    new DataInputStream(in).readFully(result);
+    return result;
+  }
+
+  /**
+   * Keys spread evenly through a raw block, to seek to
+   */
+  private static List<byte[]> getSeekKeys(byte[] raw) {
+    List<int[]> all = new ArrayList<int[]>();
+    for (int pos = 0; pos < raw.length;) {
+      int keyLength = Bytes.toInt(raw, pos);
+      int valueLength = Bytes.toInt(raw, pos + Bytes.SIZEOF_INT);
+      all.add(new int[] { pos + 2 * Bytes.SIZEOF_INT, keyLength });
+      pos += 2 * Bytes.SIZEOF_INT + keyLength + valueLength;
+    }
+    List<byte[]> keys = new ArrayList<byte[]>();
+    int count = Math.min(SEEKS_PER_BLOCK, all.size());
+    for (int x = 0; x < count; x++) {
+      int[] key = all.get(x * all.size() / count);
+      keys.add(Arrays.copyOfRange(raw, key[0], key[0] + key[1]));
+    }
+    return keys;
+  }
+
+  /**
+   * Without an encoding, seeking in a block means walking its key values from the start
+   */
+  private static void seekUnencoded(byte[] raw, byte[] key) {
+    for (int pos = 0; pos < raw.length;) {
+      int keyLength = Bytes.toInt(raw, pos);
+      int valueLength = Bytes.toInt(raw, pos + Bytes.SIZEOF_INT);
+      if (KeyValue.KEY_COMPARATOR.compare(raw, pos + 2 * Bytes.SIZEOF_INT, keyLength, key, 0, key.length) >= 0) {
+        return;
+      }
+      pos += 2 * Bytes.SIZEOF_INT + keyLength + valueLength;
+    }
+  }
+
+  /**
+   * Write the winner's settings onto the family in a scoot XML schema. If there's no schema to start from,
+   * the proposal is a new schema with just that table and family.
+   */
+  public static void writeProposal(File schema, String tableName, String familyName, Result winner, File output) {
+    try {
+      Document doc;
+      if (schema != null) {
+        doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(schema);
+      } else {
+        doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        doc.appendChild(doc.createElement("schema"));
+      }
+      Element family = findOrCreateFamily(doc, tableName, familyName, schema == null);
+      family.setAttribute(HBaseSchemaAttribute.COMPRESSION.name, winner.compression.name());
+      family.setAttribute(HBaseSchemaAttribute.DATA_BLOCK_ENCODING.name, winner.encoding.name());
+
+      Transformer t = TransformerFactory.newInstance().newTransformer();
+      t.setOutputProperty(OutputKeys.INDENT, "yes");
+      t.transform(new DOMSource(doc), new StreamResult(output));
+    } catch (ScootException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ScootException("Unable to write proposed schema to " + output + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static Element findOrCreateFamily(Document doc, String tableName, String familyName, boolean create) {
+    NodeList tables = doc.getElementsByTagName("table");
+    for (int x = 0; x < tables.getLength(); x++) {
+      Element table = (Element)tables.item(x);
+      if (!tableName.equals(table.getAttribute("name"))) continue;
+      NodeList families = table.getElementsByTagName("columnFamily");
+      for (int y = 0; y < families.getLength(); y++) {
+        Element family = (Element)families.item(y);
+        if (familyName.equals(family.getAttribute("name"))) {
+          return family;
+        }
+      }
+    }
+    if (!create) {
+      throw new ScootException("Schema has no column family '" + familyName + "' in table '" + tableName + "'.");
+    }
+    Element table = doc.createElement("table");
+    table.setAttribute("name", tableName);
+    Element families = doc.createElement("columnFamilies");
+    Element family = doc.createElement("columnFamily");
+    family.setAttribute("name", familyName);
+    families.appendChild(family);
+    table.appendChild(families);
+    doc.getDocumentElement().appendChild(table);
+    return family;
+  }
+
+  private static final Options options = new Options();
+  static {
+    options.addOption("i", "input", true, "The HFiles to sample: a file, a directory (searched recursively) or a glob, on the local file system or HDFS. Pointing at a family directory (.../{table}/{region}/{family}) lets the table and family be worked out.");
+    options.addOption("t", "table", true, "The table the HFiles belong to.");
+    options.addOption("c", "column-family", true, "The column family the HFiles belong to.");
+    options.addOption("s", "schema", true, "A scoot XML schema to write the winning settings into. Without one, the proposal only has this table and family.");
+    options.addOption("o", "output", true, "Where to write the proposed scoot XML schema.");
+    options.addOption("n", "max-files", true, "How many HFiles to sample. Defaults to 10.");
+    options.addOption("m", "sample-mb", true, "How many MB of key values to sample. Defaults to 64.");
+    options.addOption("b", "block-size", true, "The block size to test with, in bytes. Defaults to 65536.");
+    options.addOption("d", "min-decode-mb-per-sec", true, "The decode throughput the winner needs, in MB/s. Defaults to 100.");
+  }
+
+  public static void main(String[] args) throws IOException {
+    CommandLine command;
+    try {
+      command = new PosixParser().parse(options, args);
+    } catch (ParseException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+    if (!command.hasOption("i")) {
+      new HelpFormatter().printHelp("scoot-codecs", options);
+      return;
+    }
+    Path input = new Path(command.getOptionValue("i"));
+    String tableName = command.getOptionValue("t", input.getParent() != null && input.getParent().getParent() != null ? input.getParent().getParent().getName() : null);
+    String familyName = command.getOptionValue("c", input.getName());
+
+    HFileCodecEvaluator evaluator = new HFileCodecEvaluator(HBaseConfiguration.create());
+    try {
+      evaluator.setMaxFiles(Integer.parseInt(command.getOptionValue("n", "10")));
+      evaluator.setMaxSampleBytes(Long.parseLong(command.getOptionValue("m", "64")) * 1024 * 1024);
+      evaluator.setBlockSize(Integer.parseInt(command.getOptionValue("b", String.valueOf(HColumnDescriptor.DEFAULT_BLOCKSIZE))));
+      evaluator.setMinDecodeMBPerSecond(Double.parseDouble(command.getOptionValue("d", "100")));
+    } catch (NumberFormatException e) {
+      throw new ScootException("Error during initialization: ", e);
+    }
+
+    List<Result> results = evaluator.evaluate(input);
+    System.out.println(String.format("%-10s %-7s %7s %15s %15s %18s", "ENCODING", "COMPR", "SIZE", "ENCODE", "DECODE", "SEEK"));
+    for (Result r : results) {
+      System.out.println(r);
+    }
+    Result winner = evaluator.pickWinner(results);
+    System.out.println("Best for " + tableName + ":" + familyName + ": COMPRESSION=" + winner.compression + " DATA_BLOCK_ENCODING=" + winner.encoding);
+    if (command.hasOption("o")) {
+      Preconditions.checkArgument(tableName != null, "The table name couldn't be worked out from the input path; use -t.");
+      writeProposal(command.hasOption("s") ? new File(command.getOptionValue("s")) : null, tableName, familyName, winner, new File(command.getOptionValue("o")));
+    }
+  }
+
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot.tuner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.salesforce.scoot.ScootException;
+
+/**
+ * A snapshot of how a cluster's column families are used, read from a captured file so that tuning can
+ * be worked out offline. Two formats are understood:
+ * <ul>
+ * <li>Scoot's own: {"regions": [{"table": "t", "family": "cf", "reads": 100, "writes": 10, "scans": 5,
+ *     "blockCacheHitRatio": 0.9, "storeFiles": 3, "storeFileSizeMB": 512}, ...]}, one entry per region and
+ *     family. Every field but table and family is optional.</li>
+ * <li>A JMX JSON dump from a region server's /jmx page ({"beans": [...]}), from which the per column family
+ *     "tbl.{table}.cf.{family}.{metric}" attributes are read: get, put/multiput and next operation counts,
+ *     data block cache hits and misses, and store file counts.</li>
+ * </ul>
+ * Counts are summed per family across regions (and region servers).
+ */
+public class WorkloadMetrics {
+
+  private static final Pattern SCHEMA_METRIC = Pattern.compile("^tbl\\.(.+)\\.cf\\.([^.]+)\\.(.+)$");
+
+  /**
+   * Usage of one column family, summed across its regions
+   */
+  public static class FamilyStats {
+    public long reads;
+    public long writes;
+    public long scans;
+    public long cacheHits;
+    public long cacheMisses;
+    public long storeFiles;
+    public long storeFileSizeMB;
+    public int regions;
+
+    public long getTotalRequests() {
+      return reads + writes + scans;
+    }
+
+    /** Fraction of block requests served from the block cache, or -1 if nothing was reported */
+    public double getBlockCacheHitRatio() {
+      return cacheHits + cacheMisses == 0 ? -1 : (double)cacheHits / (cacheHits + cacheMisses);
+    }
+
+    /** Average store files in each region of this family */
+    public double getStoreFilesPerRegion() {
+      return regions == 0 ? 0 : (double)storeFiles / regions;
+    }
+  }
+
+  private final Map<String, Map<String, FamilyStats>> tables = new TreeMap<String, Map<String, FamilyStats>>();
+
+  /**
+   * The stats for a family, or null if the snapshot has nothing on it
+   */
+  public FamilyStats getFamilyStats(String tableName, String familyName) {
+    Map<String, FamilyStats> families = tables.get(tableName);
+    return families == null ? null : families.get(familyName);
+  }
+
+  /**
+   * Stats of every family of a table that the snapshot has anything on, by family name
+   */
+  public Map<String, FamilyStats> getTableStats(String tableName) {
+    Map<String, FamilyStats> families = tables.get(tableName);
+    return families == null ? Collections.<String, FamilyStats>emptyMap() : Collections.unmodifiableMap(families);
+  }
+
+  /**
+   * Get (or start) the stats for a family
+   */
+  public FamilyStats getOrCreate(String tableName, String familyName) {
+    Map<String, FamilyStats> families = tables.get(tableName);
+    if (families == null) {
+      families = new TreeMap<String, FamilyStats>();
+      tables.put(tableName, families);
+    }
+    FamilyStats stats = families.get(familyName);
+    if (stats == null) {
+      stats = new FamilyStats();
+      families.put(familyName, stats);
+    }
+    return stats;
+  }
+
+  /**
+   * Read a metrics snapshot from a file in either supported format
+   */
+  public static WorkloadMetrics read(File file) {
+    try {
+      JsonNode root = new ObjectMapper().readTree(file.toURI().toURL().openStream());
+      WorkloadMetrics metrics = new WorkloadMetrics();
+      if (root.get("regions") != null) {
+        metrics.addRegions(root.get("regions"));
+      } else if (root.get("beans") != null) {
+        metrics.addJmxBeans(root.get("beans"));
+      } else {
+        throw new ScootException("Metrics file " + file + " has neither 'regions' nor JMX 'beans'.");
+      }
+      return metrics;
+    } catch (IOException e) {
+      throw new ScootException("Unable to read metrics file " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  private void addRegions(JsonNode regions) {
+    for (JsonNode r : regions) {
+      if (r.get("table") == null || r.get("family") == null) {
+        throw new ScootException("Every region in a metrics file needs a 'table' and a 'family': " + r);
+      }
+      FamilyStats stats = getOrCreate(r.get("table").getTextValue(), r.get("family").getTextValue());
+      stats.regions++;
+      stats.reads += getLong(r, "reads");
+      stats.writes += getLong(r, "writes");
+      stats.scans += getLong(r, "scans");
+      stats.storeFiles += getLong(r, "storeFiles");
+      stats.storeFileSizeMB += getLong(r, "storeFileSizeMB");
+      if (r.get("blockCacheHitRatio") != null) {
+        // weight each region's ratio by its reads, so busy regions count for more
+        long weight = Math.max(1, getLong(r, "reads") + getLong(r, "scans"));
+        long hits = Math.round(r.get("blockCacheHitRatio").getDoubleValue() * weight);
+        stats.cacheHits += hits;
+        stats.cacheMisses += weight - hits;
+      }
+    }
+  }
+
+  private void addJmxBeans(JsonNode beans) {
+    for (JsonNode bean : beans) {
+      for (Iterator<String> names = bean.getFieldNames(); names.hasNext();) {
+        String name = names.next();
+        Matcher m = SCHEMA_METRIC.matcher(name);
+        if (!m.matches() || !bean.get(name).isNumber()) continue;
+        FamilyStats stats = getOrCreate(m.group(1), m.group(2));
+        String metric = m.group(3);
+        long value = bean.get(name).getLongValue();
+        if (metric.equals("get_num_ops")) {
+          stats.reads += value;
+        } else if (metric.equals("put_num_ops") || metric.equals("multiput_num_ops")) {
+          stats.writes += value;
+        } else if (metric.equals("next_num_ops")) {
+          stats.scans += value;
+        } else if (metric.startsWith("bt.Data.") && metric.endsWith("HitCnt")) {
+          stats.cacheHits += value;
+        } else if (metric.startsWith("bt.Data.") && metric.endsWith("MissCnt")) {
+          stats.cacheMisses += value;
+        } else if (metric.equals("storeFileCount")) {
+          stats.storeFiles += value;
+          stats.regions++;
+        }
+      }
+    }
+  }
+
+  private static long getLong(JsonNode node, String field) {
+    JsonNode value = node.get(field);
+    return value == null ? 0 : value.getLongValue();
+  }
+
+}
@@ -26,10 +26,20 @@
 package com.salesforce.scoot;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Map.Entry;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+
 /**
  * Tests to generate diff scripts based on various inputs. This set of tests
  * refers to xml files in the /src/test/resources directory.
@@ -170,4 +180,117 @@ public class DiffScriptGenerationTest {
 
 
   }
+
+  /**
+   * Test that a table whose only changes are to metadata is never disabled: it's either modified online
+   * after the other changes, or left for its next alter.
+   */
+  @Test
+  public void testMetadataOnlyAlter() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("meta");
+    oldTable.setValue("fullSchema", "<table name=\"meta\"/>");
+    oldTable.addFamily(new HColumnDescriptor("cf"));
+    HTableDescriptor newTable = new HTableDescriptor(oldTable);
+    newTable.setValue("fullSchema", "<table name=\"meta\" />");
+    newTable.setOwnerString("bob");
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(oldTable);
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(newTable);
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+
+    String online = new HBaseRubySchemaPatchScripter(diff, AlterStrategy.OFFLINE).generateScript();
+    assertTrue(online.contains("#       meta (metadata only, modified online)"));
+    assertFalse(online.contains("admin.disableTable"));
+    assertTrue(online.contains("table.setValue(\"OWNER\", \"bob\")"));
+    assertTrue(online.contains("admin.modifyTable(tablename.bytes.to_a, table)"));
+    assertTrue(online.contains("def waitForAlter(admin, tablename)"));
+    assertTrue(online.contains("metadataUpdated.each { |tablename| waitForAlter(admin, tablename) }"));
+    // unless it was refused, the online change is validated like any other alter
+    assertTrue(online.contains("if admin.tableExists(tablename) && !metadataDeferred.include?(tablename)"));
+    assertTrue(online.contains("compare(preErrors, table, \"alter\", \"OWNER\", \"bob\")"));
+
+    HBaseRubySchemaPatchScripter deferring = new HBaseRubySchemaPatchScripter(diff, AlterStrategy.OFFLINE);
+    deferring.setMetadataStrategy(MetadataStrategy.DEFER);
+    String deferred = deferring.generateScript();
+    assertTrue(deferred.contains("#       meta (metadata only, deferred)"));
+    assertTrue(deferred.contains("# Metadata only changes, deferred until each table's next alter:\n#   meta\n"));
+    assertFalse(deferred.contains("admin.disableTable"));
+    assertFalse(deferred.contains("admin.modifyTable"));
+    assertFalse(deferred.contains("compare(preErrors"));
+  }
+
+  /**
+   * Test that the metadata changes of an alter that only touches column families go along with it, in the
+   * same disabled window, whatever the metadata strategy, rather than being deferred again on every run.
+   */
+  @Test
+  public void testMetadataChangeWithFamilyAlter() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("meta");
+    oldTable.addFamily(new HColumnDescriptor("cf"));
+    HTableDescriptor newTable = new HTableDescriptor("meta");
+    HColumnDescriptor family = new HColumnDescriptor("cf");
+    family.setMaxVersions(5);
+    newTable.addFamily(family);
+    newTable.setOwnerString("bob");
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(oldTable);
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(newTable);
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+
+    for (MetadataStrategy strategy : MetadataStrategy.values()) {
+      HBaseRubySchemaPatchScripter scripter = new HBaseRubySchemaPatchScripter(diff, AlterStrategy.OFFLINE);
+      scripter.setMetadataStrategy(strategy);
+      String script = scripter.generateScript();
+      int disable = script.indexOf("admin.disableTable(tablename)");
+      int modifyFamily = script.indexOf("admin.modifyColumn(tablename, cf)");
+      int owner = script.indexOf("table.setValue(\"OWNER\", \"bob\")");
+      int modify = script.indexOf("admin.modifyTable(tablename.bytes.to_a, table)");
+      int enable = script.indexOf("admin.enableTable(tablename)");
+      assertTrue(strategy.toString(), disable > 0 && disable < modifyFamily && modifyFamily < owner && owner < modify && modify < enable);
+      assertFalse(strategy.toString(), script.contains("Metadata only changes"));
+      assertFalse(strategy.toString(), script.contains("metadataDeferred"));
+      assertTrue(strategy.toString(), script.contains("compare(preErrors, table, \"alter\", \"OWNER\", \"bob\")"));
+    }
+  }
+
+  /**
+   * A table that was created without any explicit attributes reports none of them from the cluster, and a
+   * hand-set one may come back in another case; the validations must still see it as matching its normalized
+   * definition, so the script reads the cluster's values through the same defaults and canonical forms.
+   */
+  @Test
+  public void testAlterOfTableWithoutExplicitAttributes() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("plain");
+    oldTable.addFamily(new HColumnDescriptor("cf"));
+    HTableDescriptor newTable = new HTableDescriptor("plain");
+    newTable.addFamily(new HColumnDescriptor("cf").setMaxVersions(5));
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(oldTable);
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(newTable);
+    String script = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(from, to), AlterStrategy.OFFLINE).generateScript();
+    assertTrue(script.contains("compare(preErrors, table, \"alter\", \"DEFERRED_LOG_FLUSH\", \"false\")"));
+    assertTrue(script.contains("    \"DEFERRED_LOG_FLUSH\" => [\"false\", \"boolean\", []],\n"));
+    assertTrue(script.contains("    \"BLOOMFILTER\" => [\"NONE\", \"enum\", [\"NONE\", \"ROW\", \"ROWCOL\"]],\n"));
+    assertTrue(script.contains("    \"OWNER\" => [nil, \"string\", []],\n"));
+    assertTrue(script.contains("    actual = canonical(attr, obj.getValue(attr))\n"));
+
+    // what the cluster reports for it: nothing on the table, and a family with some values missing or in another case
+    HTableDescriptor live = new HTableDescriptor("plain");
+    HColumnDescriptor family = new HColumnDescriptor("cf");
+    family.remove(Bytes.toBytes(HColumnDescriptor.BLOCKCACHE));
+    family.setValue(HConstants.IN_MEMORY, "FALSE");
+    family.setValue(HColumnDescriptor.TTL, "forever");
+    live.addFamily(family);
+    HTableDescriptor expected = from.getTable("plain");
+    HTableDescriptor normalized = SchemaNormalizer.normalize(live);
+    for (Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : expected.getValues().entrySet()) {
+      assertEquals(Bytes.toString(e.getValue().get()), normalized.getValue(Bytes.toString(e.getKey().get())));
+    }
+    for (Entry<ImmutableBytesWritable, ImmutableBytesWritable> e : expected.getFamily(Bytes.toBytes("cf")).getValues().entrySet()) {
+      assertEquals(Bytes.toString(e.getValue().get()), normalized.getFamily(Bytes.toBytes("cf")).getValue(Bytes.toString(e.getKey().get())));
+    }
+  }
 }
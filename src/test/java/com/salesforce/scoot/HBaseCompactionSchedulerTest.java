@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HServerLoad.RegionLoad;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.applier.HBaseCompactionScheduler;
+import com.salesforce.scoot.applier.HBaseCompactionScheduler.CompactionWatch;
+
+/**
+ * Tests of which schema changes call for a major compaction
+ */
+public class HBaseCompactionSchedulerTest extends TestCase {
+
+  public void testFamiliesNeedingCompaction() {
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(table("t", family("a", "COMPRESSION", "NONE"), family("b", "VERSIONS", "3"), family("c", "BLOCKSIZE", "65536")));
+    from.addTable(table("u", family("a", "BLOOMFILTER", "NONE")));
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(table("t", family("a", "COMPRESSION", "GZ"), family("b", "VERSIONS", "1"), family("c", "BLOCKSIZE", "65536"), family("d", "COMPRESSION", "GZ")));
+    to.addTable(table("u", family("a", "BLOOMFILTER", "ROW")));
+    to.addTable(table("v", family("a", "COMPRESSION", "GZ")));
+
+    Map<String, Set<String>> result = HBaseCompactionScheduler.getFamiliesNeedingCompaction(new HBaseSchemaDiff(from, to));
+    assertEquals(2, result.size());
+    assertEquals(Collections.singleton("a"), result.get("t"));
+    assertEquals(Collections.singleton("a"), result.get("u"));
+  }
+
+  public void testDefaultsAreNotChanges() {
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(table("t", new HColumnDescriptor("a")));
+    HBaseSchema to = new HBaseSchema();
+    HColumnDescriptor a = new HColumnDescriptor("a");
+    a.setValue("IN_MEMORY", "true");
+    a.setValue("COMPRESSION", "none");
+    to.addTable(table("t", a));
+    assertTrue(HBaseCompactionScheduler.getFamiliesNeedingCompaction(new HBaseSchemaDiff(from, to)).isEmpty());
+  }
+
+  /**
+   * A region whose compaction is still queued reports the same load as before it was asked for, even when
+   * it's already down to one store file per store; it only counts as done once the compaction has run.
+   */
+  public void testQueuedCompactionIsNotFinished() {
+    CompactionWatch watch = new CompactionWatch(load(1, 1, 100, 100));
+    for (int poll = 0; poll < 5; poll++) {
+      assertFalse(watch.isFinished(load(1, 1, 100, 100)));
+    }
+    assertFalse(watch.isFinished(load(1, 1, 400, 150)));
+    assertTrue(watch.isFinished(load(1, 1, 400, 400)));
+  }
+
+  public void testCompactionBetweenPollsIsFinished() {
+    // the counters moved on, though it was never caught running
+    assertTrue(new CompactionWatch(load(1, 1, 100, 100)).isFinished(load(1, 1, 300, 300)));
+    // the store files were merged
+    assertTrue(new CompactionWatch(load(2, 5, 100, 100)).isFinished(load(2, 2, 100, 100)));
+    // the region was split or moved
+    assertTrue(new CompactionWatch(load(1, 1, 100, 100)).isFinished(null));
+    // without a load from when it was asked for, the first one stands in for it
+    CompactionWatch watch = new CompactionWatch(null);
+    assertFalse(watch.isFinished(load(1, 1, 100, 100)));
+    assertFalse(watch.isFinished(load(1, 1, 100, 100)));
+    assertTrue(watch.isFinished(load(1, 1, 200, 200)));
+  }
+
+  private static HColumnDescriptor family(String name, String key, String value) {
+    HColumnDescriptor cf = new HColumnDescriptor(name);
+    cf.setValue(key, value);
+    return cf;
+  }
+
+  private static HTableDescriptor table(String name, HColumnDescriptor... families) {
+    HTableDescriptor t = new HTableDescriptor(name);
+    for (HColumnDescriptor cf : families) {
+      t.addFamily(cf);
+    }
+    return t;
+  }
+
+  private static RegionLoad load(int stores, int storefiles, long totalCompactingKVs, long currentCompactedKVs) {
+    return new RegionLoad(Bytes.toBytes("region"), stores, storefiles, 0, 0, 0, 0, 0, 0, 0, 0, 0, 
+        totalCompactingKVs, currentCompactedKVs, Collections.<String>emptySet());
+  }
+}
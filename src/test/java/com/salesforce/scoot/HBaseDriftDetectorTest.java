@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.FSTableDescriptors;
+
+import com.salesforce.scoot.drift.HBaseDriftDetector;
+import com.salesforce.scoot.drift.HBaseDriftDetector.DriftEvent;
+import com.salesforce.scoot.drift.HBaseDriftDetector.DriftType;
+import com.salesforce.scoot.drift.HBaseDriftDetector.Listener;
+import com.salesforce.scoot.drift.HBaseDriftDetector.PollStats;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Tests of detecting drift, against table descriptors in a local root directory
+ */
+public class HBaseDriftDetectorTest extends TestCase {
+
+  private static final String DECLARED = "src/test/resources/DiffScriptGenerationTestA.xml";
+
+  private FileSystem fs;
+  private Path rootDir;
+  private HBaseDriftDetector detector;
+  private PollStats lastPoll;
+
+  @Override protected void setUp() throws Exception {
+    fs = FileSystem.getLocal(new Configuration());
+    rootDir = new Path(System.getProperty("java.io.tmpdir"), "scoot-drift-" + System.nanoTime());
+    // start with the cluster exactly as declared
+    for (HTableDescriptor t : declared().getTables()) {
+      write(t);
+    }
+    detector = new HBaseDriftDetector("localhost", new File(DECLARED));
+    detector.setRootDir(fs.makeQualified(rootDir));
+    detector.addListener(new Listener() {
+      @Override public void onDrift(DriftEvent event) {}
+      @Override public void onPoll(PollStats stats) {
+        lastPoll = stats;
+      }
+    });
+  }
+
+  @Override protected void tearDown() throws Exception {
+    fs.delete(rootDir, true);
+  }
+
+  private static HBaseSchema declared() {
+    HBaseScootXMLParser parser = new HBaseScootXMLParser();
+    parser.setResourceToParse(DECLARED);
+    return parser.parse();
+  }
+
+  /**
+   * Write a table's descriptor the way the master does, and make sure its directory's time moves
+   */
+  private void write(HTableDescriptor table) throws Exception {
+    FSTableDescriptors.createTableDescriptor(fs, rootDir, table, true);
+    Path tableDir = new Path(rootDir, table.getNameAsString());
+    fs.setTimes(tableDir, fs.getFileStatus(tableDir).getModificationTime() + 1000, -1);
+  }
+
+  public void testDrift() throws Exception {
+    int tables = declared().getTables().size();
+    assertTrue(detector.poll().isEmpty());
+    assertEquals(tables, lastPoll.tablesListed);
+    assertEquals(tables, lastPoll.tablesRead);
+    assertTrue(lastPoll.declaredSchemaChanged);
+
+    // nothing changed, so nothing is read or compared
+    assertTrue(detector.poll().isEmpty());
+    assertEquals(tables, lastPoll.tablesListed);
+    assertEquals(0, lastPoll.tablesRead);
+    assertEquals(0, lastPoll.tablesCompared);
+
+    // someone alters a table in the shell
+    HTableDescriptor original = declared().getTables().get(0);
+    String name = original.getNameAsString();
+    HTableDescriptor altered = new HTableDescriptor(original);
+    HColumnDescriptor family = altered.getFamilies().iterator().next();
+    family.setMaxVersions(7);
+    write(altered);
+    List<DriftEvent> events = detector.poll();
+    assertEquals(1, lastPoll.tablesRead);
+    assertEquals(1, events.size());
+    assertEquals(name, events.get(0).tableName);
+    assertEquals(DriftType.CHANGED, events.get(0).type);
+    assertTrue(events.get(0).details.contains("VERSIONS"));
+    assertEquals(1, detector.getDrifting().size());
+
+    // it's only reported once
+    assertTrue(detector.poll().isEmpty());
+    assertEquals(1, lastPoll.tablesDrifting);
+
+    // put back
+    write(original);
+    events = detector.poll();
+    assertEquals(1, events.size());
+    assertEquals(DriftType.RESOLVED, events.get(0).type);
+    assertTrue(detector.getDrifting().isEmpty());
+
+    // dropped
+    fs.delete(new Path(rootDir, name), true);
+    events = detector.poll();
+    assertEquals(1, events.size());
+    assertEquals(DriftType.MISSING, events.get(0).type);
+  }
+
+  public void testUndeclared() throws Exception {
+    detector.poll();
+    write(new HTableDescriptor("notDeclared"));
+    assertTrue(detector.poll().isEmpty());
+    assertEquals(1, lastPoll.tablesRead);
+
+    detector.setReportUndeclared(true);
+    write(new HTableDescriptor("alsoNotDeclared"));
+    List<DriftEvent> events = detector.poll();
+    assertEquals(1, events.size());
+    assertEquals("alsoNotDeclared", events.get(0).tableName);
+    assertEquals(DriftType.UNDECLARED, events.get(0).type);
+  }
+
+}
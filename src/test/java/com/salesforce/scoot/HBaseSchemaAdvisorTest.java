@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.parser.HBaseSchemaAdvisor;
+import com.salesforce.scoot.parser.HBaseSchemaAdvisor.Finding;
+import com.salesforce.scoot.parser.HBaseSchemaAdvisor.Rule;
+import com.salesforce.scoot.parser.HBaseSchemaAdvisor.Severity;
+
+/**
+ * Tests of the schema performance advisor
+ */
+public class HBaseSchemaAdvisorTest extends TestCase {
+
+  public void testFindings() {
+    HColumnDescriptor cf = new HColumnDescriptor("cf");
+    cf.setValue("BLOOMFILTER", "NONE");
+    cf.setValue("COMPRESSION", "NONE");
+    cf.setValue("VERSIONS", "100");
+    cf.setValue("BLOCKSIZE", "65536");
+    cf.setValue("IN_MEMORY", "true");
+    HTableDescriptor t = new HTableDescriptor("t");
+    t.addFamily(cf);
+    t.setValue("fullSchema", "<table name=\"t\"><key><keyPart name=\"k\" type=\"Timestamp\" length=\"8\" inverted=\"false\"/></key></table>");
+    HBaseSchema schema = new HBaseSchema();
+    schema.addTable(t);
+
+    HBaseSchemaAdvisor advisor = new HBaseSchemaAdvisor();
+    List<Finding> findings = advisor.check(schema);
+    assertFound(findings, Rule.MONOTONIC_KEY_NOT_SALTED, null);
+    assertFound(findings, Rule.NO_BLOOMFILTER, "ROW");
+    assertFound(findings, Rule.NO_COMPRESSION, "SNAPPY");
+    assertFound(findings, Rule.EXCESSIVE_VERSIONS, "10");
+    assertFound(findings, Rule.LARGE_BLOCKSIZE_FOR_POINT_LOOKUPS, "16384");
+
+    // a salted key doesn't hotspot
+    t.setValue("SALT_BUCKETS", "8");
+    schema = new HBaseSchema();
+    schema.addTable(t);
+    for (Finding f : advisor.check(schema)) {
+      assertFalse(f.rule == Rule.MONOTONIC_KEY_NOT_SALTED);
+    }
+  }
+
+  public void testConfigureAndFail() {
+    HTableDescriptor t = new HTableDescriptor("t");
+    t.addFamily(new HColumnDescriptor("cf"));
+    HBaseSchema schema = new HBaseSchema();
+    schema.addTable(t);
+
+    HBaseSchemaAdvisor advisor = new HBaseSchemaAdvisor();
+    Properties rules = new Properties();
+    rules.setProperty("NO_COMPRESSION", "off");
+    rules.setProperty("NO_BLOOMFILTER", "ERROR");
+    advisor.configure(rules);
+    for (Finding f : advisor.check(schema)) {
+      assertFalse(f.rule == Rule.NO_COMPRESSION);
+    }
+
+    advisor.setFailOn(Severity.ERROR);
+    try {
+      advisor.check(schema);
+      fail("Expected a ScootException");
+    } catch (ScootException e) {
+      assertTrue(e.getMessage().contains("NO_BLOOMFILTER"));
+    }
+
+    advisor.setSeverity(Rule.NO_BLOOMFILTER, Severity.WARNING);
+    advisor.check(schema);
+
+    rules.clear();
+    rules.setProperty("NOT_A_RULE", "ERROR");
+    try {
+      advisor.configure(rules);
+      fail("Expected a ScootException");
+    } catch (ScootException e) {
+      // expected
+    }
+  }
+
+  private static void assertFound(List<Finding> findings, Rule rule, String suggestedValue) {
+    for (Finding f : findings) {
+      if (f.rule == rule) {
+        assertEquals(rule.defaultSeverity, f.severity);
+        assertEquals(suggestedValue, f.suggestedValue);
+        return;
+      }
+    }
+    fail("Expected a " + rule + " finding in " + findings);
+  }
+}
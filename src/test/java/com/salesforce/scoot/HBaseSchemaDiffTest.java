@@ -0,0 +1,404 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeImpact;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeStream;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChange;
+import com.salesforce.scoot.HBaseSchemaDiff.ColumnFamilyChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.HBaseSchemaDiff.PropertyChange;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Tests of the diff itself, using schemas built in memory rather than parsed from files.
+ */
+public class HBaseSchemaDiffTest {
+
+  /**
+   * Test that an alter that only touches column families is broken down into per-family changes,
+   * in family name order, without flagging the table's own attributes as changed.
+   */
+  @Test
+  public void testColumnFamilyChanges() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("t");
+    oldTable.addFamily(family("keep", 3));
+    oldTable.addFamily(family("modify", 3));
+    oldTable.addFamily(family("remove", 3));
+    HTableDescriptor newTable = new HTableDescriptor("t");
+    newTable.addFamily(family("keep", 3));
+    newTable.addFamily(family("modify", 5));
+    newTable.addFamily(family("add", 3));
+
+    HBaseSchemaChange c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeType.ALTER, c.type);
+    assertFalse(c.tablePropertiesChanged);
+    List<ColumnFamilyChange> familyChanges = c.columnFamilyChanges;
+    assertEquals(3, familyChanges.size());
+    assertEquals("add", familyChanges.get(0).familyName);
+    assertEquals(ColumnFamilyChangeType.ADD, familyChanges.get(0).type);
+    assertEquals("modify", familyChanges.get(1).familyName);
+    assertEquals(ColumnFamilyChangeType.MODIFY, familyChanges.get(1).type);
+    assertEquals(5, familyChanges.get(1).newFamily.getMaxVersions());
+    assertEquals("remove", familyChanges.get(2).familyName);
+    assertEquals(ColumnFamilyChangeType.DELETE, familyChanges.get(2).type);
+  }
+
+  /**
+   * Test that a change to a table attribute (one that isn't metadata only) is flagged as such
+   */
+  @Test
+  public void testTablePropertyChange() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("t");
+    oldTable.addFamily(family("cf", 3));
+    HTableDescriptor newTable = new HTableDescriptor(oldTable);
+    newTable.setMaxFileSize(1024L * 1024 * 1024);
+
+    HBaseSchemaChange c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeType.ALTER, c.type);
+    assertTrue(c.tablePropertiesChanged);
+    assertTrue(c.columnFamilyChanges.isEmpty());
+  }
+
+  /**
+   * Test that tables with the same content have the same fingerprint regardless of the order their
+   * attributes were set in, and are ignored by the diff; and that any difference changes the fingerprint.
+   */
+  @Test
+  public void testFingerprints() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("t");
+    oldTable.setOwnerString("me");
+    oldTable.setMaxFileSize(1024);
+    oldTable.addFamily(family("a", 3));
+    oldTable.addFamily(family("b", 3));
+    HTableDescriptor newTable = new HTableDescriptor("t");
+    newTable.addFamily(family("b", 3));
+    newTable.setMaxFileSize(1024);
+    newTable.addFamily(family("a", 3));
+    newTable.setOwnerString("me");
+
+    assertEquals(SchemaFingerprint.of(oldTable, new HashMap<HColumnDescriptor, SchemaFingerprint>()),
+        SchemaFingerprint.of(newTable, new HashMap<HColumnDescriptor, SchemaFingerprint>()));
+    assertEquals(ChangeType.IGNORE, diffSingleTable(oldTable, newTable).type);
+
+    HTableDescriptor changedTable = new HTableDescriptor(newTable);
+    changedTable.getFamily(Bytes.toBytes("b")).setMaxVersions(4);
+    assertFalse(SchemaFingerprint.of(oldTable, new HashMap<HColumnDescriptor, SchemaFingerprint>())
+        .equals(SchemaFingerprint.of(changedTable, new HashMap<HColumnDescriptor, SchemaFingerprint>())));
+    assertEquals(ChangeType.ALTER, diffSingleTable(oldTable, changedTable).type);
+  }
+
+  /**
+   * Test that tables that say the same thing in different ways, as a hand-written file and a live cluster
+   * would, don't produce an alter.
+   */
+  @Test
+  public void testEquivalentTablesAreIgnored() throws Exception {
+    // the way a cluster reports it: only what was set, in whatever case it was set in
+    HTableDescriptor cluster = new HTableDescriptor("t");
+    cluster.setValue("READONLY", "TRUE");
+    HColumnDescriptor clusterFamily = new HColumnDescriptor("cf");
+    clusterFamily.setValue("COMPRESSION", "snappy");
+    clusterFamily.setValue("TTL", "FOREVER");
+    clusterFamily.setValue("blockcache", "TRUE");
+    cluster.addFamily(clusterFamily);
+
+    // the way a file declares it: every default filled in, in canonical form
+    HTableDescriptor declared = new HTableDescriptor("t");
+    for (HBaseSchemaAttribute a : HBaseSchemaAttribute.values()) {
+      if (a.appliesToObjectType.equals(HTableDescriptor.class) && a.defaultValue != null) declared.setValue(a.name, a.defaultValue);
+    }
+    declared.setValue("READONLY", "true");
+    HColumnDescriptor declaredFamily = new HColumnDescriptor("cf");
+    declaredFamily.setValue("COMPRESSION", "SNAPPY");
+    declaredFamily.setValue("TTL", String.valueOf(Integer.MAX_VALUE));
+    declaredFamily.setValue("DATA_BLOCK_ENCODING", "NONE");
+    declaredFamily.setValue("VERSIONS", "03");
+    declared.addFamily(declaredFamily);
+
+    assertEquals(ChangeType.IGNORE, diffSingleTable(cluster, declared).type);
+    assertEquals(ChangeType.IGNORE, diffSingleTable(declared, cluster).type);
+
+    // but a real difference is still an alter
+    declaredFamily.setValue("COMPRESSION", "GZ");
+    HBaseSchemaChange c = diffSingleTable(cluster, declared);
+    assertEquals(ChangeType.ALTER, c.type);
+    assertEquals("[t:cf:COMPRESSION:SNAPPY->GZ;]", c.propertyChanges.toString());
+  }
+
+  /**
+   * Test that each property change is classified by what it costs the cluster, and that a table only
+   * counts as metadata only if every one of its changes is.
+   */
+  @Test
+  public void testChangeImpact() throws Exception {
+    HTableDescriptor oldTable = new HTableDescriptor("t");
+    oldTable.setValue("fullSchema", "<table name=\"t\"/>");
+    oldTable.setOwnerString("alice");
+    oldTable.addFamily(family("cf", 3));
+    HTableDescriptor newTable = new HTableDescriptor("t");
+    newTable.setValue("fullSchema", "<table name=\"t\" />");
+    newTable.setOwnerString("bob");
+    newTable.addFamily(family("cf", 3));
+
+    HBaseSchemaChange c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeType.ALTER, c.type);
+    assertEquals(ChangeImpact.METADATA, c.impact);
+    assertTrue(c.isMetadataOnly());
+    assertEquals(2, c.propertyChanges.size());
+    for (PropertyChange p : c.propertyChanges) {
+      assertEquals(ChangeImpact.METADATA, p.impact);
+    }
+
+    // a family attribute that's read when regions open
+    newTable.addFamily(family("cf", 5));
+    c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeImpact.REOPEN, c.impact);
+    assertFalse(c.isMetadataOnly());
+
+    // and one that only reaches existing data once it's rewritten
+    HColumnDescriptor compressed = family("cf", 5);
+    compressed.setValue("COMPRESSION", "SNAPPY");
+    newTable.addFamily(compressed);
+    c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeImpact.REWRITE, c.impact);
+
+    // a table attribute that isn't metadata
+    newTable = new HTableDescriptor(oldTable);
+    newTable.setValue("READONLY", "true");
+    c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeImpact.REOPEN, c.impact);
+  }
+
+  /**
+   * Test that changing one family attribute of a table parsed from scoot xml is a per-family change, even
+   * though its fullSchema attribute changes with it, and that the fullSchema change is kept apart to go with it.
+   */
+  @Test
+  public void testScootXMLFamilyChange() throws Exception {
+    HTableDescriptor oldTable = parseScootXML("<schema><table name=\"t\"><columnFamilies>"
+        + "<columnFamily name=\"a\" maxVersions=\"3\"/><columnFamily name=\"b\"/></columnFamilies></table></schema>");
+    HTableDescriptor newTable = parseScootXML("<schema><table name=\"t\"><columnFamilies>"
+        + "<columnFamily name=\"a\" maxVersions=\"5\"/><columnFamily name=\"b\"/></columnFamilies></table></schema>");
+
+    HBaseSchemaChange c = diffSingleTable(oldTable, newTable);
+    assertEquals(ChangeType.ALTER, c.type);
+    assertFalse(c.tablePropertiesChanged);
+    assertEquals(1, c.columnFamilyChanges.size());
+    assertEquals(ColumnFamilyChangeType.MODIFY, c.columnFamilyChanges.get(0).type);
+    assertEquals("a", c.columnFamilyChanges.get(0).familyName);
+    assertEquals(1, c.metadataChanges.size());
+    assertEquals(HBaseScootXMLParser.FULL_SCHEMA_PROPERTY, c.metadataChanges.get(0).key);
+    assertFalse(c.isMetadataOnly());
+    assertTrue(c.hasMetadataChangesWithFamilies());
+
+    // a table attribute that isn't metadata still sends the whole descriptor, metadata included
+    newTable.setValue("READONLY", "true");
+    c = diffSingleTable(oldTable, newTable);
+    assertTrue(c.tablePropertiesChanged);
+    assertFalse(c.hasMetadataChangesWithFamilies());
+  }
+
+  /**
+   * Test that analyzing on a fork/join pool gives the same changes, in the same (table name) order,
+   * as analyzing on one thread.
+   */
+  @Test
+  public void testParallelDiffMatchesSerial() throws Exception {
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    addMixedTables(from, to);
+
+    List<HBaseSchemaChange> serial = new HBaseSchemaDiff(from, to).getTableChanges();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    List<HBaseSchemaChange> parallel;
+    try {
+      parallel = new HBaseSchemaDiff(from, to, pool).getTableChanges();
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(2000, serial.size());
+    assertEquals(serial.size(), parallel.size());
+    for (int x = 0; x < serial.size(); x++) {
+      assertEquals(serial.get(x).tableName, parallel.get(x).tableName);
+      assertEquals(serial.get(x).type, parallel.get(x).type);
+      if (x > 0) {
+        assertTrue(serial.get(x - 1).tableName.compareTo(serial.get(x).tableName) < 0);
+      }
+    }
+  }
+
+  /**
+   * Test that a stream hands back the same changes as the lists, in the same order, but only of the
+   * types it was asked for, and counts the rest.
+   */
+  @Test
+  public void testStreamMatchesLists() throws Exception {
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    addMixedTables(from, to);
+
+    HBaseSchemaDiff streamed = new HBaseSchemaDiff(from, to);
+    ChangeStream stream = streamed.streamChanges();
+    List<HBaseSchemaChange> actionable = new ArrayList<HBaseSchemaChange>();
+    for (HBaseSchemaChange c : stream) {
+      actionable.add(c);
+    }
+    try {
+      stream.iterator();
+      fail("Expected a stream to only be iterated once");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    HBaseSchemaDiff listed = new HBaseSchemaDiff(from, to);
+    List<HBaseSchemaChange> expected = new ArrayList<HBaseSchemaChange>();
+    for (HBaseSchemaChange c : listed.getTableChanges()) {
+      if (c.type != ChangeType.IGNORE) expected.add(c);
+    }
+    assertEquals(1500, actionable.size());
+    assertEquals(expected.size(), actionable.size());
+    for (int x = 0; x < expected.size(); x++) {
+      assertEquals(expected.get(x).tableName, actionable.get(x).tableName);
+      assertEquals(expected.get(x).type, actionable.get(x).type);
+      assertEquals(expected.get(x).propertyChanges.toString(), actionable.get(x).propertyChanges.toString());
+    }
+    for (ChangeType type : ChangeType.values()) {
+      assertEquals(500, stream.getCount(type));
+      assertEquals(Integer.valueOf(500), streamed.getChangeCounts().get(type));
+      assertEquals(Integer.valueOf(500), listed.getChangeCounts().get(type));
+    }
+
+    // the names of unchanged tables are only kept when asked for
+    try {
+      stream.getIgnoredTableNames();
+      fail("Expected the stream not to have kept the names of unchanged tables");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    ChangeStream ignored = streamed.streamChanges(EnumSet.noneOf(ChangeType.class), true);
+    assertFalse(ignored.hasNext());
+    List<String> expectedNames = new ArrayList<String>();
+    for (HBaseSchemaChange c : listed.getTableChangesByType(ChangeType.IGNORE)) {
+      expectedNames.add(c.tableName);
+    }
+    assertEquals(expectedNames, ignored.getIgnoredTableNames());
+  }
+
+  /**
+   * Test that once a diff's changes have been analyzed (here on a fork/join pool), streams hand back those
+   * same changes rather than analyzing the tables again.
+   */
+  @Test
+  public void testStreamUsesAnalyzedChanges() throws Exception {
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    addMixedTables(from, to);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    HBaseSchemaDiff diff;
+    try {
+      diff = new HBaseSchemaDiff(from, to, pool);
+    } finally {
+      pool.shutdown();
+    }
+    List<HBaseSchemaChange> alters = diff.getTableChangesByType(ChangeType.ALTER);
+    ChangeStream stream = diff.streamChanges(EnumSet.of(ChangeType.ALTER), true);
+    int x = 0;
+    for (HBaseSchemaChange c : stream) {
+      assertSame(alters.get(x++), c);
+    }
+    assertEquals(alters.size(), x);
+    for (ChangeType type : ChangeType.values()) {
+      assertEquals(500, stream.getCount(type));
+    }
+    assertEquals(500, stream.getIgnoredTableNames().size());
+  }
+
+  /**
+   * Add 2000 tables to the two schemas, in no particular order: a quarter only in the from schema, a quarter
+   * only in the to schema, a quarter the same in both, and a quarter altered.
+   */
+  private static void addMixedTables(HBaseSchema from, HBaseSchema to) {
+    for (int x = 0; x < 2000; x++) {
+      String name = "table" + ((x * 7919) % 2000);
+      HTableDescriptor t = new HTableDescriptor(name);
+      t.addFamily(family("cf", 3));
+      switch (x % 4) {
+        case 0: from.addTable(t); break;
+        case 1: to.addTable(t); break;
+        case 2: from.addTable(t); to.addTable(new HTableDescriptor(t)); break;
+        default:
+          from.addTable(t);
+          HTableDescriptor altered = new HTableDescriptor(name);
+          altered.addFamily(family("cf", 5));
+          to.addTable(altered);
+      }
+    }
+  }
+
+  static HColumnDescriptor family(String name, int maxVersions) {
+    HColumnDescriptor cf = new HColumnDescriptor(name);
+    cf.setMaxVersions(maxVersions);
+    return cf;
+  }
+
+  private static HTableDescriptor parseScootXML(String xml) {
+    return new HBaseScootXMLParser().parseSchemaInputStream(new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8))).getTables().get(0);
+  }
+
+  private static HBaseSchemaChange diffSingleTable(HTableDescriptor oldTable, HTableDescriptor newTable) {
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(oldTable);
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(newTable);
+    List<HBaseSchemaChange> changes = new HBaseSchemaDiff(from, to).getTableChanges();
+    assertEquals(1, changes.size());
+    return changes.get(0);
+  }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+import com.google.common.io.Resources;
+import com.salesforce.scoot.parser.HBaseSchemaSnapshot;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Tests of the on-disk schema snapshots the cached cluster parser uses
+ */
+public class HBaseSchemaSnapshotTest extends TestCase {
+
+  public void testRoundTrip() throws Exception {
+    HBaseScootXMLParser parser = new HBaseScootXMLParser();
+    parser.setResourceToParse(Resources.getResource("DiffScriptGenerationTestA.xml").getFile());
+    HBaseSchema schema = parser.parse();
+
+    File file = File.createTempFile("scoot", ".snapshot");
+    try {
+      new HBaseSchemaSnapshot("zk1,zk2:2181", 1234L, "tables:5/67;tableinfo:abc", schema).write(file);
+      HBaseSchemaSnapshot read = HBaseSchemaSnapshot.read(file);
+      assertEquals("zk1,zk2:2181", read.getZookeeperQuorum());
+      assertEquals(1234L, read.getCreatedMillis());
+      assertEquals("tables:5/67;tableinfo:abc", read.getSignature());
+      assertEquals(schema.getTables(), read.getSchema().getTables());
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testMissingOrOtherFormat() throws Exception {
+    File file = File.createTempFile("scoot", ".snapshot");
+    try {
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+      out.writeInt(-1);
+      out.close();
+      assertNull(HBaseSchemaSnapshot.read(file));
+    } finally {
+      file.delete();
+    }
+    assertNull(HBaseSchemaSnapshot.read(file));
+  }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.HBaseSchemaDiff.HBaseSchemaChange;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Tests of keeping tables in their compact form, and of indexing them by name
+ */
+public class HBaseSchemaTest extends TestCase {
+
+  private static final String[] SCHEMAS = {
+    "src/test/resources/DiffScriptGenerationTestA.xml",
+    "src/test/resources/DiffScriptGenerationTestB.xml",
+    "src/test/resources/DiffScriptGenerationTestC.xml",
+    "src/test/resources/ScootXMLParserTest.xml",
+  };
+
+  /**
+   * Every table comes back out exactly as it went in, once it's normalized
+   */
+  public void testRoundTrip() {
+    for (String file : SCHEMAS) {
+      HBaseScootXMLParser parser = new HBaseScootXMLParser();
+      parser.setResourceToParse(file);
+      for (HTableDescriptor original : parser.parse().getTables()) {
+        HBaseSchema schema = new HBaseSchema();
+        schema.addTable(original);
+        assertSame(SchemaNormalizer.normalize(original), schema.getTables().get(0));
+      }
+    }
+
+    HTableDescriptor odd = new HTableDescriptor("odd");
+    odd.setValue("MAX_FILESIZE", "0100");
+    odd.setValue("READONLY", "TRUE");
+    odd.setValue(new byte[] { 'b', 'i', 'n' }, new byte[] { (byte)0xff, 0, (byte)0xc3 });
+    HColumnDescriptor cf = new HColumnDescriptor("cf");
+    cf.setMaxVersions(7);
+    cf.setBlocksize(16384);
+    cf.setValue("custom", "value");
+    odd.addFamily(cf);
+    HBaseSchema schema = new HBaseSchema();
+    schema.addTable(odd);
+    HTableDescriptor copy = schema.getTables().get(0);
+    assertSame(SchemaNormalizer.normalize(odd), copy);
+    assertEquals("100", copy.getValue("MAX_FILESIZE"));
+    assertEquals("true", copy.getValue("READONLY"));
+    assertEquals("false", copy.getValue("DEFERRED_LOG_FLUSH"));
+    assertEquals("value", copy.getFamily("cf".getBytes()).getValue("custom"));
+    assertEquals("7", copy.getFamily("cf".getBytes()).getValue("VERSIONS"));
+    assertEquals(7, copy.getFamily("cf".getBytes()).getMaxVersions());
+    assertEquals(16384, copy.getFamily("cf".getBytes()).getBlocksize());
+  }
+
+  private static void assertSame(HTableDescriptor expected, HTableDescriptor actual) {
+    assertEquals(expected.getNameAsString(), actual.getNameAsString());
+    assertEquals(expected.getValues(), actual.getValues());
+    assertEquals(expected.getFamiliesKeys(), actual.getFamiliesKeys());
+    for (HColumnDescriptor cf : expected.getFamilies()) {
+      assertEquals(cf.getValues(), actual.getFamily(cf.getName()).getValues());
+    }
+  }
+
+  public void testSharing() {
+    HBaseSchema schema = new HBaseSchema();
+    for (int x = 0; x < 3; x++) {
+      HTableDescriptor t = new HTableDescriptor("t" + x);
+      t.addFamily(new HColumnDescriptor("d"));
+      schema.addTable(t);
+    }
+    List<CompactTable> tables = schema.getCompactTables();
+    assertTrue(tables.get(0).families[0] == tables.get(1).families[0]);
+    assertTrue(tables.get(1).families[0] == tables.get(2).families[0]);
+    assertTrue(tables.get(0).values.keys[0] == tables.get(1).values.keys[0]);
+
+    // changing a table after adding it doesn't change the schema
+    HTableDescriptor t = schema.getTables().get(0);
+    t.getFamily("d".getBytes()).setMaxVersions(9);
+    assertEquals(HColumnDescriptor.DEFAULT_VERSIONS, schema.getTables().get(0).getFamily("d".getBytes()).getMaxVersions());
+  }
+
+  public void testDiffOnlyMakesChangedTables() {
+    HBaseSchema from = new HBaseSchema();
+    HBaseSchema to = new HBaseSchema();
+    for (int x = 0; x < 3; x++) {
+      HTableDescriptor t = new HTableDescriptor("t" + x);
+      t.addFamily(new HColumnDescriptor("d"));
+      from.addTable(t);
+      if (x == 2) t.getFamily("d".getBytes()).setMaxVersions(5);
+      to.addTable(t);
+    }
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    for (HBaseSchemaChange c : diff.getTableChangesByType(ChangeType.IGNORE)) {
+      assertNull(c.oldTable);
+      assertNull(c.newTable);
+    }
+    assertEquals(2, diff.getTableChangesByType(ChangeType.IGNORE).size());
+    HBaseSchemaChange alter = diff.getTableChangesByType(ChangeType.ALTER).get(0);
+    assertEquals("t2", alter.tableName);
+    assertEquals(5, alter.newTable.getFamily("d".getBytes()).getMaxVersions());
+  }
+
+  private static HTableDescriptor table(String name) {
+    HTableDescriptor t = new HTableDescriptor(name);
+    t.addFamily(new HColumnDescriptor("d"));
+    return t;
+  }
+
+  public void testLookupAndOrder() {
+    HBaseSchema schema = new HBaseSchema();
+    schema.addTable(table("zebra"));
+    schema.addTable(table("apple"));
+    schema.addTable(table("mango"));
+    assertEquals(3, schema.size());
+    assertEquals(Arrays.asList("apple", "mango", "zebra"), schema.getTableNames());
+    assertEquals("apple", schema.getTables().get(0).getNameAsString());
+    assertEquals("zebra", schema.getTables().get(2).getNameAsString());
+    assertEquals("mango", schema.getTable("mango").getNameAsString());
+    assertNull(schema.getTable("kiwi"));
+    assertTrue(schema.hasTable("zebra"));
+    assertFalse(schema.hasTable("kiwi"));
+    assertEquals(HBaseSchema.getFingerprint(table("apple")), schema.getFingerprint("apple"));
+
+    // adding a table keeps the order
+    schema.addTable(table("banana"));
+    assertEquals(Arrays.asList("apple", "banana", "mango", "zebra"), schema.getTableNames());
+  }
+
+  public void testDuplicatesRejected() {
+    HBaseSchema schema = new HBaseSchema();
+    schema.addTable(table("t"));
+    try {
+      schema.addTable(table("t"));
+      fail("Expected the duplicate to be rejected");
+    } catch (ScootException e) {
+      assertEquals("Schema contains duplicate tables:t", e.getMessage());
+    }
+    assertEquals(1, schema.size());
+  }
+
+  public void testSnapshot() {
+    HBaseSchema schema = new HBaseSchema();
+    schema.addTable(table("a"));
+    schema.setSplitPoints("a", new byte[][] { "m".getBytes() });
+    HBaseSchema snapshot = schema.snapshot();
+    assertTrue(snapshot.isReadOnly());
+    assertSame(snapshot, snapshot.snapshot());
+
+    // changing the schema afterwards doesn't change the snapshot
+    schema.addTable(table("b"));
+    schema.setSplitPoints("b", new byte[][] { "n".getBytes() });
+    assertEquals(Arrays.asList("a", "b"), schema.getTableNames());
+    assertEquals(Arrays.asList("a"), snapshot.getTableNames());
+    assertNull(snapshot.getSplitPoints("b"));
+    assertNotNull(snapshot.getSplitPoints("a"));
+
+    try {
+      snapshot.addTable(table("c"));
+      fail("Expected the snapshot to be read-only");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testDiffMergesNames() {
+    HBaseSchema from = new HBaseSchema();
+    from.addTable(table("b"));
+    from.addTable(table("d"));
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(table("c"));
+    to.addTable(table("d"));
+    to.addTable(table("a"));
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(from, to);
+    StringBuilder changes = new StringBuilder();
+    for (HBaseSchemaChange c : diff.getTableChanges()) {
+      changes.append(c.type).append(' ').append(c.tableName).append(';');
+    }
+    assertEquals("CREATE a;DROP b;CREATE c;IGNORE d;", changes.toString());
+
+    // the diff isn't affected by later changes to its schemas
+    to.addTable(table("e"));
+    assertEquals(4, diff.getTableChanges().size());
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.google.common.io.Resources;
+import com.salesforce.scoot.parser.HBaseSchemaParser;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+import com.salesforce.scoot.parser.HBaseScootXMLStreamingParser;
+
+/**
+ * Make sure the streaming parser comes up with exactly the same schema as the DOM parser,
+ * including the fullSchema text it records for each table.
+ */
+public class HBaseScootXMLStreamingParserTest extends TestCase {
+
+  private static final String FULL_SCHEMA = "fullSchema";
+
+  private static final String[] SCOOT_FILES = {
+    "DiffScriptGenerationTestA.xml",
+    "DiffScriptGenerationTestB.xml",
+    "DiffScriptGenerationTestC.xml",
+    "DiffScriptGenerationTestD.xml",
+    "DiffScriptGenerationTestE.xml",
+    "DiffScriptGenerationTestF.xml",
+    "EmptySchema.xml",
+    "ScootXMLParserTest.xml",
+    "StreamingParserTest.xml",
+  };
+
+  public void testSameAsDOMParser() throws Exception {
+    for (String file : SCOOT_FILES) {
+      List<HTableDescriptor> expected = parse(new HBaseScootXMLParser(), file);
+      List<HTableDescriptor> actual = parse(new HBaseScootXMLStreamingParser(), file);
+      assertEquals(file, expected.size(), actual.size());
+      for (int x = 0; x < expected.size(); x++) {
+        assertEquals(file, expected.get(x).getValue(FULL_SCHEMA),
+            actual.get(x).getValue(FULL_SCHEMA));
+        assertEquals(file, expected.get(x), actual.get(x));
+      }
+    }
+  }
+
+  public void testMarkupInsideTable() throws Exception {
+    List<HTableDescriptor> tables = parse(new HBaseScootXMLStreamingParser(), "StreamingParserTest.xml");
+    assertEquals(2, tables.size());
+    HTableDescriptor table = tables.get(0);
+    assertEquals("quoting", table.getNameAsString());
+    assertEquals("a & b <c> \"d\"\t\n", table.getOwnerString());
+    assertEquals(2, table.getColumnFamilies().length);
+    String fullSchema = table.getValue(FULL_SCHEMA);
+    assertTrue(fullSchema, fullSchema.contains("<!-- a comment inside the table -->"));
+    assertTrue(fullSchema, fullSchema.contains("<![CDATA[<raw> & stuff]]>"));
+    assertTrue(fullSchema, fullSchema.contains("<empty/>"));
+  }
+
+  private static List<HTableDescriptor> parse(HBaseSchemaParser parser, String file) {
+    parser.setResourceToParse(Resources.getResource(file).getFile());
+    return parser.parse().getTables();
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.google.common.io.Resources;
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.tuner.HBaseWorkloadTuner;
+import com.salesforce.scoot.tuner.WorkloadMetrics;
+
+/**
+ * Tests of tuning a schema for the workload in a metrics snapshot
+ */
+public class HBaseWorkloadTunerTest extends TestCase {
+
+  public void testTune() {
+    HBaseSchema current = new HBaseSchema();
+    current.addTable(table("lookups", "d"));
+    current.addTable(table("events", "e"));
+    current.addTable(table("log", "l"));
+    current.addTable(table("quiet", "q"));
+    WorkloadMetrics metrics = WorkloadMetrics.read(new File(Resources.getResource("WorkloadMetrics.json").getFile()));
+
+    HBaseWorkloadTuner tuner = new HBaseWorkloadTuner();
+    HBaseSchema tuned = tuner.tune(current, metrics);
+
+    HColumnDescriptor lookups = tuned.getTable("lookups").getFamily("d".getBytes());
+    assertEquals("ROW", lookups.getValue("BLOOMFILTER"));
+    assertEquals("16384", lookups.getValue("BLOCKSIZE"));
+    assertEquals("FAST_DIFF", lookups.getValue("DATA_BLOCK_ENCODING"));
+    assertEquals("true", lookups.getValue("IN_MEMORY"));
+
+    HColumnDescriptor events = tuned.getTable("events").getFamily("e".getBytes());
+    assertEquals("131072", events.getValue("BLOCKSIZE"));
+    assertEquals("false", events.getValue("BLOCKCACHE"));
+
+    assertEquals(String.valueOf(HTableDescriptor.DEFAULT_MEMSTORE_FLUSH_SIZE * 2), tuned.getTable("log").getValue("MEMSTORE_FLUSHSIZE"));
+
+    // the current schema is left alone, and the quiet table isn't changed at all
+    assertEquals("NONE", current.getTable("lookups").getFamily("d".getBytes()).getValue("DATA_BLOCK_ENCODING"));
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(current, tuned);
+    assertEquals(3, diff.getTableChangesByType(ChangeType.ALTER).size());
+    assertEquals(1, diff.getTableChangesByType(ChangeType.IGNORE).size());
+    assertFalse(tuner.getRecommendations().isEmpty());
+  }
+
+  public void testJmxDump() throws Exception {
+    File file = File.createTempFile("scoot", ".json");
+    try {
+      FileWriter out = new FileWriter(file);
+      out.write("{\"beans\": [{\"name\": \"hadoop:service=RegionServer,name=RegionServerDynamicStatistics\","
+          + " \"tbl.a.b.cf.f.get_num_ops\": 70, \"tbl.a.b.cf.f.multiput_num_ops\": 30,"
+          + " \"tbl.a.b.cf.f.bt.Data.blockCacheHitCnt\": 3, \"tbl.a.b.cf.f.bt.Data.blockCacheMissCnt\": 1,"
+          + " \"tbl.a.b.cf.f.storeFileCount\": 6, \"requests\": 5}]}");
+      out.close();
+      WorkloadMetrics.FamilyStats stats = WorkloadMetrics.read(file).getFamilyStats("a.b", "f");
+      assertEquals(70, stats.reads);
+      assertEquals(30, stats.writes);
+      assertEquals(0.75, stats.getBlockCacheHitRatio(), 0.001);
+      assertEquals(6.0, stats.getStoreFilesPerRegion(), 0.001);
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static HTableDescriptor table(String name, String family) {
+    HTableDescriptor t = new HTableDescriptor(name);
+    t.addFamily(new HColumnDescriptor(family));
+    return t;
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.hfile.Compression;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+import com.salesforce.scoot.tuner.HFileCodecEvaluator;
+import com.salesforce.scoot.tuner.HFileCodecEvaluator.Result;
+
+/**
+ * Tests of picking a codec and encoding from sampled HFiles
+ */
+public class HFileCodecEvaluatorTest extends TestCase {
+
+  private File dir;
+
+  @Override protected void setUp() throws Exception {
+    dir = new File(System.getProperty("java.io.tmpdir"), "scoot-codecs-" + System.nanoTime());
+    // laid out like an HBase root dir, so the table and family can be worked out
+    File family = new File(dir, "events/0123456789abcdef/e");
+    assertTrue(family.mkdirs());
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    HFile.Writer writer = HFile.getWriterFactoryNoCache(conf).withPath(fs, new Path(family.getPath(), "hfile1"))
+        .withBlockSize(8192).withCompression(Compression.Algorithm.NONE).withComparator(KeyValue.KEY_COMPARATOR).create();
+    // long shared row prefixes and repetitive values, which both encoding and compression do well on
+    for (int x = 0; x < 5000; x++) {
+      byte[] row = Bytes.toBytes(String.format("customer-000000042-event-%08d", x));
+      writer.append(new KeyValue(row, Bytes.toBytes("e"), Bytes.toBytes("type"), 1L, Bytes.toBytes("click" + (x % 3))));
+    }
+    writer.close();
+    new File(dir, "events/0123456789abcdef/.regioninfo").createNewFile();
+  }
+
+  @Override protected void tearDown() throws Exception {
+    FileSystem.getLocal(new Configuration()).delete(new Path(dir.getPath()), true);
+  }
+
+  public void testEvaluate() throws Exception {
+    HFileCodecEvaluator evaluator = new HFileCodecEvaluator(new Configuration());
+    evaluator.setBlockSize(16384);
+    List<Result> results = evaluator.evaluate(new Path(dir.getPath()));
+
+    // every encoding with at least NONE and GZ
+    assertTrue(results.size() >= DataBlockEncoding.values().length * 2);
+    Result plain = null;
+    for (Result r : results) {
+      assertTrue(r.rawBytes > 0);
+      assertTrue(r.seeks > 0);
+      if (r.encoding == DataBlockEncoding.NONE && r.compression == Compression.Algorithm.NONE) plain = r;
+    }
+    assertNotNull(plain);
+    assertEquals(plain.rawBytes, plain.compressedBytes);
+
+    // with no throughput floor, the smallest wins
+    evaluator.setMinDecodeMBPerSecond(0);
+    Result winner = evaluator.pickWinner(results);
+    assertTrue(winner.compressedBytes < plain.compressedBytes / 2);
+    for (Result r : results) {
+      assertTrue(r.compressedBytes >= winner.compressedBytes);
+    }
+
+    // and when nothing is fast enough, the fastest
+    evaluator.setMinDecodeMBPerSecond(Double.MAX_VALUE);
+    Result fastest = evaluator.pickWinner(results);
+    for (Result r : results) {
+      assertTrue(r.getDecodeMBPerSecond() <= fastest.getDecodeMBPerSecond());
+    }
+  }
+
+  public void testWriteProposal() throws Exception {
+    HFileCodecEvaluator evaluator = new HFileCodecEvaluator(new Configuration());
+    Result winner = evaluator.pickWinner(evaluator.evaluate(new Path(dir.getPath(), "*/*/e")));
+    File output = new File(dir, "proposal.xml");
+    HFileCodecEvaluator.writeProposal(null, "events", "e", winner, output);
+
+    HTableDescriptor table = new HBaseScootXMLParser().parseSchemaInputStream(new FileInputStream(output)).getTables().get(0);
+    assertEquals("events", table.getNameAsString());
+    HColumnDescriptor family = table.getFamily(Bytes.toBytes("e"));
+    assertEquals(winner.compression.name(), family.getValue(HColumnDescriptor.COMPRESSION));
+    assertEquals(winner.encoding.name(), family.getValue(HColumnDescriptor.DATA_BLOCK_ENCODING));
+
+    // updating an existing schema needs the family to be there
+    try {
+      HFileCodecEvaluator.writeProposal(output, "events", "missing", winner, new File(dir, "other.xml"));
+      fail();
+    } catch (ScootException e) {
+      // expected
+    }
+  }
+
+}
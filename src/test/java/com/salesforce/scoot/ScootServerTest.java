@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import junit.framework.TestCase;
+
+import com.salesforce.scoot.server.ScootClient;
+import com.salesforce.scoot.server.ScootServer;
+
+/**
+ * Tests of running scoot commands through the daemon
+ */
+public class ScootServerTest extends TestCase {
+
+  private File portFile;
+  private ScootServer server;
+
+  @Override protected void setUp() throws Exception {
+    portFile = File.createTempFile("scoot-daemon-test", ".port");
+    server = new ScootServer(0, portFile);
+    server.setWorkers(2);
+    server.start();
+  }
+
+  @Override protected void tearDown() throws Exception {
+    server.stop();
+    portFile.delete();
+  }
+
+  public void testRun() throws Exception {
+    File output = File.createTempFile("ScootServerTest", ".rb");
+    assertTrue(output.delete());
+    try {
+      String[] args = { "src/test/resources/DiffScriptGenerationTestA.xml", "src/test/resources/DiffScriptGenerationTestB.xml", "-o", output.getPath() };
+      assertTrue(ScootClient.run(portFile, args, System.out));
+      String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/DiffScriptGenerationTestResultAB.rb")), "UTF-8");
+      assertEquals(expected, new String(Files.readAllBytes(output.toPath()), "UTF-8"));
+      assertEquals(2, server.getCache().getMisses());
+
+      // the second time, both schemas come from the cache
+      assertTrue(output.delete());
+      assertTrue(ScootClient.run(portFile, args, System.out));
+      assertEquals(expected, new String(Files.readAllBytes(output.toPath()), "UTF-8"));
+      assertEquals(2, server.getCache().getHits());
+      assertTrue(ScootClient.status(portFile).contains("hits: 2"));
+    } finally {
+      output.delete();
+    }
+  }
+
+  public void testOutputAndErrors() throws Exception {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    assertTrue(ScootClient.run(portFile, new String[] { "-f", "src/test/resources/DiffScriptGenerationTestA.xml", "-l" }, new PrintStream(buffer, true, "UTF-8")));
+    assertTrue(buffer.toString("UTF-8").contains("NO_COMPRESSION"));
+
+    try {
+      ScootClient.run(portFile, new String[] { "-f", "src/test/resources/DiffScriptGenerationTestA.xml", "-fp", "no.such.Parser", "-l" }, System.out);
+      fail();
+    } catch (ScootException e) {
+      assertTrue(e.getMessage().contains("no.such.Parser"));
+    }
+  }
+
+  public void testNoDaemon() throws Exception {
+    assertTrue(ScootClient.stop(portFile));
+    server.awaitStop();
+    assertFalse(portFile.exists());
+    assertFalse(ScootClient.run(portFile, new String[] { "-h" }, System.out));
+    assertNull(ScootClient.status(portFile));
+  }
+
+}
@@ -57,16 +57,77 @@ public class ScootTest extends TestCase {
       new Scoot(null).run();
       String output = Bytes.toString(baos.toByteArray());
       assertEquals("usage: scoot\n" + 
-        " -f,--from <arg>           The schema you want to start with.\n" +
-        " -fp,--from-parser <arg>   The parser to use for the 'from' schema. If not\n" +
-        "                           supplied, the tool will attempt to auto-detect\n" +
-        "                           it.\n" +
-        " -h,--help <arg>           Get help on using this utility.\n" +
-        " -o,--output <arg>         The name of the file to output.\n" +
-        " -t,--to <arg>             The schema you want to end up with.\n" +
-        " -tp,--to-parser <arg>     The parser to use for the 'to' schema. If not\n" +
-        "                           supplied, the tool will attempt to auto-detect\n" +
-        "                           it.\n", 
+        " -a,--apply                       Apply the changes directly to the 'from'\n" +
+        "                                  cluster instead of only writing a\n" +
+        "                                  script.\n" +
+        " -as,--alter-strategy <arg>       How to alter existing tables: OFFLINE\n" +
+        "                                  (disable, modify, enable; the default),\n" +
+        "                                  ONLINE (modify while enabled) or AUTO\n" +
+        "                                  (online, falling back to offline if the\n" +
+        "                                  cluster refuses).\n" +
+        " -cb,--compact-mb-per-sec <arg>   When major compacting, how many MB of\n" +
+        "                                  store files per second may be handed to\n" +
+        "                                  compactions. Defaults to no limit.\n" +
+        " -cr,--compact-rs-limit <arg>     When major compacting, how many regions\n" +
+        "                                  may compact at the same time on a single\n" +
+        "                                  region server. Defaults to 1.\n" +
+        " -dw,--diff-workers <arg>         How many threads to compare tables on.\n" +
+        "                                  Defaults to 1.\n" +
+        " -f,--from <arg>                  The schema you want to start with.\n" +
+        " -fp,--from-parser <arg>          The parser to use for the 'from' schema.\n" +
+        "                                  If not supplied, the tool will attempt\n" +
+        "                                  to auto-detect it.\n" +
+        " -h,--help <arg>                  Get help on using this utility.\n" +
+        " -l,--lint                        Check the 'to' schema (or the 'from'\n" +
+        "                                  schema, if that's the only one) for\n" +
+        "                                  settings likely to hurt performance, and\n" +
+        "                                  print what's found. Without -o or -a,\n" +
+        "                                  only the check is done.\n" +
+        " -lf,--lint-fail-on <arg>         When linting, fail if anything is found\n" +
+        "                                  at this severity or above: INFO, WARNING\n" +
+        "                                  or ERROR. Defaults to OFF (never fail).\n" +
+        " -lr,--lint-rules <arg>           When linting, a properties file of rule\n" +
+        "                                  severities (e.g. NO_COMPRESSION=ERROR,\n" +
+        "                                  or OFF), 'failOn' and 'maxVersions'.\n" +
+        " -mc,--major-compact              When applying, major compact the regions\n" +
+        "                                  of tables whose column families changed\n" +
+        "                                  an attribute that only applies to\n" +
+        "                                  rewritten files (compression, encoding,\n" +
+        "                                  block size, bloom filter).\n" +
+        " -ms,--metadata-strategy <arg>    How to alter existing tables whose only\n" +
+        "                                  changes are to metadata no region server\n" +
+        "                                  reads (e.g. fullSchema, OWNER), which\n" +
+        "                                  never disables them: ONLINE (modify them\n" +
+        "                                  all online after the other changes; the\n" +
+        "                                  default) or DEFER (leave them until\n" +
+        "                                  their next alter).\n" +
+        " -nd,--no-daemon                  Do the work in this process, even if a\n" +
+        "                                  scoot daemon is running.\n" +
+        " -o,--output <arg>                The name of the file to output.\n" +
+        " -pw,--parse-workers <arg>        When parsing a live cluster, how many\n" +
+        "                                  threads fetch table descriptors at the\n" +
+        "                                  same time. Defaults to 1 (all in one\n" +
+        "                                  call).\n" +
+        " -rs,--rs-limit <arg>             When applying with more than one worker,\n" +
+        "                                  how many table changes may touch a\n" +
+        "                                  single region server at the same time.\n" +
+        "                                  Defaults to no limit.\n" +
+        " -sp,--split-points <arg>         When the 'to' schema is a live cluster,\n" +
+        "                                  create new tables with the split points\n" +
+        "                                  its tables have: REGIONS (their current\n" +
+        "                                  region start keys) or SAMPLE (evenly\n" +
+        "                                  spaced keys from a sample of their\n" +
+        "                                  rows). Defaults to NONE.\n" +
+        " -t,--to <arg>                    The schema you want to end up with.\n" +
+        " -tp,--to-parser <arg>            The parser to use for the 'to' schema.\n" +
+        "                                  If not supplied, the tool will attempt\n" +
+        "                                  to auto-detect it.\n" +
+        " -w,--workers <arg>               When applying, how many tables to change\n" +
+        "                                  at the same time. Defaults to 1.\n" +
+        " -wm,--workload-metrics <arg>     Instead of a 'to' schema, use the 'from'\n" +
+        "                                  schema tuned for the workload in this\n" +
+        "                                  metrics file (scoot's per-region JSON,\n" +
+        "                                  or a region server JMX JSON dump).\n", 
         output);
     } finally {
       System.setOut(originalStdOut);
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.base.Charsets;
+import com.salesforce.scoot.SplitPointCalculator.KeyPart;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+import com.salesforce.scoot.scripter.HBaseRubySchemaPatchScripter;
+
+/**
+ * Tests of the split keys new tables get pre-split with
+ */
+public class SplitPointCalculatorTest extends TestCase {
+
+  private static final List<KeyPart> NO_KEY = Collections.emptyList();
+
+  public void testNotPresplit() {
+    assertNull(SplitPointCalculator.getSplitPoints(new HTableDescriptor("t")));
+  }
+
+  public void testLegacySplitMatchesHBaseAdmin() {
+    byte[][] splits = SplitPointCalculator.getSplitPoints(12, null, 0, NO_KEY);
+    byte[][] expected = Bytes.split(new byte[] { 0x00 }, new byte[] { (byte)0xFF }, 9);
+    assertEquals(11, splits.length);
+    for (int x = 0; x < expected.length; x++) {
+      assertTrue(Bytes.equals(expected[x], splits[x]));
+    }
+  }
+
+  public void testSplitAlgorithms() {
+    byte[][] hex = SplitPointCalculator.getSplitPoints(4, "HexStringSplit", 0, NO_KEY);
+    assertEquals(3, hex.length);
+    assertEquals("40000000", Bytes.toString(hex[0]));
+    assertEquals("80000000", Bytes.toString(hex[1]));
+    assertEquals("c0000000", Bytes.toString(hex[2]));
+
+    byte[][] uniform = SplitPointCalculator.getSplitPoints(4, "org.apache.hadoop.hbase.util.RegionSplitter$UniformSplit", 0, NO_KEY);
+    assertEquals(3, uniform.length);
+    assertSorted(uniform);
+
+    try {
+      SplitPointCalculator.getSplitPoints(4, "java.lang.String", 0, NO_KEY);
+      fail("Expected a ScootException");
+    } catch (ScootException e) {
+      // expected
+    }
+  }
+
+  public void testKeyPartTypes() {
+    byte[][] ids = SplitPointCalculator.getSplitPoints(4, null, 0,
+        Collections.singletonList(new KeyPart("id", "String", 15, false)));
+    assertEquals(3, ids.length);
+    assertEquals("F", Bytes.toString(ids[0], 0, 1));
+    assertEquals("V", Bytes.toString(ids[1], 0, 1));
+    assertEquals("k", Bytes.toString(ids[2], 0, 1));
+    assertSorted(ids);
+
+    byte[][] bytes = SplitPointCalculator.getSplitPoints(4, null, 0,
+        Collections.singletonList(new KeyPart("b", "Byte", 1, false)));
+    assertEquals(3, bytes.length);
+    assertTrue(Bytes.equals(new byte[] { 0x40 }, bytes[0]));
+    assertTrue(Bytes.equals(new byte[] { (byte)0xC0 }, bytes[2]));
+  }
+
+  public void testInvertedKeyPart() {
+    // an inverted id is stored as the flipped bytes of its characters, so the regions run in descending id order
+    byte[][] ids = SplitPointCalculator.getSplitPoints(4, null, 0,
+        Collections.singletonList(new KeyPart("id", "String", 15, true)));
+    assertEquals(3, ids.length);
+    assertEquals("kUzz", Bytes.toString(invert(ids[0])));
+    assertEquals("Uzzz", Bytes.toString(invert(ids[1])));
+    assertEquals("FUzz", Bytes.toString(invert(ids[2])));
+    assertSorted(ids);
+
+    // flipping every byte covers the same binary key space
+    byte[][] bytes = SplitPointCalculator.getSplitPoints(4, null, 0,
+        Collections.singletonList(new KeyPart("b", "Byte", 1, true)));
+    assertTrue(Bytes.equals(new byte[] { 0x40 }, bytes[0]));
+    assertTrue(Bytes.equals(new byte[] { (byte)0xC0 }, bytes[2]));
+  }
+
+  public void testSaltBuckets() {
+    byte[][] splits = SplitPointCalculator.getSplitPoints(8, null, 4,
+        Collections.singletonList(new KeyPart("h", "Hex", 8, false)));
+    // a boundary per bucket, and one more inside each
+    assertEquals(7, splits.length);
+    assertTrue(Bytes.equals(Bytes.add(new byte[] { 0x00 }, Bytes.toBytes("8000")), splits[0]));
+    assertTrue(Bytes.equals(new byte[] { 0x01 }, splits[1]));
+    assertTrue(Bytes.equals(Bytes.add(new byte[] { 0x03 }, Bytes.toBytes("8000")), splits[6]));
+    assertSorted(splits);
+  }
+
+  public void testFromScootXML() {
+    String xml = "<schema><table name=\"t\" numRegionsToPreSplitOnCreation=\"16\" saltBuckets=\"16\">"
+        + "<key><keyPart name=\"k\" type=\"String\" length=\"15\" inverted=\"false\"/></key>"
+        + "<columnFamilies><columnFamily name=\"cf\"/></columnFamilies></table></schema>";
+    HTableDescriptor table = new HBaseScootXMLParser().parseSchemaInputStream(
+        new ByteArrayInputStream(xml.getBytes(Charsets.UTF_8))).getTables().iterator().next();
+    assertEquals(1, SplitPointCalculator.getKeyParts(table.getValue(HBaseScootXMLParser.FULL_SCHEMA_PROPERTY)).size());
+    byte[][] splits = SplitPointCalculator.getSplitPoints(table);
+    assertEquals(15, splits.length);
+    for (int x = 0; x < splits.length; x++) {
+      assertTrue(Bytes.equals(new byte[] { (byte)(x + 1) }, splits[x]));
+    }
+  }
+
+  public void testCapturedSplitPointsWin() {
+    HTableDescriptor table = new HTableDescriptor("t");
+    table.addFamily(new HColumnDescriptor("cf"));
+    table.setValue(HBaseSchemaAttribute.NUMREGIONS.name(), "12");
+    HBaseSchema to = new HBaseSchema();
+    to.addTable(table);
+    assertEquals(11, SplitPointCalculator.getSplitPoints(to, table).length);
+
+    to.setSplitPoints("t", new byte[][] { Bytes.toBytes("m") });
+    String script = new HBaseRubySchemaPatchScripter(new HBaseSchemaDiff(new HBaseSchema(), to)).generateScript();
+    assertTrue(script.contains("splits = Java::byte[][1].new\nsplits[0] = Bytes.toBytesBinary('m')\nadmin.createTable(table, splits)\n"));
+  }
+
+  public void testBinaryString() {
+    byte[] key = new byte[] { 0x00, 'a', '\'', '\\', (byte)0xFF };
+    String s = SplitPointCalculator.toBinaryString(key);
+    assertEquals("\\x00a\\x27\\x5C\\xFF", s);
+    assertTrue(Bytes.equals(key, Bytes.toBytesBinary(s)));
+  }
+
+  private static byte[] invert(byte[] key) {
+    byte[] result = new byte[key.length];
+    for (int x = 0; x < key.length; x++) {
+      result[x] = (byte)~key[x];
+    }
+    return result;
+  }
+
+  private static void assertSorted(byte[][] splits) {
+    for (int x = 1; x < splits.length; x++) {
+      assertTrue(Bytes.compareTo(splits[x - 1], splits[x]) < 0);
+    }
+  }
+}
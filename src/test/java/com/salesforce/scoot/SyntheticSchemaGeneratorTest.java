@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.scoot;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hbase.HTableDescriptor;
+
+import com.salesforce.scoot.HBaseSchemaDiff.ChangeType;
+import com.salesforce.scoot.generator.SyntheticSchemaGenerator;
+import com.salesforce.scoot.generator.SyntheticSchemaGenerator.Version;
+import com.salesforce.scoot.parser.HBasePhoenixXMLParser;
+import com.salesforce.scoot.parser.HBaseScootXMLParser;
+
+/**
+ * Tests of the synthetic schema generator
+ */
+public class SyntheticSchemaGeneratorTest extends TestCase {
+
+  public void testSameSeedSameSchema() throws Exception {
+    assertEquals(scootXML(generator(7), Version.TO), scootXML(generator(7), Version.TO));
+    assertFalse(scootXML(generator(7), Version.TO).equals(scootXML(generator(8), Version.TO)));
+  }
+
+  /**
+   * The in-memory schema should be exactly what parsing the generated file gives
+   */
+  public void testInMemorySchemaMatchesFile() throws Exception {
+    SyntheticSchemaGenerator generator = generator(3);
+    File file = File.createTempFile("generated", ".xml");
+    try {
+      Writer out = new FileWriter(file);
+      generator.writeScootXML(Version.TO, out);
+      out.close();
+      HBaseScootXMLParser parser = new HBaseScootXMLParser();
+      parser.setResourceToParse(file.getPath());
+      List<HTableDescriptor> parsed = parser.parse().getTables();
+      List<HTableDescriptor> generated = generator.getSchema(Version.TO).getTables();
+      assertEquals(parsed, generated);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testPhoenixXML() throws Exception {
+    SyntheticSchemaGenerator generator = generator(3);
+    File file = File.createTempFile("generated", ".xml");
+    try {
+      Writer out = new FileWriter(file);
+      generator.writePhoenixXML(Version.FROM, out);
+      out.close();
+      HBasePhoenixXMLParser parser = new HBasePhoenixXMLParser();
+      parser.setResourceToParse(file.getPath());
+      assertEquals(500, parser.parse().getTables().size());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * The TO version should differ from the FROM version at roughly the configured rates
+   */
+  public void testMutationRates() throws Exception {
+    SyntheticSchemaGenerator generator = generator(11);
+    generator.setMutationRates(0.1, 0.02, 0.04);
+    HBaseSchemaDiff diff = new HBaseSchemaDiff(generator.getSchema(Version.FROM), generator.getSchema(Version.TO));
+    assertEquals(20, diff.getTableChangesByType(ChangeType.CREATE).size());
+    int alters = diff.getTableChangesByType(ChangeType.ALTER).size();
+    int drops = diff.getTableChangesByType(ChangeType.DROP).size();
+    assertTrue("alters: " + alters, alters > 25 && alters < 75);
+    assertTrue("drops: " + drops, drops > 0 && drops < 25);
+    assertEquals(500, alters + drops + diff.getTableChangesByType(ChangeType.IGNORE).size());
+  }
+
+  private static SyntheticSchemaGenerator generator(long seed) {
+    SyntheticSchemaGenerator generator = new SyntheticSchemaGenerator();
+    generator.setSeed(seed);
+    generator.setTableCount(500);
+    return generator;
+  }
+
+  private static String scootXML(SyntheticSchemaGenerator generator, Version version) throws Exception {
+    StringWriter out = new StringWriter();
+    generator.writeScootXML(version, out);
+    return out.toString();
+  }
+}
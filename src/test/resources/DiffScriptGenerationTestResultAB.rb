@@ -43,9 +43,53 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
+KNOWN_ATTRIBUTES = {
+    "DEFERRED_LOG_FLUSH" => ["false", "boolean", []],
+    "IS_META" => ["false", "boolean", []],
+    "IS_ROOT" => ["false", "boolean", []],
+    "MAX_FILESIZE" => ["10737418240", "number", []],
+    "MEMSTORE_FLUSHSIZE" => ["134217728", "number", []],
+    "OWNER" => [nil, "string", []],
+    "READONLY" => ["false", "boolean", []],
+    "NUMREGIONS" => [nil, "number", []],
+    "SPLITALGO" => [nil, "string", []],
+    "SALT_BUCKETS" => [nil, "number", []],
+    "BLOCKCACHE" => ["true", "boolean", []],
+    "BLOCKSIZE" => ["65536", "number", []],
+    "BLOOMFILTER" => ["NONE", "enum", ["NONE", "ROW", "ROWCOL"]],
+    "COMPRESSION" => ["NONE", "enum", ["LZO", "GZ", "NONE", "SNAPPY"]],
+    "DATA_BLOCK_ENCODING" => ["NONE", "enum", ["NONE", "PREFIX", "DIFF", "FAST_DIFF"]],
+    "ENCODE_ON_DISK" => ["true", "boolean", []],
+    "IN_MEMORY" => ["false", "boolean", []],
+    "KEEP_DELETED_CELLS" => ["false", "boolean", []],
+    "MIN_VERSIONS" => ["0", "number", []],
+    "REPLICATION_SCOPE" => ["0", "number", []],
+    "TTL" => ["2147483647", "number", []],
+    "VERSIONS" => ["3", "number", []],
+}
+
+def canonical(attr, val)
+    known = KNOWN_ATTRIBUTES[attr]
+    return val.to_s if known.nil?
+    val = known[0] if val.nil?
+    s = val.to_s.strip
+    if known[1] == "boolean" && (s.downcase == "true" || s.downcase == "false")
+        return s.downcase
+    elsif known[1] == "number" && attr == "TTL" && s.upcase == "FOREVER"
+        return "2147483647"
+    elsif known[1] == "number" && s =~ /\A[+-]?\d+\z/
+        return s.to_i.to_s
+    else
+        constant = known[2].find { |c| c.casecmp(s) == 0 }
+        return constant unless constant.nil?
+    end
+    val.to_s
+end
+
 def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
-        errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
+    actual = canonical(attr, obj.getValue(attr))
+    if (actual != val)
+        errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{actual}\" instead.\n"
     end
 end
 
@@ -57,46 +101,6 @@ end
 # script fail; it will emit errors and exit if it encounters any problems that
 # will make the script fail.
 ###############################################################################
-# Table 'dropMe' should exist
-tablename = "dropMe"
-if !admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
-end
-
-# Table 'dropMe' will warn if it doesn't match the expected definition.
-if admin.tableExists(tablename)
-    table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preWarnings, table, "drop", "DEFERRED_LOG_FLUSH", "false")
-    compare(preWarnings, table, "drop", "IS_META", "false")
-    compare(preWarnings, table, "drop", "IS_ROOT", "false")
-    compare(preWarnings, table, "drop", "MAX_FILESIZE", "268435456")
-    compare(preWarnings, table, "drop", "MEMSTORE_FLUSHSIZE", "67108864")
-    compare(preWarnings, table, "drop", "OWNER", "ivarley")
-    compare(preWarnings, table, "drop", "READONLY", "false")
-    compare(preWarnings, table, "drop", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"dropMe\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"dropMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"dropMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"dropMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"dropMeColumn1\" type=\"String\"/><column name=\"dropMeColumn2\" type=\"Timestamp\"/><column name=\"dropMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
-    # Column family: dropMeColumnFamily1
-    cfname = "dropMeColumnFamily1"
-    cf = table.getFamily(cfname.bytes.to_a)
-    compare(preWarnings, cf, "drop", "BLOCKCACHE", "true")
-    compare(preWarnings, cf, "drop", "BLOCKSIZE", "65536")
-    compare(preWarnings, cf, "drop", "BLOOMFILTER", "NONE")
-    compare(preWarnings, cf, "drop", "COMPRESSION", "NONE")
-    compare(preWarnings, cf, "drop", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preWarnings, cf, "drop", "ENCODE_ON_DISK", "true")
-    compare(preWarnings, cf, "drop", "IN_MEMORY", "false")
-    compare(preWarnings, cf, "drop", "KEEP_DELETED_CELLS", "false")
-    compare(preWarnings, cf, "drop", "MIN_VERSIONS", "0")
-    compare(preWarnings, cf, "drop", "REPLICATION_SCOPE", "0")
-    compare(preWarnings, cf, "drop", "TTL", "2147483647")
-    compare(preWarnings, cf, "drop", "VERSIONS", "3")
-end
-
-# Table 'createMe' should not exist
-tablename = "createMe"
-if admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should not already exist, but it does.\n"
-end
-
 # Table 'alterMe' should exist
 tablename = "alterMe"
 if !admin.tableExists(tablename)
@@ -131,6 +135,46 @@ if admin.tableExists(tablename)
     compare(preErrors, cf, "alter", "VERSIONS", "3")
 end
 
+# Table 'createMe' should not exist
+tablename = "createMe"
+if admin.tableExists(tablename)
+    preErrors << "Table '#{tablename}' should not already exist, but it does.\n"
+end
+
+# Table 'dropMe' should exist
+tablename = "dropMe"
+if !admin.tableExists(tablename)
+    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
+end
+
+# Table 'dropMe' will warn if it doesn't match the expected definition.
+if admin.tableExists(tablename)
+    table = admin.getTableDescriptor(tablename.bytes.to_a)
+    compare(preWarnings, table, "drop", "DEFERRED_LOG_FLUSH", "false")
+    compare(preWarnings, table, "drop", "IS_META", "false")
+    compare(preWarnings, table, "drop", "IS_ROOT", "false")
+    compare(preWarnings, table, "drop", "MAX_FILESIZE", "268435456")
+    compare(preWarnings, table, "drop", "MEMSTORE_FLUSHSIZE", "67108864")
+    compare(preWarnings, table, "drop", "OWNER", "ivarley")
+    compare(preWarnings, table, "drop", "READONLY", "false")
+    compare(preWarnings, table, "drop", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"dropMe\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"dropMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"dropMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"dropMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"dropMeColumn1\" type=\"String\"/><column name=\"dropMeColumn2\" type=\"Timestamp\"/><column name=\"dropMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
+    # Column family: dropMeColumnFamily1
+    cfname = "dropMeColumnFamily1"
+    cf = table.getFamily(cfname.bytes.to_a)
+    compare(preWarnings, cf, "drop", "BLOCKCACHE", "true")
+    compare(preWarnings, cf, "drop", "BLOCKSIZE", "65536")
+    compare(preWarnings, cf, "drop", "BLOOMFILTER", "NONE")
+    compare(preWarnings, cf, "drop", "COMPRESSION", "NONE")
+    compare(preWarnings, cf, "drop", "DATA_BLOCK_ENCODING", "NONE")
+    compare(preWarnings, cf, "drop", "ENCODE_ON_DISK", "true")
+    compare(preWarnings, cf, "drop", "IN_MEMORY", "false")
+    compare(preWarnings, cf, "drop", "KEEP_DELETED_CELLS", "false")
+    compare(preWarnings, cf, "drop", "MIN_VERSIONS", "0")
+    compare(preWarnings, cf, "drop", "REPLICATION_SCOPE", "0")
+    compare(preWarnings, cf, "drop", "TTL", "2147483647")
+    compare(preWarnings, cf, "drop", "VERSIONS", "3")
+end
+
 
 # If any pre-validations had errors, report them and exit the script.
 if (preErrors.length > 0)
@@ -152,34 +196,22 @@ end
 # This step actually modifies the schema on the cluster.
 ###############################################################################
 
-# Drop Table: dropMe
-tablename = "dropMe"
-table = HTableDescriptor.new(tablename)
-if admin.tableExists(tablename)
-  if admin.isTableEnabled(tablename)
-    puts "Disabling table '#{tablename}' prior to dropping it ..."
-    admin.disableTable(tablename)
-  end
-    puts "Dropping table '#{tablename}' ..."
-  admin.deleteTable(tablename)
-end
-puts "Dropped table '#{tablename}'"
+# Alter strategy: OFFLINE
 
-# Create Table: createMe
-tablename = "createMe"
-table = HTableDescriptor.new(tablename)
-#set table properties
+# Modify table: alterMe
+tablename = "alterMe"
+table = admin.getTableDescriptor(tablename.bytes.to_a)
 table.setValue("DEFERRED_LOG_FLUSH", "false")
 table.setValue("IS_META", "false")
 table.setValue("IS_ROOT", "false")
-table.setValue("MAX_FILESIZE", "268435456")
-table.setValue("MEMSTORE_FLUSHSIZE", "67108864")
-table.setValue("OWNER", "ivarley")
+table.setValue("MAX_FILESIZE", "269484032")
+table.setValue("MEMSTORE_FLUSHSIZE", "68157440")
+table.setValue("OWNER", "ivarley2")
 table.setValue("READONLY", "false")
-table.setValue("fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
-cf = HColumnDescriptor.new("createMeColumnFamily1")
+table.setValue("fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"257\" memStoreFlushSizeMB=\"65\" name=\"alterMe\" owner=\"ivarley2\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"alterMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"alterMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"65\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"alterMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"alterMeColumn1\" type=\"String\"/><column name=\"alterMeColumn2\" type=\"Timestamp\"/><column name=\"alterMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
+cf = HColumnDescriptor.new("alterMeColumnFamily1")
 cf.setValue("BLOCKCACHE", "true")
-cf.setValue("BLOCKSIZE", "65536")
+cf.setValue("BLOCKSIZE", "66560")
 cf.setValue("BLOOMFILTER", "NONE")
 cf.setValue("COMPRESSION", "NONE")
 cf.setValue("DATA_BLOCK_ENCODING", "NONE")
@@ -191,24 +223,29 @@ cf.setValue("REPLICATION_SCOPE", "0")
 cf.setValue("TTL", "2147483647")
 cf.setValue("VERSIONS", "3")
 table.addFamily(cf)
-puts "Creating table '#{tablename}' ... "
-admin.createTable(table)
-puts "Created table '#{tablename}'"
+puts "Disabling table '#{tablename}' prior to modification ..."
+admin.disableTable(tablename)
+puts "Modifying table '#{tablename}' ..."
+admin.modifyTable(tablename.bytes.to_a, table)
+puts "Enabling table '#{tablename}' after modification ..."
+admin.enableTable(tablename)
+puts "Modified table '#{tablename}"
 
-# Modify table: alterMe
-tablename = "alterMe"
-table = admin.getTableDescriptor(tablename.bytes.to_a)
+# Create Table: createMe
+tablename = "createMe"
+table = HTableDescriptor.new(tablename)
+#set table properties
 table.setValue("DEFERRED_LOG_FLUSH", "false")
 table.setValue("IS_META", "false")
 table.setValue("IS_ROOT", "false")
-table.setValue("MAX_FILESIZE", "269484032")
-table.setValue("MEMSTORE_FLUSHSIZE", "68157440")
-table.setValue("OWNER", "ivarley2")
+table.setValue("MAX_FILESIZE", "268435456")
+table.setValue("MEMSTORE_FLUSHSIZE", "67108864")
+table.setValue("OWNER", "ivarley")
 table.setValue("READONLY", "false")
-table.setValue("fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"257\" memStoreFlushSizeMB=\"65\" name=\"alterMe\" owner=\"ivarley2\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"alterMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"alterMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"65\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"alterMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"alterMeColumn1\" type=\"String\"/><column name=\"alterMeColumn2\" type=\"Timestamp\"/><column name=\"alterMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
-cf = HColumnDescriptor.new("alterMeColumnFamily1")
+table.setValue("fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
+cf = HColumnDescriptor.new("createMeColumnFamily1")
 cf.setValue("BLOCKCACHE", "true")
-cf.setValue("BLOCKSIZE", "66560")
+cf.setValue("BLOCKSIZE", "65536")
 cf.setValue("BLOOMFILTER", "NONE")
 cf.setValue("COMPRESSION", "NONE")
 cf.setValue("DATA_BLOCK_ENCODING", "NONE")
@@ -220,13 +257,22 @@ cf.setValue("REPLICATION_SCOPE", "0")
 cf.setValue("TTL", "2147483647")
 cf.setValue("VERSIONS", "3")
 table.addFamily(cf)
-puts "Disabling table '#{tablename}' prior to modification ..."
-admin.disableTable(tablename)
-puts "Modifying table '#{tablename}' ..."
-admin.modifyTable(tablename.bytes.to_a, table)
-puts "Enabling table '#{tablename}' after modification ..."
-admin.enableTable(tablename)
-puts "Modified table '#{tablename}"
+puts "Creating table '#{tablename}' ... "
+admin.createTable(table)
+puts "Created table '#{tablename}'"
+
+# Drop Table: dropMe
+tablename = "dropMe"
+table = HTableDescriptor.new(tablename)
+if admin.tableExists(tablename)
+  if admin.isTableEnabled(tablename)
+    puts "Disabling table '#{tablename}' prior to dropping it ..."
+    admin.disableTable(tablename)
+  end
+    puts "Dropping table '#{tablename}' ..."
+  admin.deleteTable(tablename)
+end
+puts "Dropped table '#{tablename}'"
 
 puts "Table creations & modifications successful."
 
@@ -236,10 +282,38 @@ puts "Table creations & modifications successful."
 # This step ensures that changes were successful, and that the resulting schema
 # on the cluster matches what you want to be there.
 ###############################################################################
-# Table 'dropMe' should not exist
-tablename = "dropMe"
+# Table 'alterMe' should exist
+tablename = "alterMe"
+if !admin.tableExists(tablename)
+    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
+end
+
+# Table 'alterMe' will error if it doesn't match the expected definition.
 if admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should not already exist, but it does.\n"
+    table = admin.getTableDescriptor(tablename.bytes.to_a)
+    compare(preErrors, table, "alter", "DEFERRED_LOG_FLUSH", "false")
+    compare(preErrors, table, "alter", "IS_META", "false")
+    compare(preErrors, table, "alter", "IS_ROOT", "false")
+    compare(preErrors, table, "alter", "MAX_FILESIZE", "269484032")
+    compare(preErrors, table, "alter", "MEMSTORE_FLUSHSIZE", "68157440")
+    compare(preErrors, table, "alter", "OWNER", "ivarley2")
+    compare(preErrors, table, "alter", "READONLY", "false")
+    compare(preErrors, table, "alter", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"257\" memStoreFlushSizeMB=\"65\" name=\"alterMe\" owner=\"ivarley2\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"alterMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"alterMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"65\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"alterMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"alterMeColumn1\" type=\"String\"/><column name=\"alterMeColumn2\" type=\"Timestamp\"/><column name=\"alterMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
+    # Column family: alterMeColumnFamily1
+    cfname = "alterMeColumnFamily1"
+    cf = table.getFamily(cfname.bytes.to_a)
+    compare(preErrors, cf, "alter", "BLOCKCACHE", "true")
+    compare(preErrors, cf, "alter", "BLOCKSIZE", "66560")
+    compare(preErrors, cf, "alter", "BLOOMFILTER", "NONE")
+    compare(preErrors, cf, "alter", "COMPRESSION", "NONE")
+    compare(preErrors, cf, "alter", "DATA_BLOCK_ENCODING", "NONE")
+    compare(preErrors, cf, "alter", "ENCODE_ON_DISK", "true")
+    compare(preErrors, cf, "alter", "IN_MEMORY", "false")
+    compare(preErrors, cf, "alter", "KEEP_DELETED_CELLS", "false")
+    compare(preErrors, cf, "alter", "MIN_VERSIONS", "0")
+    compare(preErrors, cf, "alter", "REPLICATION_SCOPE", "0")
+    compare(preErrors, cf, "alter", "TTL", "2147483647")
+    compare(preErrors, cf, "alter", "VERSIONS", "3")
 end
 
 # Table 'createMe' should exist
@@ -276,38 +350,10 @@ if admin.tableExists(tablename)
     compare(preErrors, cf, "create", "VERSIONS", "3")
 end
 
-# Table 'alterMe' should exist
-tablename = "alterMe"
-if !admin.tableExists(tablename)
-    preErrors << "Table '#{tablename}' should exist, but it does not.\n"
-end
-
-# Table 'alterMe' will error if it doesn't match the expected definition.
+# Table 'dropMe' should not exist
+tablename = "dropMe"
 if admin.tableExists(tablename)
-    table = admin.getTableDescriptor(tablename.bytes.to_a)
-    compare(preErrors, table, "alter", "DEFERRED_LOG_FLUSH", "false")
-    compare(preErrors, table, "alter", "IS_META", "false")
-    compare(preErrors, table, "alter", "IS_ROOT", "false")
-    compare(preErrors, table, "alter", "MAX_FILESIZE", "269484032")
-    compare(preErrors, table, "alter", "MEMSTORE_FLUSHSIZE", "68157440")
-    compare(preErrors, table, "alter", "OWNER", "ivarley2")
-    compare(preErrors, table, "alter", "READONLY", "false")
-    compare(preErrors, table, "alter", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"257\" memStoreFlushSizeMB=\"65\" name=\"alterMe\" owner=\"ivarley2\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"alterMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"alterMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"65\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"alterMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"alterMeColumn1\" type=\"String\"/><column name=\"alterMeColumn2\" type=\"Timestamp\"/><column name=\"alterMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
-    # Column family: alterMeColumnFamily1
-    cfname = "alterMeColumnFamily1"
-    cf = table.getFamily(cfname.bytes.to_a)
-    compare(preErrors, cf, "alter", "BLOCKCACHE", "true")
-    compare(preErrors, cf, "alter", "BLOCKSIZE", "66560")
-    compare(preErrors, cf, "alter", "BLOOMFILTER", "NONE")
-    compare(preErrors, cf, "alter", "COMPRESSION", "NONE")
-    compare(preErrors, cf, "alter", "DATA_BLOCK_ENCODING", "NONE")
-    compare(preErrors, cf, "alter", "ENCODE_ON_DISK", "true")
-    compare(preErrors, cf, "alter", "IN_MEMORY", "false")
-    compare(preErrors, cf, "alter", "KEEP_DELETED_CELLS", "false")
-    compare(preErrors, cf, "alter", "MIN_VERSIONS", "0")
-    compare(preErrors, cf, "alter", "REPLICATION_SCOPE", "0")
-    compare(preErrors, cf, "alter", "TTL", "2147483647")
-    compare(preErrors, cf, "alter", "VERSIONS", "3")
+    preErrors << "Table '#{tablename}' should not already exist, but it does.\n"
 end
 
 puts "Post-validation successful."
@@ -35,9 +35,53 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
+KNOWN_ATTRIBUTES = {
+    "DEFERRED_LOG_FLUSH" => ["false", "boolean", []],
+    "IS_META" => ["false", "boolean", []],
+    "IS_ROOT" => ["false", "boolean", []],
+    "MAX_FILESIZE" => ["10737418240", "number", []],
+    "MEMSTORE_FLUSHSIZE" => ["134217728", "number", []],
+    "OWNER" => [nil, "string", []],
+    "READONLY" => ["false", "boolean", []],
+    "NUMREGIONS" => [nil, "number", []],
+    "SPLITALGO" => [nil, "string", []],
+    "SALT_BUCKETS" => [nil, "number", []],
+    "BLOCKCACHE" => ["true", "boolean", []],
+    "BLOCKSIZE" => ["65536", "number", []],
+    "BLOOMFILTER" => ["NONE", "enum", ["NONE", "ROW", "ROWCOL"]],
+    "COMPRESSION" => ["NONE", "enum", ["LZO", "GZ", "NONE", "SNAPPY"]],
+    "DATA_BLOCK_ENCODING" => ["NONE", "enum", ["NONE", "PREFIX", "DIFF", "FAST_DIFF"]],
+    "ENCODE_ON_DISK" => ["true", "boolean", []],
+    "IN_MEMORY" => ["false", "boolean", []],
+    "KEEP_DELETED_CELLS" => ["false", "boolean", []],
+    "MIN_VERSIONS" => ["0", "number", []],
+    "REPLICATION_SCOPE" => ["0", "number", []],
+    "TTL" => ["2147483647", "number", []],
+    "VERSIONS" => ["3", "number", []],
+}
+
+def canonical(attr, val)
+    known = KNOWN_ATTRIBUTES[attr]
+    return val.to_s if known.nil?
+    val = known[0] if val.nil?
+    s = val.to_s.strip
+    if known[1] == "boolean" && (s.downcase == "true" || s.downcase == "false")
+        return s.downcase
+    elsif known[1] == "number" && attr == "TTL" && s.upcase == "FOREVER"
+        return "2147483647"
+    elsif known[1] == "number" && s =~ /\A[+-]?\d+\z/
+        return s.to_i.to_s
+    else
+        constant = known[2].find { |c| c.casecmp(s) == 0 }
+        return constant unless constant.nil?
+    end
+    val.to_s
+end
+
 def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
-        errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
+    actual = canonical(attr, obj.getValue(attr))
+    if (actual != val)
+        errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{actual}\" instead.\n"
     end
 end
 
@@ -104,7 +148,19 @@ cf.setValue("TTL", "2147483647")
 cf.setValue("VERSIONS", "3")
 table.addFamily(cf)
 puts "Creating table '#{tablename}' ... "
-admin.createTable(table, Bytes.toBytes("\x00"), Bytes.toBytes("\xFF"), 12)
+splits = Java::byte[][11].new
+splits[0] = Bytes.toBytesBinary('5AKf')
+splits[1] = Bytes.toBytesBinary('AKfK')
+splits[2] = Bytes.toBytesBinary('FV00')
+splits[3] = Bytes.toBytesBinary('KfKf')
+splits[4] = Bytes.toBytesBinary('PpfK')
+splits[5] = Bytes.toBytesBinary('V000')
+splits[6] = Bytes.toBytesBinary('aAKf')
+splits[7] = Bytes.toBytesBinary('fKfK')
+splits[8] = Bytes.toBytesBinary('kV00')
+splits[9] = Bytes.toBytesBinary('pfKf')
+splits[10] = Bytes.toBytesBinary('upfK')
+admin.createTable(table, splits)
 puts "Created table '#{tablename}'"
 
 puts "Table creations & modifications successful."
@@ -134,7 +190,8 @@ if admin.tableExists(tablename)
     compare(preErrors, table, "create", "READONLY", "false")
     compare(preErrors, table, "create", "fullSchema", "<table isReadOnly=\"false\" maxFileSizeMB=\"256\" memStoreFlushSizeMB=\"64\" name=\"createMe\" numRegionsToPreSplitOnCreation=\"12\" owner=\"ivarley\" useDeferredLogFlush=\"false\"><key><keyPart inverted=\"false\" length=\"15\" name=\"createMeKeyPart1\" type=\"String\"/><keyPart inverted=\"true\" length=\"15\" name=\"createMeKeyPart2\" type=\"Timestamp\"/></key><columnFamilies><columnFamily blockCache=\"true\" blockSizeKB=\"64\" bloomFilter=\"NONE\" inMemory=\"false\" maxVersions=\"3\" name=\"createMeColumnFamily1\" replicationScope=\"0\" timeToLiveMS=\"2147483647\"><column name=\"createMeColumn1\" type=\"String\"/><column name=\"createMeColumn2\" type=\"Timestamp\"/><column name=\"createMeColumn3\" type=\"Byte\"/></columnFamily></columnFamilies></table>")
     # Column family: createMeColumnFamily1
-    cf = HColumnDescriptor.new("createMeColumnFamily1")
+    cfname = "createMeColumnFamily1"
+    cf = table.getFamily(cfname.bytes.to_a)
     compare(preErrors, cf, "create", "BLOCKCACHE", "true")
     compare(preErrors, cf, "create", "BLOCKSIZE", "65536")
     compare(preErrors, cf, "create", "BLOOMFILTER", "NONE")
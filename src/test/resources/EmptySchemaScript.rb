@@ -34,9 +34,53 @@ postErrors = Array.new
 # Utility methods
 ###############################################################################
 
+KNOWN_ATTRIBUTES = {
+    "DEFERRED_LOG_FLUSH" => ["false", "boolean", []],
+    "IS_META" => ["false", "boolean", []],
+    "IS_ROOT" => ["false", "boolean", []],
+    "MAX_FILESIZE" => ["10737418240", "number", []],
+    "MEMSTORE_FLUSHSIZE" => ["134217728", "number", []],
+    "OWNER" => [nil, "string", []],
+    "READONLY" => ["false", "boolean", []],
+    "NUMREGIONS" => [nil, "number", []],
+    "SPLITALGO" => [nil, "string", []],
+    "SALT_BUCKETS" => [nil, "number", []],
+    "BLOCKCACHE" => ["true", "boolean", []],
+    "BLOCKSIZE" => ["65536", "number", []],
+    "BLOOMFILTER" => ["NONE", "enum", ["NONE", "ROW", "ROWCOL"]],
+    "COMPRESSION" => ["NONE", "enum", ["LZO", "GZ", "NONE", "SNAPPY"]],
+    "DATA_BLOCK_ENCODING" => ["NONE", "enum", ["NONE", "PREFIX", "DIFF", "FAST_DIFF"]],
+    "ENCODE_ON_DISK" => ["true", "boolean", []],
+    "IN_MEMORY" => ["false", "boolean", []],
+    "KEEP_DELETED_CELLS" => ["false", "boolean", []],
+    "MIN_VERSIONS" => ["0", "number", []],
+    "REPLICATION_SCOPE" => ["0", "number", []],
+    "TTL" => ["2147483647", "number", []],
+    "VERSIONS" => ["3", "number", []],
+}
+
+def canonical(attr, val)
+    known = KNOWN_ATTRIBUTES[attr]
+    return val.to_s if known.nil?
+    val = known[0] if val.nil?
+    s = val.to_s.strip
+    if known[1] == "boolean" && (s.downcase == "true" || s.downcase == "false")
+        return s.downcase
+    elsif known[1] == "number" && attr == "TTL" && s.upcase == "FOREVER"
+        return "2147483647"
+    elsif known[1] == "number" && s =~ /\A[+-]?\d+\z/
+        return s.to_i.to_s
+    else
+        constant = known[2].find { |c| c.casecmp(s) == 0 }
+        return constant unless constant.nil?
+    end
+    val.to_s
+end
+
 def compare(errs, obj, action, attr, val)
-    if (obj.getValue(attr).to_s != val)
-        errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{obj.getValue(attr)}\" instead.\n"
+    actual = canonical(attr, obj.getValue(attr))
+    if (actual != val)
+        errs << "Object '#{obj.getNameAsString()}', which is targeted for #{action} by this script, should have had a value of \"#{val}\" for #{attr}, but it was \"#{actual}\" instead.\n"
     end
 end
 